@@ -1,6 +1,7 @@
 plugins {
     id("com.github.spotbugs.jspecify")
     id("org.javamodularity.moduleplugin")
+    id("me.champeau.jmh") version "0.6.8"
 }
 
 repositories {
@@ -10,6 +11,18 @@ repositories {
 val spotbugsVersion = "4.7.2"
 val jspecifyVersion = "0.2.0"
 
+val indexGenerator: SourceSet by sourceSets.creating {
+    val main = sourceSets.main.get()
+    // refer classes directory instead of main output, to avoid cyclic dependency on generated resources
+    compileClasspath += files(main.java.classesDirectory) + main.compileClasspath
+    runtimeClasspath += files(main.java.classesDirectory) + main.compileClasspath
+}
+
+// jar files annotated with JSpecify, to bundle their nullness into the nullness index
+val nullnessIndex by configurations.creating {
+    isTransitive = false
+}
+
 dependencies {
     compileOnly("com.github.spotbugs:spotbugs:$spotbugsVersion")
     compileOnly("org.jspecify:jspecify:$jspecifyVersion")
@@ -25,6 +38,36 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter-params")
     testImplementation("com.google.guava:guava:31.1-jre")
     xsd("com.github.spotbugs:spotbugs:$spotbugsVersion")
+    jmh("com.github.spotbugs:spotbugs:$spotbugsVersion")
+    jmh("com.github.spotbugs:test-harness:$spotbugsVersion")
+    jmh("org.jspecify:jspecify:$jspecifyVersion")
+}
+
+val generateNullnessIndex = tasks.register<JavaExec>("generateNullnessIndex") {
+    description = "Generates the nullness index of the JDK and libraries, to bundle with the plugin."
+    val stubs = fileTree("src/nullnessIndex") { include("*.txt") }
+    val outputDir = layout.buildDirectory.dir("generated/nullnessIndex")
+    inputs.files(stubs)
+    inputs.files(nullnessIndex)
+    outputs.dir(outputDir)
+    classpath = indexGenerator.runtimeClasspath
+    mainClass.set("com.github.spotbugs.jspecify.nullness.NullnessIndexGenerator")
+    argumentProviders.add(
+        CommandLineArgumentProvider {
+            listOf(outputDir.get().file("jspecify-nullness.idx").asFile.path) +
+                stubs.files.map { it.path } +
+                nullnessIndex.files.map { it.path }
+        }
+    )
+}
+
+sourceSets.main {
+    resources.srcDir(generateNullnessIndex)
+}
+
+jmh {
+    // report allocation per operation, to keep hot paths allocation-free
+    profilers.add("gc")
 }
 
 defaultTasks("spotlessApply", "build")
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.TypeReference;
+
+/**
+ * Generates the {@link NullnessIndex} packaged into the plugin. Run with the path of the output
+ * file followed by stub files ({@code *.txt}) and jar files annotated with JSpecify.
+ *
+ * <p>Each line of stub files describes one fact, and {@code #} starts a comment:
+ *
+ * <pre>
+ * &#64;package java/util
+ * &#64;class java/util/Optional NOT_NULL
+ * java/util/Map.get(Ljava/lang/Object;)Ljava/lang/Object; NULLABLE
+ * java/lang/System.getenv(Ljava/lang/String;)Ljava/lang/String; NULLABLE static
+ * </pre>
+ *
+ * Packages that contain any fact get their default nullness from the index.
+ */
+public final class NullnessIndexGenerator {
+  private final NullnessIndex.Writer writer = new NullnessIndex.Writer();
+  private final Map<String, Nullness> packages = new LinkedHashMap<>();
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      throw new IllegalArgumentException(
+          "Usage: NullnessIndexGenerator <output> [<stubs.txt>|<library.jar>]...");
+    }
+    NullnessIndexGenerator generator = new NullnessIndexGenerator();
+    for (int i = 1; i < args.length; ++i) {
+      Path input = Paths.get(args[i]);
+      if (input.toString().endsWith(".jar")) {
+        generator.readJar(input);
+      } else {
+        generator.readStubs(input);
+      }
+    }
+    Path output = Paths.get(args[0]);
+    Files.createDirectories(output.toAbsolutePath().getParent());
+    try (OutputStream stream = Files.newOutputStream(output)) {
+      generator.write(stream);
+    }
+    System.out.printf(
+        "Generated nullness index with %d methods in %d packages at %s%n",
+        generator.writer.methodCount(), generator.packages.size(), output);
+  }
+
+  void readStubs(Path stubs) throws IOException {
+    List<String> lines = Files.readAllLines(stubs, StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); ++i) {
+      String line = lines.get(i);
+      int comment = line.indexOf('#');
+      if (comment >= 0) {
+        line = line.substring(0, comment);
+      }
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      try {
+        readStub(line.split("\\s+"));
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException(
+            String.format("Illegal stub at %s:%d: %s", stubs, i + 1, line), e);
+      }
+    }
+  }
+
+  private void readStub(String[] tokens) {
+    switch (tokens[0]) {
+      case "@package":
+        addPackage(
+            tokens[1],
+            tokens.length > 2 ? Nullness.valueOf(tokens[2]) : Nullness.NO_EXPLICIT_CONFIG);
+        return;
+      case "@class":
+        addPackage(NullnessIndex.packageNameOf(tokens[1]), Nullness.NO_EXPLICIT_CONFIG);
+        writer.addClass(tokens[1], Nullness.valueOf(tokens[2]));
+        return;
+      default:
+        String member = tokens[0];
+        int paren = member.indexOf('(');
+        int dot = member.lastIndexOf('.', paren);
+        if (paren < 0 || dot < 0) {
+          throw new IllegalArgumentException("Member should be written as class.name(signature)");
+        }
+        String className = member.substring(0, dot);
+        boolean isStatic = tokens.length > 2 && "static".equals(tokens[2]);
+        addPackage(NullnessIndex.packageNameOf(className), Nullness.NO_EXPLICIT_CONFIG);
+        writer.addMethod(
+            className,
+            member.substring(dot + 1, paren),
+            member.substring(paren),
+            isStatic,
+            Nullness.valueOf(tokens[1]));
+    }
+  }
+
+  void readJar(Path jar) throws IOException {
+    try (JarFile file = new JarFile(jar.toFile())) {
+      Enumeration<JarEntry> entries = file.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (!name.endsWith(".class")
+            || name.startsWith("META-INF/")
+            || name.equals("module-info.class")) {
+          continue;
+        }
+        try (InputStream input = file.getInputStream(entry)) {
+          new ClassReader(input).accept(new IndexingClassVisitor(), ClassReader.SKIP_CODE);
+        }
+      }
+    }
+  }
+
+  private void addPackage(String packageName, Nullness defaultNullness) {
+    if (defaultNullness.isSetExplicitly()) {
+      packages.put(packageName, defaultNullness);
+    } else {
+      packages.putIfAbsent(packageName, defaultNullness);
+    }
+  }
+
+  void write(OutputStream output) throws IOException {
+    packages.forEach(writer::addPackage);
+    writer.write(output);
+  }
+
+  private final class IndexingClassVisitor extends ClassVisitor {
+    private String className = "";
+    private boolean isPackageInfo;
+
+    IndexingClassVisitor() {
+      super(Opcodes.ASM9);
+    }
+
+    @Override
+    public void visit(
+        int version,
+        int access,
+        String name,
+        String signature,
+        String superName,
+        String[] interfaces) {
+      className = name;
+      isPackageInfo = name.endsWith("/package-info");
+      addPackage(NullnessIndex.packageNameOf(name), Nullness.NO_EXPLICIT_CONFIG);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+      Nullness.from(descriptor)
+          .ifPresent(
+              nullness -> {
+                if (isPackageInfo) {
+                  addPackage(NullnessIndex.packageNameOf(className), nullness);
+                } else {
+                  writer.addClass(className, nullness);
+                }
+              });
+      return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+        int access, String name, String descriptor, String signature, String[] exceptions) {
+      int sort = Type.getReturnType(descriptor).getSort();
+      if (sort != Type.OBJECT && sort != Type.ARRAY) {
+        return null;
+      }
+      boolean isStatic = (access & Opcodes.ACC_STATIC) != 0;
+      return new MethodVisitor(Opcodes.ASM9) {
+        @Override
+        public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+          addMethod(annotation);
+          return null;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(
+            int typeRef, TypePath typePath, String annotation, boolean visible) {
+          if (new TypeReference(typeRef).getSort() == TypeReference.METHOD_RETURN
+              && typePath == null) {
+            addMethod(annotation);
+          }
+          return null;
+        }
+
+        private void addMethod(String annotation) {
+          Nullness.from(annotation)
+              .ifPresent(
+                  nullness -> writer.addMethod(className, name, descriptor, isStatic, nullness));
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares a cold analysis with the packaged nullness index and without it. Every invocation runs a
+ * whole SpotBugs analysis, so the {@link NullnessDatabase} is created from scratch each time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class ColdScanBenchmark {
+  @Param({"true", "false"})
+  public boolean useIndex;
+
+  /** Directory or jar to analyse. Analyses classes of this plugin by default. */
+  @Param("build/classes/java/main")
+  public String target;
+
+  private Path targetPath;
+
+  @Setup
+  public void setUp() {
+    System.setProperty(NullnessDatabaseFactory.PROPERTY_USE_INDEX, Boolean.toString(useIndex));
+    targetPath = Paths.get(target).toAbsolutePath();
+  }
+
+  @Benchmark
+  public BugCollectionBugReporter coldScan() {
+    return PluginAnalysis.run(targetPath);
+  }
+}
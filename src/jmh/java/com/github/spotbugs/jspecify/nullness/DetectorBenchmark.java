@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the detectors in this plugin on synthetic classes: {@link NeedlessAnnotationDetector} on a
+ * class with many annotated members, and {@link ReturnUnexpectedNullDetector} on method bodies
+ * heavy with invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DetectorBenchmark {
+  private static final String PACKAGE_NAME = "com/example/synthetic";
+
+  /** Number of fields and methods in the class analysed by the annotation benchmark. */
+  @Param({"1000", "10000"})
+  public int members;
+
+  /** Number of invocations in each method analysed by the return value benchmark. */
+  @Param({"100", "1000"})
+  public int invocations;
+
+  /** Number of methods in the class analysed by the return value benchmark. */
+  @Param("50")
+  public int methods;
+
+  private Path annotatedMembers;
+  private Path invocationHeavy;
+
+  @Setup
+  public void setUp() throws IOException {
+    annotatedMembers = Files.createTempDirectory("annotated-members");
+    String annotatedClass = PACKAGE_NAME + "/AnnotatedMembers";
+    SyntheticClasses.write(
+        annotatedMembers,
+        annotatedClass,
+        SyntheticClasses.annotatedMembers(annotatedClass, members));
+
+    invocationHeavy = Files.createTempDirectory("invocation-heavy");
+    String invokingClass = PACKAGE_NAME + "/InvocationHeavy";
+    SyntheticClasses.write(
+        invocationHeavy,
+        invokingClass,
+        SyntheticClasses.invocationHeavy(invokingClass, methods, invocations));
+    SyntheticClasses.write(
+        invocationHeavy,
+        PACKAGE_NAME + "/package-info",
+        SyntheticClasses.nullMarkedPackage(PACKAGE_NAME));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    delete(annotatedMembers);
+    delete(invocationHeavy);
+  }
+
+  @Benchmark
+  public BugCollectionBugReporter needlessAnnotation() {
+    return PluginAnalysis.run(annotatedMembers);
+  }
+
+  @Benchmark
+  public BugCollectionBugReporter returnUnexpectedNull() {
+    return PluginAnalysis.run(invocationHeavy);
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs the detectors on methods with deep branching, where every returned value is checked by
+ * {@link NullCheckAnalysis}. The time should grow linearly with the number of branches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class NullCheckBenchmark {
+  private static final String PACKAGE_NAME = "com/example/synthetic";
+
+  /** Number of branches in each method. */
+  @Param({"10", "100", "1000"})
+  public int branches;
+
+  /** Number of methods in the analysed class. */
+  @Param("50")
+  public int methods;
+
+  private Path directory;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("null-checked-branches");
+    String className = PACKAGE_NAME + "/NullCheckedBranches";
+    SyntheticClasses.write(
+        directory, className, SyntheticClasses.nullCheckedBranches(className, methods, branches));
+    SyntheticClasses.write(
+        directory,
+        PACKAGE_NAME + "/package-info",
+        SyntheticClasses.nullMarkedPackage(PACKAGE_NAME));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public BugCollectionBugReporter nullCheckedBranches() {
+    return PluginAnalysis.run(directory);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.NoOpFindBugsProgress;
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
+import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link NullnessDatabase#findNullnessOf} for every method in a synthetic class, with a
+ * fresh database (cold) and with a database that already resolved all the methods (warm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NullnessDatabaseBenchmark {
+  @Param({"100", "10000"})
+  public int methods;
+
+  private XMethod[] xmethods;
+  private NullnessDatabase warmDatabase;
+
+  @Setup
+  public void setUp() throws Exception {
+    String className = "com/example/Synthetic";
+    Path directory = Files.createTempDirectory("nullness-database");
+    SyntheticClasses.write(
+        directory, className, SyntheticClasses.annotatedMembers(className, methods));
+
+    PrintingBugReporter bugReporter = new PrintingBugReporter();
+    IClassFactory factory = ClassFactory.instance();
+    IClassPath classPath = factory.createClassPath();
+    IClassPathBuilder builder = factory.createClassPathBuilder(bugReporter);
+    builder.addCodeBase(factory.createFilesystemCodeBaseLocator(directory.toString()), true);
+    builder.build(classPath, new NoOpFindBugsProgress());
+    IAnalysisCache analysisCache = factory.createAnalysisCache(classPath, bugReporter);
+    new edu.umd.cs.findbugs.classfile.engine.EngineRegistrar()
+        .registerAnalysisEngines(analysisCache);
+    new edu.umd.cs.findbugs.classfile.engine.asm.EngineRegistrar()
+        .registerAnalysisEngines(analysisCache);
+    Global.setAnalysisCacheForCurrentThread(analysisCache);
+
+    ClassDescriptor descriptor = DescriptorFactory.createClassDescriptor(className);
+    XClass clazz = analysisCache.getClassAnalysis(XClass.class, descriptor);
+    xmethods = clazz.getXMethods().toArray(new XMethod[0]);
+
+    warmDatabase = new NullnessDatabase();
+    lookUpAll(warmDatabase, null);
+  }
+
+  @Benchmark
+  public void cold(Blackhole blackhole) {
+    lookUpAll(new NullnessDatabase(), blackhole);
+  }
+
+  @Benchmark
+  public void warm(Blackhole blackhole) {
+    lookUpAll(warmDatabase, blackhole);
+  }
+
+  private void lookUpAll(NullnessDatabase database, Blackhole blackhole) {
+    for (XMethod method : xmethods) {
+      Object result = database.findNullnessOf(method, null);
+      if (blackhole != null) {
+        blackhole.consume(result);
+      }
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import edu.umd.cs.findbugs.DetectorFactory;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.config.UserPreferences;
+import edu.umd.cs.findbugs.test.AnalysisRunner;
+import java.nio.file.Path;
+
+/** Runs SpotBugs analysis with detectors in this plugin only. */
+final class PluginAnalysis {
+  static final String PLUGIN_ID = "com.github.spotbugs.jspecify";
+
+  private PluginAnalysis() {}
+
+  static BugCollectionBugReporter run(Path... paths) {
+    return new AnalysisRunner()
+        .run(
+            engine -> {
+              UserPreferences preferences = engine.getUserPreferences();
+              for (DetectorFactory factory : DetectorFactoryCollection.instance().getFactories()) {
+                // keep non-reporting detectors that collect facts used by OpcodeStack
+                boolean enabled =
+                    PLUGIN_ID.equals(factory.getPlugin().getPluginId())
+                        || !factory.isReportingDetector();
+                preferences.enableDetector(factory, enabled);
+              }
+            },
+            paths);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugCollectionBugReporter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs a whole analysis on a {@link SyntheticCorpus} of growing size, to see how the analysis
+ * scales with the codebase. Analysed classes per second are reported as the {@code classes}
+ * counter, and peak heap usage of each iteration is reported as the {@code peakHeapMegabytes}
+ * counter. Large corpora may need a larger heap, given by {@code -jvmArgs}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ScanScalingBenchmark {
+  /** Number of classes in the corpus. */
+  @Param({"1000", "10000", "100000"})
+  public int classes;
+
+  /** Number of methods in each class. */
+  @Param("10")
+  public int methodsPerClass;
+
+  /** Probability that a return type or a parameter is annotated with {@code @Nullable}. */
+  @Param("0.2")
+  public double annotationDensity;
+
+  /** Number of methods that each method calls. */
+  @Param("3")
+  public int callsPerMethod;
+
+  /** Number of classes in each chain of subclasses. */
+  @Param("4")
+  public int hierarchyDepth;
+
+  private Path directory;
+  private Path jar;
+
+  /** Number of analysed classes, reported per second. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class ScannedClasses {
+    public long classes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      classes = 0;
+    }
+  }
+
+  /** Peak heap usage of each iteration, as the sum of peaks of heap memory pools. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class PeakHeap {
+    public long peakHeapMegabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      System.gc();
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        pool.resetPeakUsage();
+      }
+    }
+
+    @TearDown(Level.Iteration)
+    public void measure() {
+      long peak = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP) {
+          peak += pool.getPeakUsage().getUsed();
+        }
+      }
+      peakHeapMegabytes = peak >> 20;
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("synthetic-corpus");
+    jar = directory.resolve("corpus.jar");
+    new SyntheticCorpus(classes, methodsPerClass, annotationDensity, callsPerMethod, hierarchyDepth)
+        .writeJar(jar);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(jar);
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public BugCollectionBugReporter scan(ScannedClasses scanned, PeakHeap heap) {
+    BugCollectionBugReporter reporter = PluginAnalysis.run(jar);
+    scanned.classes += classes;
+    return reporter;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/** Generates class files of configurable size, to feed benchmarks. */
+final class SyntheticClasses {
+  static final String NULLABLE = "Lorg/jspecify/nullness/Nullable;";
+  static final String NULL_MARKED = "Lorg/jspecify/nullness/NullMarked;";
+
+  private static final String[] FIELD_TYPES = {"I", "Ljava/lang/String;", "J", "[B", "Z"};
+
+  private SyntheticClasses() {}
+
+  /**
+   * Generates a class that has the given number of fields and methods. Every member is annotated
+   * with {@code @Nullable}, and some of them have primitive type.
+   */
+  static byte[] annotatedMembers(String className, int members) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(
+        Opcodes.V11,
+        Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT,
+        className,
+        null,
+        "java/lang/Object",
+        new String[0]);
+    writer.visitAnnotation(NULL_MARKED, true).visitEnd();
+    for (int i = 0; i < members; ++i) {
+      String type = FIELD_TYPES[i % FIELD_TYPES.length];
+      FieldVisitor field = writer.visitField(Opcodes.ACC_PUBLIC, "field" + i, type, null, null);
+      field.visitAnnotation(NULLABLE, true).visitEnd();
+      field.visitEnd();
+
+      MethodVisitor method =
+          writer.visitMethod(
+              Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "method" + i, "()" + type, null, null);
+      method.visitAnnotation(NULLABLE, true).visitEnd();
+      method.visitEnd();
+    }
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /**
+   * Generates a class whose methods call a {@code @Nullable} method and JDK methods many times,
+   * then return the result. Put the class in a {@code @NullMarked} package to make its methods
+   * target of {@link ReturnUnexpectedNullDetector}.
+   */
+  static byte[] invocationHeavy(String className, int methods, int invocationsPerMethod) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(
+        Opcodes.V11, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", new String[0]);
+
+    MethodVisitor helper =
+        writer.visitMethod(Opcodes.ACC_STATIC, "maybeNull", "(I)Ljava/lang/String;", null, null);
+    helper.visitAnnotation(NULLABLE, true).visitEnd();
+    helper.visitCode();
+    helper.visitVarInsn(Opcodes.ILOAD, 0);
+    helper.visitMethodInsn(
+        Opcodes.INVOKESTATIC, "java/lang/Integer", "toString", "(I)Ljava/lang/String;", false);
+    helper.visitInsn(Opcodes.ARETURN);
+    helper.visitMaxs(0, 0);
+    helper.visitEnd();
+
+    String valueOf =
+        Type.getMethodDescriptor(Type.getType(String.class), Type.getType(Object.class));
+    for (int i = 0; i < methods; ++i) {
+      MethodVisitor method =
+          writer.visitMethod(
+              Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+              "method" + i,
+              "()Ljava/lang/String;",
+              null,
+              null);
+      method.visitCode();
+      for (int j = 0; j < invocationsPerMethod; ++j) {
+        method.visitLdcInsn(j);
+        method.visitMethodInsn(
+            Opcodes.INVOKESTATIC, className, "maybeNull", "(I)Ljava/lang/String;", false);
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/String", "valueOf", valueOf, false);
+        method.visitMethodInsn(
+            Opcodes.INVOKEVIRTUAL, "java/lang/String", "trim", "()Ljava/lang/String;", false);
+        method.visitInsn(Opcodes.POP);
+      }
+      method.visitInsn(Opcodes.ICONST_0);
+      method.visitMethodInsn(
+          Opcodes.INVOKESTATIC, className, "maybeNull", "(I)Ljava/lang/String;", false);
+      method.visitInsn(Opcodes.ARETURN);
+      method.visitMaxs(0, 0);
+      method.visitEnd();
+    }
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /**
+   * Generates a class whose methods take a {@code @Nullable} value, then replace it many times in a
+   * chain of branches like {@code if (s == null) s = maybeNull(i);}, and return it after a null
+   * check. Every branch merges two values, so the null check analysis has to follow all of them.
+   */
+  static byte[] nullCheckedBranches(String className, int methods, int branchesPerMethod) {
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+    writer.visit(
+        Opcodes.V11, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", new String[0]);
+
+    MethodVisitor helper =
+        writer.visitMethod(Opcodes.ACC_STATIC, "maybeNull", "(I)Ljava/lang/String;", null, null);
+    helper.visitAnnotation(NULLABLE, true).visitEnd();
+    helper.visitCode();
+    helper.visitInsn(Opcodes.ACONST_NULL);
+    helper.visitInsn(Opcodes.ARETURN);
+    helper.visitMaxs(0, 0);
+    helper.visitEnd();
+
+    for (int i = 0; i < methods; ++i) {
+      MethodVisitor method =
+          writer.visitMethod(
+              Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC,
+              "method" + i,
+              "()Ljava/lang/String;",
+              null,
+              null);
+      method.visitCode();
+      method.visitInsn(Opcodes.ICONST_0);
+      method.visitMethodInsn(
+          Opcodes.INVOKESTATIC, className, "maybeNull", "(I)Ljava/lang/String;", false);
+      method.visitVarInsn(Opcodes.ASTORE, 0);
+      for (int j = 0; j < branchesPerMethod; ++j) {
+        Label nonNull = new Label();
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitJumpInsn(Opcodes.IFNONNULL, nonNull);
+        method.visitLdcInsn(j);
+        method.visitMethodInsn(
+            Opcodes.INVOKESTATIC, className, "maybeNull", "(I)Ljava/lang/String;", false);
+        method.visitVarInsn(Opcodes.ASTORE, 0);
+        method.visitLabel(nonNull);
+      }
+      Label checked = new Label();
+      method.visitVarInsn(Opcodes.ALOAD, 0);
+      method.visitJumpInsn(Opcodes.IFNONNULL, checked);
+      method.visitLdcInsn("");
+      method.visitInsn(Opcodes.ARETURN);
+      method.visitLabel(checked);
+      method.visitVarInsn(Opcodes.ALOAD, 0);
+      method.visitInsn(Opcodes.ARETURN);
+      method.visitMaxs(0, 0);
+      method.visitEnd();
+    }
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /** Generates {@code package-info.class} annotated with {@code @NullMarked}. */
+  static byte[] nullMarkedPackage(String packageName) {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(
+        Opcodes.V11,
+        Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE | Opcodes.ACC_SYNTHETIC,
+        packageName + "/package-info",
+        null,
+        "java/lang/Object",
+        null);
+    writer.visitAnnotation(NULL_MARKED, true).visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /** Writes the class file into the directory, following the package structure. */
+  static void write(Path directory, String className, byte[] bytes) throws IOException {
+    Path file = directory.resolve(className + ".class");
+    Files.createDirectories(file.getParent());
+    Files.write(file, bytes);
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generates a jar file of many synthetic classes, to measure how the analysis scales with the size
+ * of the codebase. Classes are grouped in {@code @NullMarked} packages, and extend each other in
+ * chains to make hierarchies. Each method passes its parameter through methods of other classes,
+ * and returns the result. The corpus depends on JDK classes only, and the same configuration always
+ * generates the same corpus.
+ */
+final class SyntheticCorpus {
+  static final String PACKAGE_PREFIX = "com/example/corpus/p";
+
+  /** Number of classes in each package, like a large package of real projects. */
+  private static final int CLASSES_PER_PACKAGE = 1000;
+
+  private static final String METHOD_DESCRIPTOR = "(Ljava/lang/String;)Ljava/lang/String;";
+
+  private final int classes;
+  private final int methodsPerClass;
+  private final double annotationDensity;
+  private final int callsPerMethod;
+  private final int hierarchyDepth;
+
+  /**
+   * @param classes number of classes, excluding {@code package-info}
+   * @param methodsPerClass number of methods in each class, excluding the constructor
+   * @param annotationDensity probability that a return type or a parameter is {@code @Nullable}
+   * @param callsPerMethod number of methods of other classes that each method calls
+   * @param hierarchyDepth number of classes in each chain of subclasses, 1 to extend {@code Object}
+   *     only
+   */
+  SyntheticCorpus(
+      int classes,
+      int methodsPerClass,
+      double annotationDensity,
+      int callsPerMethod,
+      int hierarchyDepth) {
+    if (classes < 1 || methodsPerClass < 1 || hierarchyDepth < 1) {
+      throw new IllegalArgumentException("Corpus should have at least one class and one method");
+    }
+    this.classes = classes;
+    this.methodsPerClass = methodsPerClass;
+    this.annotationDensity = annotationDensity;
+    this.callsPerMethod = callsPerMethod;
+    this.hierarchyDepth = hierarchyDepth;
+  }
+
+  /** @return number of classes in the corpus, excluding {@code package-info} */
+  int size() {
+    return classes;
+  }
+
+  /** Writes the corpus into the given jar file. */
+  void writeJar(Path jar) throws IOException {
+    Random random = new Random(classes);
+    try (OutputStream output = Files.newOutputStream(jar);
+        JarOutputStream stream = new JarOutputStream(output)) {
+      for (int i = 0; i < classes; ++i) {
+        if (i % CLASSES_PER_PACKAGE == 0) {
+          String packageName = packageOf(i);
+          write(
+              stream,
+              packageName + "/package-info",
+              SyntheticClasses.nullMarkedPackage(packageName));
+        }
+        write(stream, classNameOf(i), generate(i, random));
+      }
+    }
+  }
+
+  private String packageOf(int index) {
+    return PACKAGE_PREFIX + index / CLASSES_PER_PACKAGE;
+  }
+
+  private String classNameOf(int index) {
+    return packageOf(index) + "/C" + index;
+  }
+
+  private byte[] generate(int index, Random random) {
+    String className = classNameOf(index);
+    // the first class of each chain extends Object, and others extend the previous class
+    String superName = index % hierarchyDepth == 0 ? "java/lang/Object" : classNameOf(index - 1);
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC, className, null, superName, null);
+
+    MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    constructor.visitCode();
+    constructor.visitVarInsn(Opcodes.ALOAD, 0);
+    constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+    constructor.visitInsn(Opcodes.RETURN);
+    constructor.visitMaxs(0, 0);
+    constructor.visitEnd();
+
+    for (int i = 0; i < methodsPerClass; ++i) {
+      // methods of the same name in subclasses override the ones in superclasses
+      MethodVisitor method =
+          writer.visitMethod(Opcodes.ACC_PUBLIC, "m" + i, METHOD_DESCRIPTOR, null, null);
+      if (random.nextDouble() < annotationDensity) {
+        method.visitAnnotation(SyntheticClasses.NULLABLE, true).visitEnd();
+      }
+      if (random.nextDouble() < annotationDensity) {
+        method.visitParameterAnnotation(0, SyntheticClasses.NULLABLE, true).visitEnd();
+      }
+      method.visitCode();
+      method.visitVarInsn(Opcodes.ALOAD, 1);
+      for (int j = 0; j < callsPerMethod; ++j) {
+        // value = new Callee().mK(value);
+        String callee = classNameOf(random.nextInt(classes));
+        method.visitTypeInsn(Opcodes.NEW, callee);
+        method.visitInsn(Opcodes.DUP);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, callee, "<init>", "()V", false);
+        method.visitInsn(Opcodes.SWAP);
+        method.visitMethodInsn(
+            Opcodes.INVOKEVIRTUAL,
+            callee,
+            "m" + random.nextInt(methodsPerClass),
+            METHOD_DESCRIPTOR,
+            false);
+      }
+      method.visitInsn(Opcodes.ARETURN);
+      method.visitMaxs(0, 0);
+      method.visitEnd();
+    }
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  private static void write(JarOutputStream stream, String className, byte[] bytes)
+      throws IOException {
+    stream.putNextEntry(new JarEntry(className + ".class"));
+    stream.write(bytes);
+    stream.closeEntry();
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.OpcodeStack.CustomUserValue;
+import edu.umd.cs.findbugs.OpcodeStack.Item;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.Global;
+import org.apache.bcel.Const;
+
+/**
+ * Detector that finds null or nullable values passed to non-null parameters of invoked methods. The
+ * invoked method can be in any class, so a class is analysed if it calls a class that may declare
+ * nullness.
+ */
+@CustomUserValue
+public class ArgumentUnexpectedNullDetector extends NullnessStackDetector {
+  public ArgumentUnexpectedNullDetector(BugReporter reporter) {
+    super(reporter);
+  }
+
+  @Override
+  boolean isRelevant(NullnessDatabase database, XClass clazz) {
+    return callsNonNullMembers(database, clazz);
+  }
+
+  @Override
+  public void sawOpcode(int seen) {
+    switch (seen) {
+      case Const.INVOKEINTERFACE:
+      case Const.INVOKESPECIAL:
+      case Const.INVOKESTATIC:
+      case Const.INVOKEVIRTUAL:
+        XMethod callee = getXMethodOperand();
+        if (callee == null) {
+          return;
+        }
+        NullnessDatabase database = Global.getAnalysisCache().getDatabase(NullnessDatabase.class);
+        long[] nonNull = database.findNonNullParametersOf(callee);
+        int parameters = callee.getNumParams();
+        if (nonNull.length == 0 || stack.getStackDepth() < parameters) {
+          return;
+        }
+        for (int i = 0; i < parameters; ++i) {
+          // the last argument is on the top of the stack
+          Item item = stack.getStackItem(parameters - 1 - i);
+          if (ParameterBitmap.isSet(nonNull, i) && canBeNull(item) && !isCheckedNonNull(i)) {
+            report(
+                new BugInstance(
+                        "JSPECIFY_ARGUMENT_UNEXPECTED_NULL",
+                        item.isNull() ? Priorities.HIGH_PRIORITY : Priorities.NORMAL_PRIORITY)
+                    .addClassAndMethod(this)
+                    .addCalledMethod(this)
+                    .addParameterAnnotation(
+                        i, item.isNull() ? "INT_NULL_ARG" : "INT_MAYBE_NULL_ARG")
+                    .addSourceLine(this));
+          }
+        }
+        return;
+      default: // do nothing
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugAnnotation;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.FieldAnnotation;
+import edu.umd.cs.findbugs.IntAnnotation;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jspecify.nullness.NullMarked;
+
+/**
+ * Bugs found in the visiting class, reported to the shared {@link BugReporter} at once when the
+ * class is done. Bugs of the same pattern at the same member and instruction are reported once,
+ * with the highest priority among them, so a member annotated twice or visited by two paths does
+ * not produce duplicated warnings.
+ */
+@NullMarked
+final class ClassBugBuffer {
+  private final Map<String, BugInstance> bugs = new LinkedHashMap<>();
+  private int duplicates;
+
+  void add(BugInstance bug) {
+    BugInstance found = bugs.putIfAbsent(keyOf(bug), bug);
+    if (found != null) {
+      ++duplicates;
+      // smaller value is higher priority
+      if (bug.getPriority() < found.getPriority()) {
+        found.setPriority(bug.getPriority());
+      }
+    }
+  }
+
+  /** @return number of buffered bugs, excluding duplicates */
+  int size() {
+    return bugs.size();
+  }
+
+  /** Discards buffered bugs, e.g. when the analysis of a class failed. */
+  void clear() {
+    bugs.clear();
+    duplicates = 0;
+  }
+
+  /**
+   * Reports buffered bugs in the order they were found, and clears the buffer.
+   *
+   * @return the reported bugs
+   */
+  List<BugInstance> flush(BugReporter reporter, PluginMetrics metrics) {
+    List<BugInstance> reported = new ArrayList<>(bugs.values());
+    reported.forEach(reporter::reportBug);
+    metrics.countDuplicateBugs(duplicates);
+    clear();
+    return reported;
+  }
+
+  /**
+   * @return key of the given bug, made of its pattern, member, bytecode offset and integer
+   *     annotations such as the index of parameter
+   */
+  private static String keyOf(BugInstance bug) {
+    StringBuilder key = new StringBuilder(bug.getType());
+    ClassAnnotation clazz = bug.getPrimaryClass();
+    key.append('|').append(clazz == null ? "" : clazz.getClassName()).append('|');
+    MethodAnnotation method = bug.getPrimaryMethod();
+    if (method != null) {
+      key.append(method.getMethodName()).append(method.getMethodSignature());
+    }
+    key.append('|');
+    FieldAnnotation field = bug.getPrimaryField();
+    if (field != null) {
+      key.append(field.getFieldName());
+    }
+    key.append('|').append(bug.getPrimarySourceLineAnnotation().getStartBytecode());
+    for (BugAnnotation annotation : bug.getAnnotations()) {
+      if (annotation instanceof IntAnnotation) {
+        key.append('|').append(((IntAnnotation) annotation).getValue());
+      }
+    }
+    return key.toString();
+  }
+}
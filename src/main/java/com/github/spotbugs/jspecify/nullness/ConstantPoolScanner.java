@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.jspecify.nullness.NullMarked;
+
+/**
+ * Reads the constant pool of a class file to tell whether the class refers nullness annotations,
+ * without parsing the class by ASM or BCEL. Names of annotations used in a class are always in its
+ * constant pool, so a class that does not refer them cannot be annotated. A nickname of nullness
+ * annotations can be told only by reading the annotation type, so this scanner also tells whether
+ * the class has annotations at all, by the names of annotation attributes.
+ */
+@NullMarked
+final class ConstantPoolScanner {
+  /** Result of {@link #scan}: the class refers nullness annotations, or it cannot be read. */
+  static final int REFERS_NULLNESS = 2;
+  /** Result of {@link #scan}: the class has annotations that may be unknown nicknames. */
+  static final int HAS_OTHER_ANNOTATIONS = 1;
+  /** Result of {@link #scan}: the class has no annotation, so it surely does not refer nullness. */
+  static final int NO_ANNOTATIONS = 0;
+
+  private static final byte[] JSPECIFY_PACKAGE =
+      "org/jspecify/".getBytes(StandardCharsets.US_ASCII);
+  // names of attributes that hold annotations, like RuntimeVisibleAnnotations
+  private static final byte[] ANNOTATIONS_PREFIX = "Runtime".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] ANNOTATIONS_SUFFIX =
+      "Annotations".getBytes(StandardCharsets.US_ASCII);
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_FLOAT = 4;
+  private static final int CONSTANT_LONG = 5;
+  private static final int CONSTANT_DOUBLE = 6;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_STRING = 8;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_INTERFACE_METHODREF = 11;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_METHOD_TYPE = 16;
+  private static final int CONSTANT_DYNAMIC = 17;
+  private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+  private static final int CONSTANT_MODULE = 19;
+  private static final int CONSTANT_PACKAGE = 20;
+
+  /** Offset of {@code constant_pool_count} in the class file. */
+  private static final int CONSTANT_POOL_COUNT = 8;
+
+  private ConstantPoolScanner() {}
+
+  /**
+   * @return true if the class refers a JSpecify type, or if the class file cannot be read. False
+   *     means that the class is surely irrelevant.
+   */
+  static boolean refersNullness(byte[] classFile) {
+    return scan(classFile, Map.of()) == REFERS_NULLNESS;
+  }
+
+  /**
+   * @param aliases alias table of nullness annotations, built by {@link Nullness#putAlias(Map,
+   *     String, Nullness)}
+   * @return {@link #REFERS_NULLNESS} if the class refers a JSpecify type or an alias in the given
+   *     table, or if the class file cannot be read, {@link #HAS_OTHER_ANNOTATIONS} if it has other
+   *     annotations, {@link #NO_ANNOTATIONS} otherwise
+   */
+  static int scan(byte[] classFile, Map<String, Nullness> aliases) {
+    if (classFile.length < CONSTANT_POOL_COUNT + 2) {
+      return REFERS_NULLNESS;
+    }
+    boolean checkAliases = !aliases.isEmpty();
+    boolean hasAnnotations = false;
+    int count = readUnsignedShort(classFile, CONSTANT_POOL_COUNT);
+    int offset = CONSTANT_POOL_COUNT + 2;
+    for (int i = 1; i < count; ++i) {
+      if (offset >= classFile.length) {
+        return REFERS_NULLNESS;
+      }
+      int tag = classFile[offset];
+      switch (tag) {
+        case CONSTANT_UTF8:
+          if (offset + 3 > classFile.length) {
+            return REFERS_NULLNESS;
+          }
+          int length = readUnsignedShort(classFile, offset + 1);
+          int start = offset + 3;
+          if (start + length > classFile.length) {
+            return REFERS_NULLNESS;
+          }
+          if (contains(classFile, start, length, JSPECIFY_PACKAGE)
+              || (checkAliases && isAlias(classFile, start, length, aliases))) {
+            return REFERS_NULLNESS;
+          }
+          hasAnnotations = hasAnnotations || isAnnotationsAttribute(classFile, start, length);
+          offset = start + length;
+          break;
+        case CONSTANT_CLASS:
+        case CONSTANT_STRING:
+        case CONSTANT_METHOD_TYPE:
+        case CONSTANT_MODULE:
+        case CONSTANT_PACKAGE:
+          offset += 3;
+          break;
+        case CONSTANT_METHOD_HANDLE:
+          offset += 4;
+          break;
+        case CONSTANT_INTEGER:
+        case CONSTANT_FLOAT:
+        case CONSTANT_FIELDREF:
+        case CONSTANT_METHODREF:
+        case CONSTANT_INTERFACE_METHODREF:
+        case CONSTANT_NAME_AND_TYPE:
+        case CONSTANT_DYNAMIC:
+        case CONSTANT_INVOKE_DYNAMIC:
+          offset += 5;
+          break;
+        case CONSTANT_LONG:
+        case CONSTANT_DOUBLE:
+          // takes two entries in the constant pool
+          offset += 9;
+          ++i;
+          break;
+        default:
+          // unknown format, so we cannot tell
+          return REFERS_NULLNESS;
+      }
+    }
+    return hasAnnotations ? HAS_OTHER_ANNOTATIONS : NO_ANNOTATIONS;
+  }
+
+  private static boolean contains(byte[] bytes, int start, int length, byte[] target) {
+    int last = start + length - target.length;
+    for (int i = start; i <= last; ++i) {
+      int j = 0;
+      while (j < target.length && bytes[i + j] == target[j]) {
+        ++j;
+      }
+      if (j == target.length) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return true if the UTF8 entry is a name of attributes that hold annotations */
+  private static boolean isAnnotationsAttribute(byte[] bytes, int start, int length) {
+    return length >= ANNOTATIONS_PREFIX.length + ANNOTATIONS_SUFFIX.length
+        && startsWith(bytes, start, ANNOTATIONS_PREFIX)
+        && startsWith(bytes, start + length - ANNOTATIONS_SUFFIX.length, ANNOTATIONS_SUFFIX);
+  }
+
+  private static boolean startsWith(byte[] bytes, int start, byte[] target) {
+    for (int i = 0; i < target.length; ++i) {
+      if (bytes[start + i] != target[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return true if the UTF8 entry is a type descriptor of an alias in the given table */
+  private static boolean isAlias(
+      byte[] bytes, int start, int length, Map<String, Nullness> aliases) {
+    if (length < 3 || bytes[start] != 'L' || bytes[start + length - 1] != ';') {
+      return false;
+    }
+    // class names in descriptors are mostly ASCII, and other names do not match any alias
+    return aliases.containsKey(new String(bytes, start, length, StandardCharsets.UTF_8));
+  }
+
+  private static int readUnsignedShort(byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+  }
+}
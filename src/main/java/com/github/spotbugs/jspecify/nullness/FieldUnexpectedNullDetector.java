@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.OpcodeStack.CustomUserValue;
+import edu.umd.cs.findbugs.OpcodeStack.Item;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.classfile.Global;
+import java.util.Optional;
+import org.apache.bcel.Const;
+
+/**
+ * Detector that finds null or nullable values stored to non-null fields. Fields of other classes
+ * can be written too, so a class is analysed if it refers a class that may declare nullness.
+ */
+@CustomUserValue
+public class FieldUnexpectedNullDetector extends NullnessStackDetector {
+  public FieldUnexpectedNullDetector(BugReporter reporter) {
+    super(reporter);
+  }
+
+  @Override
+  boolean isRelevant(NullnessDatabase database, XClass clazz) {
+    return callsNonNullMembers(database, clazz);
+  }
+
+  @Override
+  public void sawOpcode(int seen) {
+    switch (seen) {
+      case Const.PUTFIELD:
+      case Const.PUTSTATIC:
+        XField field = getXFieldOperand();
+        if (field == null || stack.getStackDepth() == 0) {
+          return;
+        }
+        NullnessDatabase database = Global.getAnalysisCache().getDatabase(NullnessDatabase.class);
+        Optional<Nullness> nullness = database.findNullnessOfField(field);
+        Item item = stack.getStackItem(0);
+        if (nullness.isPresent()
+            && !nullness.get().canBeNull()
+            && canBeNull(item)
+            && !isCheckedNonNull(0)) {
+          report(
+              new BugInstance(
+                      "JSPECIFY_FIELD_UNEXPECTED_NULL",
+                      item.isNull() ? Priorities.HIGH_PRIORITY : Priorities.NORMAL_PRIORITY)
+                  .addClassAndMethod(this)
+                  .addReferencedField(this)
+                  .addSourceLine(this));
+        }
+        return;
+      default: // do nothing
+    }
+  }
+}
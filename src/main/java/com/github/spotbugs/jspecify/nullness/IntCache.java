@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+
+/**
+ * Thread-safe memoizing cache keyed by identifiers of {@link SymbolTable}, that keeps at most
+ * {@link #maximumSize} entries in an open addressing table of primitive keys. When the limit is
+ * reached an arbitrary entry gets evicted, which is good enough for analysis results that are cheap
+ * to recompute but expensive to compute repeatedly. Lookups read the table optimistically like
+ * {@link NullnessTable}.
+ */
+@NullMarked
+final class IntCache<V> {
+  private static final int INITIAL_CAPACITY = 64;
+  /** Key of empty slots. Identifiers of symbols are positive. */
+  private static final int ABSENT = 0;
+
+  private final StampedLock lock = new StampedLock();
+  private final int maximumSize;
+  /** Slots of the table, replaced by a larger one when it is half full. */
+  private Slots slots = new Slots(INITIAL_CAPACITY);
+
+  private int size;
+  /** Index of the slot to start searching an entry to evict from. */
+  private int evictionCursor;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  IntCache(int maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize should be positive but was " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * Returns the cached value, or computes and caches it. The function is invoked without holding
+   * any lock, so it may call other caches or the {@code IAnalysisCache} safely. Two threads may
+   * compute the value for the same key concurrently; the first stored value wins.
+   */
+  V get(int key, IntFunction<? extends V> function) {
+    V value = getIfPresent(key);
+    if (value != null) {
+      hits.increment();
+      return value;
+    }
+    misses.increment();
+    V computed = function.apply(key);
+    if (computed == null) {
+      throw new NullPointerException("Function returned null for " + key);
+    }
+    return put(key, computed);
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  V getIfPresent(int key) {
+    long stamp = lock.tryOptimisticRead();
+    Object value = slots.find(key);
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        value = slots.find(key);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return (V) value;
+  }
+
+  @SuppressWarnings("unchecked")
+  private V put(int key, V value) {
+    if (key == ABSENT) {
+      throw new IllegalArgumentException("Key should be an identifier of symbol but was " + key);
+    }
+    long stamp = lock.writeLock();
+    try {
+      int index = slots.indexOf(key);
+      if (slots.keys[index] != ABSENT) {
+        return (V) slots.values[index];
+      }
+      if (size >= maximumSize) {
+        evictOne();
+        index = slots.indexOf(key);
+      } else if ((size + 1) * 2 > slots.keys.length) {
+        slots = slots.grow();
+        index = slots.indexOf(key);
+      }
+      // readers may see the key before the value, but then the stamp tells them to retry
+      slots.values[index] = value;
+      slots.keys[index] = key;
+      ++size;
+      return value;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private void evictOne() {
+    int mask = slots.keys.length - 1;
+    for (int probe = 0; probe <= mask; ++probe) {
+      int index = (evictionCursor + probe) & mask;
+      if (slots.keys[index] != ABSENT) {
+        slots.remove(index);
+        --size;
+        evictionCursor = (index + 1) & mask;
+        return;
+      }
+    }
+  }
+
+  /** Removes all the entries. Counts of hits and misses are kept. */
+  void clear() {
+    long stamp = lock.writeLock();
+    try {
+      slots = new Slots(INITIAL_CAPACITY);
+      size = 0;
+      evictionCursor = 0;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  int size() {
+    long stamp = lock.readLock();
+    try {
+      return size;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  long hitCount() {
+    return hits.sum();
+  }
+
+  long missCount() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("size=%d, hits=%d, misses=%d", size(), hits.sum(), misses.sum());
+  }
+
+  /** Keys and values of the same capacity, which is a power of two. */
+  private static final class Slots {
+    final int[] keys;
+    final @Nullable Object[] values;
+
+    Slots(int capacity) {
+      keys = new int[capacity];
+      values = new Object[capacity];
+    }
+
+    /** @return the stored value, or null if the key is not in the slots */
+    @Nullable
+    Object find(int key) {
+      int mask = keys.length - 1;
+      int index = hash(key) & mask;
+      // at most half of slots are used, so an empty slot is always found
+      for (int probe = 0; probe <= mask; ++probe) {
+        int found = keys[index];
+        if (found == ABSENT) {
+          return null;
+        }
+        if (found == key) {
+          return values[index];
+        }
+        index = (index + 1) & mask;
+      }
+      return null;
+    }
+
+    /** @return index of the slot that has the given key, or of the empty slot to store it */
+    int indexOf(int key) {
+      int mask = keys.length - 1;
+      int index = hash(key) & mask;
+      while (keys[index] != ABSENT && keys[index] != key) {
+        index = (index + 1) & mask;
+      }
+      return index;
+    }
+
+    /**
+     * Removes the entry at the given index, and shifts following entries of the same probe sequence
+     * back, so lookups do not need tombstones.
+     */
+    void remove(int index) {
+      int mask = keys.length - 1;
+      int hole = index;
+      for (int i = (index + 1) & mask; keys[i] != ABSENT; i = (i + 1) & mask) {
+        int home = hash(keys[i]) & mask;
+        // an entry can fill the hole unless its home slot is between the hole and itself
+        boolean between = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+        if (!between) {
+          keys[hole] = keys[i];
+          values[hole] = values[i];
+          hole = i;
+        }
+      }
+      keys[hole] = ABSENT;
+      values[hole] = null;
+    }
+
+    Slots grow() {
+      Slots grown = new Slots(keys.length * 2);
+      for (int i = 0; i < keys.length; ++i) {
+        int key = keys[i];
+        if (key != ABSENT) {
+          int index = grown.indexOf(key);
+          grown.keys[index] = key;
+          grown.values[index] = values[i];
+        }
+      }
+      return grown;
+    }
+
+    /** Identifiers are sequential, so they are spread over the slots by Fibonacci hashing. */
+    private static int hash(int key) {
+      int hash = key * 0x9E3779B9;
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.ba.SignatureParser;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.BootstrapMethod;
+import org.apache.bcel.classfile.BootstrapMethods;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantInvokeDynamic;
+import org.apache.bcel.classfile.ConstantMethodHandle;
+import org.apache.bcel.classfile.ConstantMethodType;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.JavaClass;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+
+/**
+ * Finds the methods of functional interfaces that lambda bodies implement. javac compiles a lambda
+ * into a synthetic {@code lambda$} method and an {@code INVOKEDYNAMIC} whose bootstrap arguments
+ * refer the method and the interface method, so the whole class is resolved in one pass over its
+ * constant pool instead of searching the bootstrap methods for each lambda.
+ */
+@NullMarked
+final class LambdaTargets {
+  @SlashedClassName
+  private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+
+  private LambdaTargets() {}
+
+  /** @return true if the given method is a body of lambda expression */
+  static boolean isLambda(XMethod method) {
+    return method.isSynthetic() && method.getName().startsWith("lambda$");
+  }
+
+  /**
+   * @return interface methods implemented by lambda bodies in the given class, keyed by the name
+   *     and signature of the lambda body
+   */
+  static MemberTable<MethodDescriptor> of(JavaClass javaClass, SymbolTable symbols) {
+    BootstrapMethod[] bootstrapMethods = findBootstrapMethods(javaClass);
+    if (bootstrapMethods.length == 0) {
+      return MemberTable.empty();
+    }
+    ConstantPool constantPool = javaClass.getConstantPool();
+    @SlashedClassName String className = javaClass.getClassName().replace('.', '/');
+    MemberTable<MethodDescriptor> targets = new MemberTable<>();
+    for (Constant constant : constantPool.getConstantPool()) {
+      if (!(constant instanceof ConstantInvokeDynamic)) {
+        continue;
+      }
+      ConstantInvokeDynamic invokeDynamic = (ConstantInvokeDynamic) constant;
+      int index = invokeDynamic.getBootstrapMethodAttrIndex();
+      if (index >= bootstrapMethods.length) {
+        continue;
+      }
+      BootstrapMethod bootstrapMethod = bootstrapMethods[index];
+      int[] arguments = bootstrapMethod.getBootstrapArguments();
+      ConstantCP factory = referenceOf(constantPool, bootstrapMethod.getBootstrapMethodRef());
+      if (factory == null
+          || !LAMBDA_METAFACTORY.equals(classNameOf(constantPool, factory))
+          || arguments.length < 3) {
+        continue;
+      }
+      // arguments of metafactory: the interface method type, the implementation and its type
+      Constant interfaceMethodType = constantPool.getConstant(arguments[0]);
+      ConstantCP implementation = referenceOf(constantPool, arguments[1]);
+      if (!(interfaceMethodType instanceof ConstantMethodType)
+          || implementation == null
+          || !className.equals(classNameOf(constantPool, implementation))) {
+        continue;
+      }
+      ConstantNameAndType lambda = nameAndTypeOf(constantPool, implementation);
+      ConstantNameAndType callSite = nameAndTypeOf(constantPool, invokeDynamic);
+      String lambdaName = lambda.getName(constantPool);
+      if (!lambdaName.startsWith("lambda$")) {
+        // method references implement the interface by an existing method
+        continue;
+      }
+      String interfaceType =
+          new SignatureParser(callSite.getSignature(constantPool)).getReturnTypeSignature();
+      if (!interfaceType.startsWith("L")) {
+        continue;
+      }
+      String descriptor =
+          ((ConstantUtf8)
+                  constantPool.getConstant(
+                      ((ConstantMethodType) interfaceMethodType).getDescriptorIndex(),
+                      Const.CONSTANT_Utf8))
+              .getBytes();
+      targets.put(
+          symbols.memberKey(lambdaName, lambda.getSignature(constantPool)),
+          DescriptorFactory.instance()
+              .getMethodDescriptor(
+                  interfaceType.substring(1, interfaceType.length() - 1),
+                  callSite.getName(constantPool),
+                  descriptor,
+                  false));
+    }
+    return targets;
+  }
+
+  private static BootstrapMethod[] findBootstrapMethods(JavaClass javaClass) {
+    for (Attribute attribute : javaClass.getAttributes()) {
+      if (attribute instanceof BootstrapMethods) {
+        return ((BootstrapMethods) attribute).getBootstrapMethods();
+      }
+    }
+    return new BootstrapMethod[0];
+  }
+
+  /** @return the method that the given {@code CONSTANT_MethodHandle} refers, or null */
+  @Nullable
+  private static ConstantCP referenceOf(ConstantPool constantPool, int methodHandle) {
+    Constant constant = constantPool.getConstant(methodHandle);
+    if (!(constant instanceof ConstantMethodHandle)) {
+      return null;
+    }
+    Constant reference =
+        constantPool.getConstant(((ConstantMethodHandle) constant).getReferenceIndex());
+    return reference instanceof ConstantCP ? (ConstantCP) reference : null;
+  }
+
+  @SlashedClassName
+  private static String classNameOf(ConstantPool constantPool, ConstantCP reference) {
+    return constantPool.getConstantString(reference.getClassIndex(), Const.CONSTANT_Class);
+  }
+
+  private static ConstantNameAndType nameAndTypeOf(
+      ConstantPool constantPool, ConstantCP reference) {
+    return (ConstantNameAndType)
+        constantPool.getConstant(reference.getNameAndTypeIndex(), Const.CONSTANT_NameAndType);
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+
+/**
+ * Values of members in a class, keyed by {@link SymbolTable#memberKey}. Keys are kept sorted in a
+ * {@code long} array, so a lookup is a binary search without boxing nor hashing strings. Tables are
+ * filled while their class is read, and never modified once returned.
+ */
+@NullMarked
+final class MemberTable<V> {
+  private static final MemberTable<?> EMPTY = new MemberTable<>();
+
+  private long[] keys = new long[0];
+  private @Nullable Object[] values = new Object[0];
+  private int size;
+
+  @SuppressWarnings("unchecked")
+  static <V> MemberTable<V> empty() {
+    return (MemberTable<V>) EMPTY;
+  }
+
+  /** @return the value of the given member, or null if it is not in this table */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  V get(long key) {
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    return index < 0 ? null : (V) values[index];
+  }
+
+  /** Stores the value of the given member, replacing the stored one. */
+  void put(long key, V value) {
+    if (this == EMPTY) {
+      throw new UnsupportedOperationException("The empty table is shared");
+    }
+    int index = Arrays.binarySearch(keys, 0, size, key);
+    if (index >= 0) {
+      values[index] = value;
+      return;
+    }
+    int insertion = -index - 1;
+    if (size == keys.length) {
+      int capacity = Math.max(4, size * 2);
+      keys = Arrays.copyOf(keys, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    System.arraycopy(keys, insertion, keys, insertion + 1, size - insertion);
+    System.arraycopy(values, insertion, values, insertion + 1, size - insertion);
+    keys[insertion] = key;
+    values[insertion] = value;
+    ++size;
+  }
+
+  /** @return values in this table, in the order of their keys */
+  @SuppressWarnings("unchecked")
+  List<V> values() {
+    List<V> result = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) {
+      result.add((V) values[i]);
+    }
+    return result;
+  }
+
+  int size() {
+    return size;
+  }
+}
@@ -17,62 +17,237 @@ package com.github.spotbugs.jspecify.nullness;
 
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.IntAnnotation;
 import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.asm.ClassNodeDetector;
 import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
 import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
 import edu.umd.cs.findbugs.classfile.FieldDescriptor;
 import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.classfile.engine.asm.FindBugsASM;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.UnaryOperator;
 import org.jspecify.nullness.NullMarked;
 import org.jspecify.nullness.Nullable;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.TypeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class NeedlessAnnotationDetector extends ClassNodeDetector {
   private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private final Set<Type> INTRINSICALLY_NOT_NULLABLE_TYPES =
-      Set.of(
-          Type.BOOLEAN_TYPE,
-          Type.BYTE_TYPE,
-          Type.CHAR_TYPE,
-          Type.INT_TYPE,
-          Type.LONG_TYPE,
-          Type.FLOAT_TYPE,
-          Type.DOUBLE_TYPE);
+  private static final ClassDescriptor MODULE_INFO =
+      DescriptorFactory.createClassDescriptor("module-info");
 
+  /**
+   * Set this system property to {@code true} to log a report of nullness annotations found in each
+   * class, once at the end of analysis.
+   */
+  static final String PROPERTY_DIAGNOSTICS = "spotbugs.jspecify.diagnostics";
+
+  /** Default nullness declared by annotations on the visiting class. */
   @Nullable private Nullness nullness;
+  /** Descriptor of the first nullness annotation on the visiting class. */
+  @Nullable private String annotation;
+
   @SlashedClassName @Nullable private ClassDescriptor classDescriptor;
+  @Nullable private NullnessDatabase database;
+  /** Whether the visiting class is an enum. Resolved once per class in {@link #visitClass}. */
+  private boolean isEnum;
+  /** Diagnostics of visited classes, or {@code null} if the report is disabled. */
+  @Nullable private final Map<String, ClassDiagnostics> diagnostics;
+
+  @Nullable private ClassDiagnostics classDiagnostics;
+  /**
+   * Default nullness of scopes that enclose the visiting class. The class itself is pushed when its
+   * first member is visited, because its annotations are visited before members.
+   */
+  private final NullnessScopeStack scopes = new NullnessScopeStack();
+  /** Whether the visiting class is pushed to {@link #scopes}. */
+  private boolean inClassScope;
+
+  /** Bugs found in the visiting class, reported at the end of the class. */
+  private final ClassBugBuffer classBugs = new ClassBugBuffer();
+  /**
+   * Classes whose nullness the result of the visiting class depends on: the {@code package-info}
+   * and {@code module-info} that declare the defaults of its package, its enclosing classes, and
+   * the nicknames of nullness annotations that it uses.
+   */
+  private final Set<ClassDescriptor> dependencies = new HashSet<>();
 
   public NeedlessAnnotationDetector(BugReporter bugReporter) {
     super(bugReporter);
+    diagnostics = SystemProperties.getBoolean(PROPERTY_DIAGNOSTICS) ? new TreeMap<>() : null;
   }
 
   private boolean canBeNull(Type type) {
+    return !isPrimitive(type) && !isEnum;
+  }
+
+  private void report(BugInstance bug) {
+    classBugs.add(bug);
+  }
+
+  /**
+   * Finds nullness meant by the given annotation, and records it as a dependency of the visiting
+   * class if it is a nickname, because the meaning of a nickname can change without this class.
+   */
+  @Nullable
+  private Nullness findNullnessOfAnnotation(String descriptor) {
+    Nullness nullness = Objects.requireNonNull(database).findNullnessOfAnnotation(descriptor);
+    if (nullness != null && Nullness.lookup(descriptor) == null) {
+      dependencies.add(DescriptorFactory.createClassDescriptorFromSignature(descriptor));
+    }
+    return nullness;
+  }
+
+  /**
+   * Checks a nullness annotation on an element against the annotation found on the same element
+   * before, and against the default nullness of enclosing scopes. Each annotation is checked once
+   * when it is visited.
+   *
+   * @param declared nullness of the annotation found on the same element before, or null
+   * @param annotated nullness of the visiting annotation
+   * @param enclosingDefault effective default nullness of the scope that encloses the element
+   * @param addElement adds the annotated element to the bug
+   */
+  private void checkAnnotation(
+      @Nullable Nullness declared,
+      Nullness annotated,
+      Nullness enclosingDefault,
+      UnaryOperator<BugInstance> addElement) {
+    if (declared != null && declared != annotated) {
+      report(
+          addElement.apply(
+              new BugInstance("JSPECIFY_CONFLICTING_ANNOTATIONS", Priorities.NORMAL_PRIORITY)));
+    } else if (declared != null || annotated == enclosingDefault) {
+      report(
+          addElement.apply(
+              new BugInstance("JSPECIFY_REDUNDANT_ANNOTATION", Priorities.LOW_PRIORITY)));
+    }
+  }
+
+  /** Pushes the visiting class to {@link #scopes}, once its own annotations are visited. */
+  private Nullness enterClassScope() {
+    if (!inClassScope) {
+      scopes.push(nullness);
+      inClassScope = true;
+    }
+    return scopes.current();
+  }
+
+  private void pushEnclosingScopes(NullnessDatabase database, XClass clazz) {
+    PackageScopeIndex packageScopes = database.getPackageScopes();
+    scopes.reset();
+    // a missing module-info or package-info is a dependency too, because adding it changes defaults
+    dependencies.add(MODULE_INFO);
+    scopes.push(packageScopes.findModuleDefault(classDescriptor).orElse(null));
+    if (classDescriptor.getSimpleName().equals("package-info")) {
+      // annotations on package-info are the default of the package itself
+      return;
+    }
+    String packageName = NullnessIndex.packageNameOf(classDescriptor.getClassName());
+    dependencies.add(
+        DescriptorFactory.createClassDescriptor(
+            packageName.isEmpty() ? "package-info" : packageName + "/package-info"));
+    scopes.push(database.findPackageDefaultOf(classDescriptor).orElse(null));
+    List<XClass> enclosingClasses = database.findEnclosingClassesOf(clazz);
+    for (int i = enclosingClasses.size() - 1; i >= 0; --i) {
+      XClass enclosing = enclosingClasses.get(i);
+      dependencies.add(enclosing.getClassDescriptor());
+      scopes.push(database.findDeclaredDefaultOf(enclosing));
+    }
+  }
+
+  private static boolean isPrimitive(Type type) {
+    int sort = type.getSort();
+    return Type.BOOLEAN <= sort && sort <= Type.DOUBLE;
+  }
+
+  @Override
+  public void visitClass(ClassDescriptor classDescriptor) throws CheckedAnalysisException {
+    IAnalysisCache analysisCache = Global.getAnalysisCache();
+    NullnessDatabase database = analysisCache.getDatabase(NullnessDatabase.class);
+    PluginMetrics metrics = database.getMetrics();
+    long start = metrics.startTimer();
     final XClass clazz;
     try {
-      clazz = Global.getAnalysisCache().getClassAnalysis(XClass.class, classDescriptor);
+      clazz = analysisCache.getClassAnalysis(XClass.class, classDescriptor);
     } catch (CheckedAnalysisException e) {
+      metrics.countMissingClass();
       bugReporter.reportMissingClass(classDescriptor);
-      return false;
+      return;
+    }
+    String detector = getClass().getSimpleName();
+    if (!database.mayReferNullness(clazz)) {
+      metrics.countSkippedClass();
+      metrics.stopTimer(detector, start);
+      return;
+    }
+    NullnessFactStore factStore = database.getFactStore();
+    if (factStore.replay(database, clazz, detector, bugReporter)) {
+      metrics.countReplayedClass();
+      metrics.stopTimer(detector, start);
+      return;
+    }
+    ClassDescriptor superclass = clazz.getSuperclassDescriptor();
+    this.classDescriptor = classDescriptor;
+    this.database = database;
+    this.isEnum = superclass != null && superclass.matches(Enum.class);
+    this.nullness = null;
+    this.annotation = null;
+    this.inClassScope = false;
+    this.dependencies.clear();
+    pushEnclosingScopes(database, clazz);
+    this.classBugs.clear();
+    this.classDiagnostics =
+        diagnostics == null
+            ? null
+            : diagnostics.computeIfAbsent(
+                classDescriptor.getDottedClassName(), key -> new ClassDiagnostics());
+    try {
+      super.visitClass(classDescriptor);
+      factStore.record(
+          database, clazz, detector, dependencies, classBugs.flush(bugReporter, metrics));
+    } finally {
+      metrics.stopTimer(detector, start);
     }
-    return !INTRINSICALLY_NOT_NULLABLE_TYPES.contains(type)
-        && !clazz.getSuperclassDescriptor().matches(Enum.class);
   }
 
   @Override
-  public void visitClass(ClassDescriptor classDescriptor) throws CheckedAnalysisException {
-    this.classDescriptor = classDescriptor;
-    super.visitClass(classDescriptor);
+  public void finishPass() {
+    super.finishPass();
+    if (diagnostics == null || !log.isInfoEnabled()) {
+      return;
+    }
+    StringBuilder report =
+        new StringBuilder("Nullness annotations found in ")
+            .append(diagnostics.size())
+            .append(" classes (members, annotations, parameter annotations, needless):");
+    diagnostics.forEach(
+        (className, counts) -> {
+          if (counts.annotations + counts.parameterAnnotations > 0) {
+            report.append(System.lineSeparator()).append("  ").append(className).append(": ");
+            counts.appendTo(report);
+          }
+        });
+    log.info("{}", report);
   }
 
   @Override
@@ -81,10 +256,10 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
     boolean isStatic = (access & Modifier.STATIC) != 0;
     FieldDescriptor fieldDescriptor =
         new FieldDescriptor(classDescriptor.getClassName(), name, descriptor, isStatic);
-    return new FieldVisitor(
-        FindBugsASM.ASM_VERSION,
-        fieldDescriptor,
-        nullness == null ? Nullness.NO_EXPLICIT_CONFIG : nullness);
+    if (classDiagnostics != null) {
+      classDiagnostics.members++;
+    }
+    return new FieldVisitor(FindBugsASM.ASM_VERSION, fieldDescriptor, enterClassScope());
   }
 
   @Override
@@ -92,22 +267,26 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
       int access, String name, String descriptor, String signature, String[] exceptions) {
     MethodDescriptor methodDescriptor =
         new MethodDescriptor(classDescriptor.getClassName(), name, descriptor);
-    return new MethodVisitor(
-        FindBugsASM.ASM_VERSION,
-        methodDescriptor,
-        nullness == null ? Nullness.NO_EXPLICIT_CONFIG : nullness);
+    if (classDiagnostics != null) {
+      classDiagnostics.members++;
+    }
+    return new MethodVisitor(FindBugsASM.ASM_VERSION, methodDescriptor, enterClassScope());
   }
 
   @Override
   public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-    Nullness.from(descriptor)
-        .ifPresent(
-            newNullness -> {
-              if (this.nullness != null) {
-                // TODO jspecify_conflicting_annotations
-              }
-              this.nullness = newNullness;
-            });
+    Nullness newNullness = findNullnessOfAnnotation(descriptor);
+    if (newNullness != null && !inClassScope) {
+      if (classDiagnostics != null) {
+        classDiagnostics.annotations++;
+      }
+      checkAnnotation(
+          nullness, newNullness, scopes.current(), bug -> bug.addClass(classDescriptor));
+      if (this.nullness == null) {
+        this.nullness = newNullness;
+        this.annotation = descriptor;
+      }
+    }
 
     return super.visitAnnotation(descriptor, visible);
   }
@@ -117,8 +296,10 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
     private final FieldDescriptor fieldDescriptor;
     /** Default nullness in the current scope. */
     private final Nullness defaultNullness;
-    /** Nullness specified by the annotation on this method's return value. */
+    /** Nullness specified by the annotation on this field. */
     @Nullable private Nullness nullness;
+    /** Descriptor of the first nullness annotation on this field. */
+    @Nullable private String annotation;
 
     FieldVisitor(int api, FieldDescriptor fieldDescriptor, Nullness defaultNullness) {
       super(api);
@@ -129,13 +310,20 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
     @Override
     public void visitEnd() {
       super.visitEnd();
+      if (nullness != null) {
+        // share the annotation with detectors that read or write this field
+        database.addFieldNullness(fieldDescriptor, nullness);
+      }
       Nullness nullnessOfReturnedValue = nullness == null ? defaultNullness : nullness;
       Type type = Type.getType(fieldDescriptor.getSignature());
       if (!canBeNull(type)
           && nullnessOfReturnedValue.isSetExplicitly()
           && nullnessOfReturnedValue != Nullness.NOT_NULL) {
-        log.info("{} is annotated as nullable, but {} cannot be null", fieldDescriptor, type);
-        bugReporter.reportBug(
+        log.debug("{} is annotated as nullable, but {} cannot be null", fieldDescriptor, type);
+        if (classDiagnostics != null) {
+          classDiagnostics.needless++;
+        }
+        report(
             new BugInstance(
                     "JSPECIFY_NULLNESS_INTRINSICALLY_NOT_NULLABLE", Priorities.HIGH_PRIORITY)
                 .addClass(classDescriptor)
@@ -149,18 +337,45 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
 
     @Override
     public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-      Nullness.from(descriptor)
-          .ifPresent(
-              newNullness -> {
-                if (defaultNullness == newNullness) {
-                  // TODO 重複したアノテーション
-                } else if (nullness != null) {
-                  // TODO jspecify_conflicting_annotations
-                }
-                this.nullness = newNullness;
-              });
+      visitNullness(descriptor);
       return super.visitAnnotation(descriptor, visible);
     }
+
+    /** Handles {@code TYPE_USE} annotations on the type of this field like JSpecify's ones. */
+    @Override
+    @Nullable
+    public AnnotationVisitor visitTypeAnnotation(
+        int typeRef, @Nullable TypePath typePath, String descriptor, boolean visible) {
+      if (typePath == null) {
+        visitNullness(descriptor);
+      }
+      return super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+    }
+
+    private void visitNullness(String descriptor) {
+      Nullness newNullness = findNullnessOfAnnotation(descriptor);
+      // annotations targeting both FIELD and TYPE_USE are visited twice
+      if (newNullness == null || descriptor.equals(annotation)) {
+        return;
+      }
+      if (classDiagnostics != null) {
+        classDiagnostics.annotations++;
+      }
+      checkAnnotation(nullness, newNullness, defaultNullness, this::addField);
+      if (nullness == null) {
+        this.nullness = newNullness;
+        this.annotation = descriptor;
+      }
+    }
+
+    private BugInstance addField(BugInstance bug) {
+      return bug.addClass(classDescriptor)
+          .addField(
+              fieldDescriptor.getSlashedClassName(),
+              fieldDescriptor.getName(),
+              fieldDescriptor.getSignature(),
+              fieldDescriptor.isStatic());
+    }
   }
 
   @NullMarked
@@ -170,6 +385,12 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
     private final Nullness defaultNullness;
     /** Nullness specified by the annotation on this method's return value. */
     @Nullable private Nullness nullness;
+    /** Descriptor of the first nullness annotation on this method's return value. */
+    @Nullable private String annotation;
+    /** Nullness annotated on each parameter, allocated at the first parameter annotation. */
+    private Nullness @Nullable [] annotatedParameters;
+    /** Descriptor of the first nullness annotation on each parameter. */
+    private String @Nullable [] parameterAnnotations;
 
     MethodVisitor(int api, MethodDescriptor methodDescriptor, Nullness defaultNullness) {
       super(api);
@@ -179,21 +400,94 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
 
     @Override
     public void visitParameter(String name, int access) {
-      System.err.printf("visitParameter: %s%s%n", methodDescriptor.getSignature(), name);
+      log.trace("visitParameter: {} {}", methodDescriptor, name);
       super.visitParameter(name, access);
     }
 
     @Override
     public AnnotationVisitor visitParameterAnnotation(
         int parameter, String descriptor, boolean visible) {
-      Type[] types = Type.getArgumentTypes(methodDescriptor.getSignature());
-      Type type = types[parameter];
-      System.err.printf(
-          "visitParameterAnnotation: %s method parameter (%d) is type %s and annotated with %s%n",
-          methodDescriptor, parameter, type, descriptor);
+      visitParameterNullness(parameter, descriptor);
       return null;
     }
 
+    /**
+     * Handles {@code TYPE_USE} annotations on parameters like JSpecify's ones. Annotations on type
+     * arguments and array components have a type path, so they are not nullness of the parameter.
+     */
+    @Override
+    @Nullable
+    public AnnotationVisitor visitTypeAnnotation(
+        int typeRef, @Nullable TypePath typePath, String descriptor, boolean visible) {
+      TypeReference reference = new TypeReference(typeRef);
+      if (reference.getSort() == TypeReference.METHOD_FORMAL_PARAMETER && typePath == null) {
+        visitParameterNullness(reference.getFormalParameterIndex(), descriptor);
+      } else if (reference.getSort() == TypeReference.METHOD_RETURN && typePath == null) {
+        visitNullness(descriptor);
+      }
+      return super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+    }
+
+    private void visitParameterNullness(int parameter, String descriptor) {
+      Nullness parameterNullness = findNullnessOfAnnotation(descriptor);
+      if (parameterNullness == null) {
+        return;
+      }
+      Type[] types = Type.getArgumentTypes(methodDescriptor.getSignature());
+      if (parameter >= types.length) {
+        // javac does not count implicit parameters of some constructors
+        return;
+      }
+      if (annotatedParameters == null || parameterAnnotations == null) {
+        this.annotatedParameters = new Nullness[types.length];
+        this.parameterAnnotations = new String[types.length];
+      }
+      // annotations targeting both PARAMETER and TYPE_USE are visited twice
+      if (descriptor.equals(parameterAnnotations[parameter])) {
+        return;
+      }
+      if (classDiagnostics != null) {
+        classDiagnostics.parameterAnnotations++;
+      }
+      checkAnnotation(
+          annotatedParameters[parameter],
+          parameterNullness,
+          defaultNullness,
+          bug -> addMethod(bug).addParameterAnnotation(parameter, IntAnnotation.INT_VALUE));
+      if (parameterAnnotations[parameter] == null) {
+        annotatedParameters[parameter] = parameterNullness;
+        parameterAnnotations[parameter] = descriptor;
+      }
+      if (log.isTraceEnabled()) {
+        log.trace(
+            "{} method parameter ({}) is type {} and annotated with {}",
+            methodDescriptor,
+            parameter,
+            types[parameter],
+            descriptor);
+      }
+      if (isPrimitive(types[parameter]) && parameterNullness != Nullness.NOT_NULL) {
+        log.debug(
+            "Parameter {} of {} is annotated as nullable, but {} cannot be null",
+            parameter,
+            methodDescriptor,
+            types[parameter]);
+        if (classDiagnostics != null) {
+          classDiagnostics.needless++;
+        }
+        report(
+            new BugInstance(
+                    "JSPECIFY_NULLNESS_INTRINSICALLY_NOT_NULLABLE", Priorities.HIGH_PRIORITY)
+                .addClass(classDescriptor)
+                .addMethod(
+                    classDescriptor.getClassName(),
+                    methodDescriptor.getName(),
+                    methodDescriptor.getSignature(),
+                    methodDescriptor.isStatic())
+                .addParameterAnnotation(parameter, IntAnnotation.INT_VALUE));
+      }
+    }
+
     @Override
     public void visitEnd() {
       super.visitEnd();
@@ -202,9 +496,12 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
       if (!canBeNull(returnType)
           && nullnessOfReturnedValue.isSetExplicitly()
           && nullnessOfReturnedValue != Nullness.NOT_NULL) {
-        System.err.printf(
-            "%s is annotated as nullable, but %s cannot be null%n", methodDescriptor, returnType);
-        bugReporter.reportBug(
+        log.debug(
+            "{} is annotated as nullable, but {} cannot be null", methodDescriptor, returnType);
+        if (classDiagnostics != null) {
+          classDiagnostics.needless++;
+        }
+        report(
             new BugInstance(
                     "JSPECIFY_NULLNESS_INTRINSICALLY_NOT_NULLABLE", Priorities.HIGH_PRIORITY)
                 .addClass(classDescriptor)
@@ -219,17 +516,52 @@ public class NeedlessAnnotationDetector extends ClassNodeDetector {
 
     @Override
     public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
-      Nullness.from(descriptor)
-          .ifPresent(
-              newNullness -> {
-                if (defaultNullness == newNullness) {
-                  // TODO 重複したアノテーション
-                } else if (nullness != null) {
-                  // TODO jspecify_conflicting_annotations
-                }
-                this.nullness = newNullness;
-              });
+      visitNullness(descriptor);
       return super.visitAnnotation(descriptor, visible);
     }
+
+    private void visitNullness(String descriptor) {
+      Nullness newNullness = findNullnessOfAnnotation(descriptor);
+      // annotations targeting both METHOD and TYPE_USE are visited twice
+      if (newNullness == null || descriptor.equals(annotation)) {
+        return;
+      }
+      if (classDiagnostics != null) {
+        classDiagnostics.annotations++;
+      }
+      checkAnnotation(nullness, newNullness, defaultNullness, this::addMethod);
+      if (nullness == null) {
+        this.nullness = newNullness;
+        this.annotation = descriptor;
+      }
+    }
+
+    private BugInstance addMethod(BugInstance bug) {
+      return bug.addClass(classDescriptor)
+          .addMethod(
+              classDescriptor.getClassName(),
+              methodDescriptor.getName(),
+              methodDescriptor.getSignature(),
+              methodDescriptor.isStatic());
+    }
+  }
+
+  /** Counts of nullness annotations in one class, reported by {@link #finishPass()}. */
+  private static final class ClassDiagnostics {
+    int members;
+    int annotations;
+    int parameterAnnotations;
+    int needless;
+
+    void appendTo(StringBuilder builder) {
+      builder
+          .append(members)
+          .append(", ")
+          .append(annotations)
+          .append(", ")
+          .append(parameterAnnotations)
+          .append(", ")
+          .append(needless);
+    }
   }
 }
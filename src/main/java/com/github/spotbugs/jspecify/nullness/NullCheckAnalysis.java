@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.ba.BasicBlock;
+import edu.umd.cs.findbugs.ba.CFG;
+import edu.umd.cs.findbugs.ba.CFGBuilderException;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.Dataflow;
+import edu.umd.cs.findbugs.ba.DataflowAnalysisException;
+import edu.umd.cs.findbugs.ba.Edge;
+import edu.umd.cs.findbugs.ba.EdgeTypes;
+import edu.umd.cs.findbugs.ba.ForwardDataflowAnalysis;
+import edu.umd.cs.findbugs.ba.Location;
+import edu.umd.cs.findbugs.ba.SignatureParser;
+import edu.umd.cs.findbugs.ba.vna.ValueNumber;
+import edu.umd.cs.findbugs.ba.vna.ValueNumberDataflow;
+import edu.umd.cs.findbugs.ba.vna.ValueNumberFrame;
+import java.lang.invoke.MethodHandles;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Set;
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ConstantPoolGen;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InvokeInstruction;
+import org.jspecify.nullness.NullMarked;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forward dataflow analysis that finds values known to be non-null, over the CFG and the value
+ * numbers that SpotBugs builds for the method. A value is non-null on the branch of {@code IFNULL}
+ * or {@code IFNONNULL} where it is not null, after it is checked by methods like {@code
+ * Objects.requireNonNull}, after it is dereferenced, and if it is created by {@code NEW} or {@code
+ * LDC}. Facts are sets of value numbers, and branches meet by intersection.
+ */
+@NullMarked
+final class NullCheckAnalysis extends ForwardDataflowAnalysis<NullCheckAnalysis.NonNullValues> {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Methods that throw if their first argument is null, and return the argument otherwise. */
+  private static final Set<String> NULL_CHECKS =
+      Set.of(
+          "java.util.Objects.requireNonNull",
+          "com.google.common.base.Preconditions.checkNotNull",
+          "com.google.common.base.Verify.verifyNotNull",
+          "org.junit.jupiter.api.Assertions.assertNotNull");
+
+  private final ValueNumberDataflow valueNumbers;
+  private final ConstantPoolGen constantPool;
+  private final boolean isStatic;
+
+  private NullCheckAnalysis(ClassContext classContext, Method method)
+      throws CFGBuilderException, DataflowAnalysisException {
+    super(classContext.getDepthFirstSearch(method));
+    this.valueNumbers = classContext.getValueNumberDataflow(method);
+    this.constantPool = classContext.getConstantPoolGen();
+    this.isStatic = method.isStatic();
+  }
+
+  /**
+   * Finds operands that are known to be non-null, for each instruction that may take a null
+   * operand: the returned value of {@code ARETURN}, the stored value of {@code PUTFIELD} and {@code
+   * PUTSTATIC}, and the arguments of invocations. The analysis visits each instruction once per
+   * iteration, and facts only shrink, so iterations are bounded by the nesting of loops.
+   *
+   * @return bitmaps indexed by the bytecode offset, where the bit {@code i} is set if the {@code
+   *     i}-th argument or the stored value (bit 0) is non-null, or an empty array if the method
+   *     cannot be analysed
+   */
+  static long[] findCheckedOperands(ClassContext classContext, Method method) {
+    if (method.getCode() == null) {
+      return new long[0];
+    }
+    try {
+      NullCheckAnalysis analysis = new NullCheckAnalysis(classContext, method);
+      CFG cfg = classContext.getCFG(method);
+      Dataflow<NonNullValues, NullCheckAnalysis> dataflow = new Dataflow<>(cfg, analysis);
+      dataflow.execute();
+      return analysis.collectCheckedOperands(cfg, dataflow, method.getCode().getCode().length);
+    } catch (CFGBuilderException | DataflowAnalysisException e) {
+      log.debug("Failed to analyse null checks in {}", method, e);
+      return new long[0];
+    }
+  }
+
+  private long[] collectCheckedOperands(
+      CFG cfg, Dataflow<NonNullValues, NullCheckAnalysis> dataflow, int codeLength)
+      throws DataflowAnalysisException {
+    long[] checked = new long[codeLength];
+    BitSet visited = new BitSet(codeLength);
+    NonNullValues fact = createFact();
+    for (Iterator<BasicBlock> blocks = cfg.blockIterator(); blocks.hasNext(); ) {
+      BasicBlock block = blocks.next();
+      copy(dataflow.getStartFact(block), fact);
+      if (!isFactValid(fact)) {
+        // unreachable code
+        continue;
+      }
+      for (Iterator<InstructionHandle> handles = block.instructionIterator(); handles.hasNext(); ) {
+        InstructionHandle handle = handles.next();
+        int pc = handle.getPosition();
+        // the entry block has a NOP that is not in the code
+        if (0 <= pc && pc < codeLength) {
+          long operands = checkedOperands(handle, block, fact);
+          // code in JSR subroutines appears more than once
+          checked[pc] = visited.get(pc) ? checked[pc] & operands : operands;
+          visited.set(pc);
+        }
+        transferInstruction(handle, block, fact);
+      }
+    }
+    return checked;
+  }
+
+  private long checkedOperands(InstructionHandle handle, BasicBlock block, NonNullValues fact)
+      throws DataflowAnalysisException {
+    Instruction instruction = handle.getInstruction();
+    ValueNumberFrame frame = valueNumbers.getFactAtLocation(new Location(handle, block));
+    if (!frame.isValid()) {
+      return 0;
+    }
+    switch (instruction.getOpcode()) {
+      case Const.ARETURN:
+      case Const.PUTFIELD:
+      case Const.PUTSTATIC:
+        // stored values of other types are not checked by detectors
+        return fact.contains(frame.getTopValue()) ? 1 : 0;
+      case Const.INVOKEINTERFACE:
+      case Const.INVOKESPECIAL:
+      case Const.INVOKESTATIC:
+      case Const.INVOKEVIRTUAL:
+        InvokeInstruction invoke = (InvokeInstruction) instruction;
+        SignatureParser parser = new SignatureParser(invoke.getSignature(constantPool));
+        int arguments = Math.min(parser.getNumParameters(), Long.SIZE);
+        long operands = 0;
+        for (int i = 0; i < arguments; ++i) {
+          if (fact.contains(frame.getArgument(invoke, constantPool, i, parser))) {
+            operands |= 1L << i;
+          }
+        }
+        return operands;
+      default:
+        return 0;
+    }
+  }
+
+  @Override
+  public NonNullValues createFact() {
+    return new NonNullValues();
+  }
+
+  @Override
+  public void copy(NonNullValues source, NonNullValues dest) {
+    dest.isTop = source.isTop;
+    dest.values.clear();
+    dest.values.or(source.values);
+  }
+
+  @Override
+  public void initEntryFact(NonNullValues fact) {
+    fact.isTop = false;
+    fact.values.clear();
+    if (!isStatic) {
+      fact.add(valueNumbers.getAnalysis().getEntryValue(0));
+    }
+  }
+
+  @Override
+  public void makeFactTop(NonNullValues fact) {
+    fact.isTop = true;
+    fact.values.clear();
+  }
+
+  @Override
+  public boolean isTop(NonNullValues fact) {
+    return fact.isTop;
+  }
+
+  @Override
+  public boolean isFactValid(NonNullValues fact) {
+    return !fact.isTop;
+  }
+
+  @Override
+  public boolean same(NonNullValues fact1, NonNullValues fact2) {
+    return fact1.isTop == fact2.isTop && fact1.values.equals(fact2.values);
+  }
+
+  @Override
+  public void transferInstruction(InstructionHandle handle, BasicBlock block, NonNullValues fact)
+      throws DataflowAnalysisException {
+    Instruction instruction = handle.getInstruction();
+    Location location = new Location(handle, block);
+    ValueNumberFrame before = valueNumbers.getFactAtLocation(location);
+    if (!before.isValid()) {
+      return;
+    }
+    switch (instruction.getOpcode()) {
+      case Const.NEW:
+      case Const.NEWARRAY:
+      case Const.ANEWARRAY:
+      case Const.MULTIANEWARRAY:
+      case Const.LDC:
+      case Const.LDC_W:
+        addTopValueAfter(location, fact);
+        return;
+      case Const.INVOKESTATIC:
+        InvokeInstruction invoke = (InvokeInstruction) instruction;
+        if (NULL_CHECKS.contains(
+                invoke.getClassName(constantPool) + '.' + invoke.getMethodName(constantPool))
+            && invoke.getArgumentTypes(constantPool).length > 0) {
+          SignatureParser parser = new SignatureParser(invoke.getSignature(constantPool));
+          fact.add(before.getArgument(invoke, constantPool, 0, parser));
+          if (!invoke.getSignature(constantPool).endsWith(")V")) {
+            addTopValueAfter(location, fact);
+          }
+        }
+        return;
+      case Const.INVOKEINTERFACE:
+      case Const.INVOKESPECIAL:
+      case Const.INVOKEVIRTUAL:
+      case Const.GETFIELD:
+      case Const.PUTFIELD:
+      case Const.ARRAYLENGTH:
+      case Const.AALOAD:
+      case Const.BALOAD:
+      case Const.CALOAD:
+      case Const.DALOAD:
+      case Const.FALOAD:
+      case Const.IALOAD:
+      case Const.LALOAD:
+      case Const.SALOAD:
+      case Const.AASTORE:
+      case Const.BASTORE:
+      case Const.CASTORE:
+      case Const.DASTORE:
+      case Const.FASTORE:
+      case Const.IASTORE:
+      case Const.LASTORE:
+      case Const.SASTORE:
+      case Const.MONITORENTER:
+        // the instruction throws NullPointerException if the dereferenced value is null
+        fact.add(before.getInstance(instruction, constantPool));
+        return;
+      default: // do nothing
+    }
+  }
+
+  private void addTopValueAfter(Location location, NonNullValues fact)
+      throws DataflowAnalysisException {
+    ValueNumberFrame after = valueNumbers.getFactAfterLocation(location);
+    if (after.isValid()) {
+      fact.add(after.getTopValue());
+    }
+  }
+
+  /**
+   * Meets the fact at the end of the source block into the target block. A value checked by {@code
+   * IFNULL} or {@code IFNONNULL} becomes non-null on the branch where it is not null, and a value
+   * merged from several branches is non-null if the value of every branch is non-null.
+   */
+  @Override
+  public void meetInto(NonNullValues fact, Edge edge, NonNullValues result)
+      throws DataflowAnalysisException {
+    if (fact.isTop) {
+      return;
+    }
+    NonNullValues incoming = createFact();
+    copy(fact, incoming);
+    refineOnBranch(edge, incoming);
+    addMergedValues(edge, incoming);
+    if (result.isTop) {
+      copy(incoming, result);
+    } else {
+      result.values.and(incoming.values);
+    }
+  }
+
+  private void refineOnBranch(Edge edge, NonNullValues fact) throws DataflowAnalysisException {
+    BasicBlock source = edge.getSource();
+    InstructionHandle last = source.getLastInstruction();
+    if (last == null) {
+      return;
+    }
+    short opcode = last.getInstruction().getOpcode();
+    boolean nonNull =
+        (opcode == Const.IFNULL && edge.getType() == EdgeTypes.FALL_THROUGH_EDGE)
+            || (opcode == Const.IFNONNULL && edge.getType() == EdgeTypes.IFCMP_EDGE);
+    if (nonNull) {
+      ValueNumberFrame frame = valueNumbers.getFactAtLocation(new Location(last, source));
+      if (frame.isValid()) {
+        fact.add(frame.getTopValue());
+      }
+    }
+  }
+
+  /**
+   * Value numbering gives a new number to a slot whose values differ between incoming branches,
+   * like the result of {@code a != null ? a : b}. Translates the fact to the new number, so
+   * intersection keeps it only if it is non-null on every branch.
+   */
+  private void addMergedValues(Edge edge, NonNullValues fact) {
+    ValueNumberFrame exit = valueNumbers.getResultFact(edge.getSource());
+    ValueNumberFrame entry = valueNumbers.getStartFact(edge.getTarget());
+    if (!exit.isValid() || !entry.isValid()) {
+      return;
+    }
+    int slots =
+        edge.isExceptionEdge() || exit.getNumSlots() != entry.getNumSlots()
+            // exception handlers start with an operand stack different from the source
+            ? Math.min(exit.getNumLocals(), entry.getNumLocals())
+            : entry.getNumSlots();
+    for (int i = 0; i < slots; ++i) {
+      ValueNumber merged = entry.getValue(i);
+      ValueNumber incoming = exit.getValue(i);
+      if (!merged.equals(incoming) && fact.contains(incoming)) {
+        fact.add(merged);
+      }
+    }
+  }
+
+  /** Value numbers known to be non-null, or the top value of the lattice for unvisited blocks. */
+  static final class NonNullValues {
+    final BitSet values = new BitSet();
+    boolean isTop;
+
+    void add(ValueNumber value) {
+      values.set(value.getNumber());
+    }
+
+    boolean contains(ValueNumber value) {
+      return values.get(value.getNumber());
+    }
+
+    @Override
+    public String toString() {
+      return isTop ? "TOP" : values.toString();
+    }
+  }
+}
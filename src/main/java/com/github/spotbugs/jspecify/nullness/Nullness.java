@@ -15,6 +15,9 @@
  */
 package com.github.spotbugs.jspecify.nullness;
 
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import org.jspecify.nullness.Nullable;
 
@@ -31,38 +34,89 @@ enum Nullness {
   /** Nullness of the target {@code TYPE_USE} is explicitly not null. */
   NOT_NULL(false);
 
+  /**
+   * JSpecify nullness annotations keyed by all the spellings of their name: type descriptor,
+   * slashed class name and dotted class name. Lookup does not allocate, because {@link String}
+   * caches its hash.
+   */
+  private static final Map<String, Nullness> ANNOTATIONS;
+
+  static {
+    Map<String, Nullness> annotations = new HashMap<>();
+    putAlias(annotations, "org/jspecify/nullness/NullMarked", NOT_NULL);
+    putAlias(annotations, "org/jspecify/nullness/Nullable", NULLABLE);
+    ANNOTATIONS = Map.copyOf(annotations);
+  }
+
   private final boolean canBeNull;
+  private final Optional<Nullness> optional;
 
   Nullness(boolean canBeNull) {
     this.canBeNull = canBeNull;
+    this.optional = Optional.of(this);
   }
 
   boolean canBeNull() {
     return this.canBeNull;
   }
 
+  /** @return cached {@link Optional} instance that contains this nullness. */
+  Optional<Nullness> asOptional() {
+    return optional;
+  }
+
   /** @return true if the nullness of the target {@code TYPE_USE} is declared explicitly. */
   boolean isSetExplicitly() {
     return this != NO_EXPLICIT_CONFIG;
   }
 
-  // TODO support TypeQualifierNickname
-  public static Optional<Nullness> from(@Nullable String descriptor) {
-    if (descriptor == null) {
-      return Optional.empty();
-    }
+  /**
+   * Puts an annotation that works as a nullness annotation, like a {@code TypeQualifierNickname} or
+   * an annotation provided by other libraries, to the given alias table. Each analysis has its own
+   * table, so aliases found in one analysis do not leak into others.
+   *
+   * @param aliases alias table to put all the spellings of the annotation name to
+   * @param className slashed class name of the annotation
+   * @param nullness nullness that the annotation means
+   */
+  static void putAlias(
+      Map<String, Nullness> aliases, @SlashedClassName String className, Nullness nullness) {
+    aliases.put("L" + className + ";", nullness);
+    aliases.put(className, nullness);
+    aliases.put(className.replace('/', '.'), nullness);
+  }
 
-    switch (descriptor) {
-      case "Lorg/jspecify/nullness/NullMarked;":
-      case "org/jspecify/nullness/NullMarked":
-      case "org.jspecify.nullness.NullMarked":
-        return Optional.of(NOT_NULL);
-      case "Lorg/jspecify/nullness/Nullable;":
-      case "org/jspecify/nullness/Nullable":
-      case "org.jspecify.nullness.Nullable":
-        return Optional.of(NULLABLE);
-      default:
-        return Optional.empty();
-    }
+  /**
+   * Finds nullness meant by the given JSpecify annotation, without allocation.
+   *
+   * @param descriptor type descriptor, slashed class name or dotted class name of the annotation
+   * @return nullness meant by the annotation, or null if it is not a nullness annotation
+   */
+  @Nullable
+  static Nullness lookup(@Nullable String descriptor) {
+    return descriptor == null ? null : ANNOTATIONS.get(descriptor);
+  }
+
+  /**
+   * Finds nullness meant by the given annotation, which can be an alias in the given table.
+   *
+   * @see #lookup(String)
+   * @see #putAlias(Map, String, Nullness)
+   */
+  @Nullable
+  static Nullness lookup(@Nullable String descriptor, Map<String, Nullness> aliases) {
+    Nullness nullness = lookup(descriptor);
+    return nullness == null && descriptor != null ? aliases.get(descriptor) : nullness;
+  }
+
+  /**
+   * Finds nullness meant by the given JSpecify annotation. Returned {@link Optional} instances are
+   * cached, so this method does not allocate either.
+   *
+   * @see #lookup(String)
+   */
+  public static Optional<Nullness> from(@Nullable String descriptor) {
+    Nullness nullness = lookup(descriptor);
+    return nullness == null ? Optional.empty() : nullness.asOptional();
   }
 }
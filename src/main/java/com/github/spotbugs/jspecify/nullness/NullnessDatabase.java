@@ -15,67 +15,1166 @@
  */
 package com.github.spotbugs.jspecify.nullness;
 
+import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.SignatureParser;
 import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XField;
 import edu.umd.cs.findbugs.ba.XMethod;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.FieldDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
-import edu.umd.cs.findbugs.classfile.MissingClassException;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
 import edu.umd.cs.findbugs.classfile.analysis.AnnotationValue;
-import edu.umd.cs.findbugs.internalAnnotations.DottedClassName;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.classfile.engine.asm.FindBugsASM;
 import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
-import edu.umd.cs.findbugs.util.ClassName;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.bcel.classfile.JavaClass;
+import org.jspecify.nullness.Nullable;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.TypeReference;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
 
+/**
+ * Resolves nullness of methods and annotations. One instance is shared in an analysis, so it is
+ * thread-safe: indexes are immutable or concurrent, and caches compute values without holding
+ * locks. Resolution is deterministic, so concurrent threads that compute the same entry store the
+ * same value.
+ */
 class NullnessDatabase {
-  Optional<Nullness> findNullnessOf(XClass clazz, XMethod method, IAnalysisCache cache) {
-    // TODO cache
+  /** Maximum number of entries kept in each tier of the cache. */
+  static final int DEFAULT_CACHE_SIZE = 64 * 1024;
+  /**
+   * Number of symbols per entry of a cache tier, over which the symbol table gets cleared. Entries
+   * of most caches are keyed by a single symbol, and members share names and descriptors.
+   */
+  private static final int SYMBOLS_PER_CACHE_ENTRY = 4;
+
+  @SlashedClassName static final String DEFAULT_NON_NULL = "org/jspecify/nullness/DefaultNonNull";
+
+  private static final ClassDescriptor TYPE_QUALIFIER_NICKNAME =
+      DescriptorFactory.createClassDescriptor("javax/annotation/meta/TypeQualifierNickname");
+
+  private final NullnessIndex index;
+  private final PackageScopeIndex packageScopes;
+  /**
+   * Identifiers of classes, packages, members and annotations, which key caches below. Names and
+   * descriptors are interned once, so lookups do not concatenate nor hash strings. The table is
+   * cleared with the caches when it has {@link #maximumSymbols}, so it does not grow with every
+   * class of the analysis.
+   */
+  private final SymbolTable symbols = new SymbolTable();
+  /**
+   * Lookups hold its read lock while they use identifiers of {@link #symbols}, and {@link
+   * #clearSymbolsIfFull()} clears them with its write lock.
+   */
+  private final StampedLock symbolLock = new StampedLock();
+
+  private final int maximumSymbols;
+  private final LongAdder symbolClears = new LongAdder();
+
+  private final TypeHierarchy hierarchy;
+  private final IntCache<Optional<Nullness>> methodCache;
+  private final IntCache<Optional<Nullness>> classCache;
+  /** Default nullness of each package, or of its module. */
+  private final IntCache<Optional<Nullness>> packageCache;
+  /** Whether each package is covered by the {@link NullnessIndex}. */
+  private final IntCache<Boolean> indexedPackageCache;
+  /** Non-null parameters of each method, as {@link ParameterBitmap}. */
+  private final IntCache<long[]> parameterCache;
+  /**
+   * Nullness of annotations that are not built-in, keyed by their class descriptor or type
+   * descriptor. {@link Nullness#NO_EXPLICIT_CONFIG} means that the annotation is not a nullness
+   * annotation.
+   */
+  private final IntCache<Nullness> annotationCache;
+  /**
+   * Nicknames of nullness annotations found in this analysis, in all the spellings of their names.
+   * See {@link Nullness#putAlias(Map, String, Nullness)}.
+   */
+  private final ConcurrentHashMap<String, Nullness> aliases = new ConcurrentHashMap<>();
+  /** Whether each class may be relevant to nullness, as told by {@link #mayReferNullness}. */
+  private final IntCache<Boolean> relevanceCache;
+  /** Whether the constant pool of each class refers nullness annotations. */
+  private final IntCache<Boolean> constantPoolCache;
+  /**
+   * Nullness of fields, resolved from their annotations and default nullness. {@link
+   * Nullness#NO_EXPLICIT_CONFIG} means that the nullness of the field is not declared.
+   */
+  private final NullnessTable fieldTable = new NullnessTable();
+  /**
+   * Nullness annotated on fields of each class. {@link XField} does not have {@code TYPE_USE}
+   * annotations, so they are read from the class file.
+   */
+  private final IntCache<MemberTable<Nullness>> annotatedFieldsCache;
+  /**
+   * Interface methods implemented by lambda bodies in each class, keyed by the lambda body. See
+   * {@link LambdaTargets}.
+   */
+  private final IntCache<MemberTable<MethodDescriptor>> lambdaCache;
+  /**
+   * {@link TypeUseNullness} of members in each class. Only members that have annotations on type
+   * arguments or array components are stored.
+   */
+  private final IntCache<MemberTable<byte[]>> typeUseCache;
+  /** Names of type parameters of each class, in declaration order. */
+  private final IntCache<List<String>> typeParametersCache;
+
+  /**
+   * Returned nullness of unannotated methods, inferred by {@link ReturnNullnessInferenceDetector}
+   * in an earlier pass. It cannot be computed again, so it is keyed by its own symbol table that is
+   * never cleared, and that has only the inferred methods.
+   */
+  private final NullnessTable inferredNullness = new NullnessTable();
+
+  private final SymbolTable inferredMethods = new SymbolTable();
+
+  private final PluginMetrics metrics;
+  private final NullnessFactStore factStore;
+  /** Whether {@link #finishAnalysis()} has been called. */
+  private final AtomicBoolean finished = new AtomicBoolean();
+
+  NullnessDatabase() {
+    this(
+        NullnessIndex.EMPTY,
+        PackageScopeIndex.EMPTY,
+        DEFAULT_CACHE_SIZE,
+        new PluginMetrics(null),
+        NullnessFactStore.disabled());
+  }
+
+  NullnessDatabase(
+      NullnessIndex index,
+      PackageScopeIndex packageScopes,
+      int cacheSize,
+      PluginMetrics metrics,
+      NullnessFactStore factStore) {
+    this.index = index;
+    this.packageScopes = packageScopes;
+    this.metrics = metrics;
+    this.factStore = factStore;
+    methodCache = new IntCache<>(cacheSize);
+    classCache = new IntCache<>(cacheSize);
+    packageCache = new IntCache<>(cacheSize);
+    indexedPackageCache = new IntCache<>(cacheSize);
+    parameterCache = new IntCache<>(cacheSize);
+    annotationCache = new IntCache<>(cacheSize);
+    relevanceCache = new IntCache<>(cacheSize);
+    constantPoolCache = new IntCache<>(cacheSize);
+    annotatedFieldsCache = new IntCache<>(cacheSize);
+    lambdaCache = new IntCache<>(cacheSize);
+    typeUseCache = new IntCache<>(cacheSize);
+    typeParametersCache = new IntCache<>(cacheSize);
+    hierarchy = new TypeHierarchy(symbols, cacheSize);
+    maximumSymbols = cacheSize * SYMBOLS_PER_CACHE_ENTRY;
+  }
+
+  /**
+   * Finds nullness of the value that the given method returns. The method is resolved in the class
+   * that declares it, so the result does not depend on the class through which it is called.
+   */
+  Optional<Nullness> findNullnessOf(XMethod method, IAnalysisCache cache) {
     if (method == null || !method.isReturnTypeReferenceType()) {
       return Optional.empty();
     }
 
+    metrics.countLookup();
+    MethodDescriptor methodDescriptor = method.getMethodDescriptor();
+    long stamp = symbolLock.readLock();
+    try {
+      return methodCache.get(
+          symbols.idOf(methodDescriptor),
+          // the index may not list every method of the packages that it covers, and methods that it
+          // does not list are resolved from their class files like methods of other packages
+          key ->
+              isIndexed(methodDescriptor.getClassDescriptor()) && index.contains(methodDescriptor)
+                  ? index.findNullnessOf(methodDescriptor)
+                  : resolveNullnessOf(method, cache));
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  /** @return true if nullness of members in the package of the given class is in the index */
+  private boolean isIndexed(ClassDescriptor clazz) {
+    return indexedPackageCache.get(
+        symbols.packageIdOf(clazz), key -> index.covers((String) symbols.symbolOf(key)));
+  }
+
+  private Optional<Nullness> resolveNullnessOf(XMethod method, IAnalysisCache cache) {
+    XClass clazz = NullnessStackDetector.lookUp(method.getClassDescriptor());
+    if (clazz == null) {
+      return findNullnessOfMethod(method)
+          .or(() -> returnsTypeVariable(method) ? Optional.empty() : findIndexedDefaultOf(method));
+    }
+    if (LambdaTargets.isLambda(method)) {
+      MethodDescriptor target =
+          findLambdaTargetsOf(clazz)
+              .get(symbols.memberKey(method.getName(), method.getSignature()));
+      if (target != null) {
+        // the lambda body returns what the interface method returns, whatever its class declares
+        return findNullnessOfInterfaceMethod(target, cache);
+      }
+    }
     return findNullnessOfMethod(method)
-        .or(() -> findDefaultNullnessOfClass(clazz))
-        .or(() -> findDefaultNullnessOfPackage(clazz.getClassDescriptor().getPackageName(), cache));
+        .or(() -> findNullnessOfOverriddenMethod(clazz, method))
+        .or(
+            () -> {
+              if (returnsTypeVariable(method)) {
+                // like parameters and fields, nullness of type variables depends on type arguments
+                return Optional.empty();
+              }
+              return isIndexed(clazz.getClassDescriptor())
+                  ? findIndexedDefaultOf(method)
+                  : findDefaultNullnessOf(clazz);
+            });
+  }
+
+  /** @return true if the return type of the given method is a type variable */
+  private static boolean returnsTypeVariable(XMethod method) {
+    String signature = method.getSourceSignature();
+    return signature != null && signature.startsWith("T", signature.indexOf(')') + 1);
+  }
+
+  /**
+   * @return default nullness of the class of the given method in the index, or empty if its package
+   *     is not covered by the index
+   */
+  private Optional<Nullness> findIndexedDefaultOf(XMethod method) {
+    return isIndexed(method.getClassDescriptor())
+        ? index.findDefaultNullnessOf(method.getClassDescriptor().getClassName())
+        : Optional.empty();
+  }
+
+  /**
+   * @return interface methods implemented by lambda bodies in the given class, keyed by the name
+   *     and signature of the lambda body
+   */
+  MemberTable<MethodDescriptor> findLambdaTargetsOf(XClass clazz) {
+    long stamp = symbolLock.readLock();
+    try {
+      ClassDescriptor descriptor = clazz.getClassDescriptor();
+      return lambdaCache.get(symbols.idOf(descriptor), key -> readLambdaTargets(descriptor));
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  private MemberTable<MethodDescriptor> readLambdaTargets(ClassDescriptor descriptor) {
+    try {
+      return LambdaTargets.of(
+          Global.getAnalysisCache().getClassAnalysis(JavaClass.class, descriptor), symbols);
+    } catch (CheckedAnalysisException e) {
+      // missing classes are reported by SpotBugs itself
+      return MemberTable.empty();
+    }
+  }
+
+  /**
+   * Finds nullness of a method of functional interface, which can be declared in a superinterface
+   * of the interface that the lambda expression implements.
+   */
+  private Optional<Nullness> findNullnessOfInterfaceMethod(
+      MethodDescriptor target, IAnalysisCache cache) {
+    XClass interfaceClass = NullnessStackDetector.lookUp(target.getClassDescriptor());
+    if (interfaceClass == null) {
+      return Optional.empty();
+    }
+    XMethod method = interfaceClass.findMethod(target.getName(), target.getSignature(), false);
+    if (method != null) {
+      return findNullnessOf(method, cache);
+    }
+    for (XClass supertype : hierarchy.supertypesOf(interfaceClass)) {
+      method = supertype.findMethod(target.getName(), target.getSignature(), false);
+      if (method != null) {
+        return findNullnessOf(method, cache);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Finds nullness annotated on a method that the given method overrides, in the nearest supertype.
+   */
+  private Optional<Nullness> findNullnessOfOverriddenMethod(XClass clazz, XMethod method) {
+    if (method.isStatic() || method.isPrivate() || method.getName().startsWith("<")) {
+      return Optional.empty();
+    }
+    for (XClass supertype : hierarchy.supertypesOf(clazz)) {
+      XMethod overridden = supertype.findMethod(method.getName(), method.getSignature(), false);
+      if (overridden != null && !overridden.isPrivate()) {
+        Optional<Nullness> nullness = findNullnessOfMethod(overridden);
+        if (nullness.isPresent()) {
+          return nullness;
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @return default nullness of members in the given class, resolved from the class, its enclosing
+   *     classes and its package, or empty if it is not set
+   */
+  Optional<Nullness> findDefaultNullnessOf(XClass clazz) {
+    long stamp = symbolLock.readLock();
+    try {
+      ClassDescriptor classDescriptor = clazz.getClassDescriptor();
+      return classCache
+          .get(symbols.idOf(classDescriptor), key -> findDefaultNullnessOfClassScope(clazz))
+          .or(() -> findDefaultNullnessOfPackage(classDescriptor));
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  private Optional<Nullness> findDefaultNullnessOfClassScope(XClass clazz) {
+    Optional<Nullness> nullness = findDefaultNullnessOfClass(clazz);
+    if (nullness.isPresent()) {
+      return nullness;
+    }
+    for (XClass enclosing : hierarchy.enclosingClassesOf(clazz)) {
+      nullness = findDefaultNullnessOfClass(enclosing);
+      if (nullness.isPresent()) {
+        return nullness;
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Finds parameters of the given method that do not accept null. A parameter is non-null if it is
+   * annotated so, or if it is not annotated and its scope is non-null by default. Parameters whose
+   * type is a type variable are not non-null, because their nullness depends on the type argument.
+   *
+   * @return {@link ParameterBitmap} of non-null parameters
+   */
+  long[] findNonNullParametersOf(XMethod method) {
+    long stamp = symbolLock.readLock();
+    try {
+      MethodDescriptor methodDescriptor = method.getMethodDescriptor();
+      if (isIndexed(methodDescriptor.getClassDescriptor())) {
+        // the index does not describe parameters
+        return ParameterBitmap.NONE;
+      }
+      return parameterCache.get(
+          symbols.idOf(methodDescriptor), key -> resolveNonNullParameters(method));
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  private long[] resolveNonNullParameters(XMethod method) {
+    XClass clazz = NullnessStackDetector.lookUp(method.getClassDescriptor());
+    if (clazz == null) {
+      return ParameterBitmap.NONE;
+    }
+    if (method.isSynthetic()
+        || (method.getName().equals("<init>")
+            && (clazz.getImmediateEnclosingClass() != null || isEnum(clazz)))) {
+      // indexes of annotated parameters do not match with the descriptor, for implicit parameters
+      return ParameterBitmap.NONE;
+    }
+    String[] parameters = new SignatureParser(method.getSignature()).getArguments();
+    boolean[] typeVariables = typeVariablesIn(method.getSourceSignature(), parameters.length);
+    boolean nonNullByDefault =
+        findDefaultNullnessOf(clazz).filter(nullness -> nullness == Nullness.NOT_NULL).isPresent();
+    boolean[] nonNull = new boolean[parameters.length];
+    for (int i = 0; i < parameters.length; ++i) {
+      if (!SignatureParser.isReferenceType(parameters[i]) || typeVariables[i]) {
+        continue;
+      }
+      Nullness annotated = null;
+      for (ClassDescriptor annotation : method.getParameterAnnotationDescriptors(i)) {
+        Nullness nullness = findNullnessOfAnnotation(annotation);
+        if (nullness != null) {
+          annotated = nullness;
+        }
+      }
+      nonNull[i] = annotated == null ? nonNullByDefault : annotated == Nullness.NOT_NULL;
+    }
+    return ParameterBitmap.of(nonNull);
+  }
+
+  private static boolean isEnum(XClass clazz) {
+    ClassDescriptor superclass = clazz.getSuperclassDescriptor();
+    return superclass != null && superclass.matches(Enum.class);
+  }
+
+  /**
+   * @param signature generic signature of a method, or null if it is not generic
+   * @return whether the type of each parameter is a type variable
+   */
+  private static boolean[] typeVariablesIn(@Nullable String signature, int parameters) {
+    boolean[] result = new boolean[parameters];
+    if (signature == null) {
+      return result;
+    }
+    new SignatureReader(signature)
+        .accept(
+            new SignatureVisitor(FindBugsASM.ASM_VERSION) {
+              private int parameter = -1;
+              private boolean atTopLevel;
+
+              @Override
+              public SignatureVisitor visitParameterType() {
+                ++parameter;
+                atTopLevel = true;
+                return this;
+              }
+
+              @Override
+              public void visitTypeVariable(String name) {
+                if (atTopLevel && parameter < parameters) {
+                  result[parameter] = true;
+                }
+                atTopLevel = false;
+              }
+
+              @Override
+              public void visitBaseType(char descriptor) {
+                atTopLevel = false;
+              }
+
+              @Override
+              public SignatureVisitor visitArrayType() {
+                atTopLevel = false;
+                return this;
+              }
+
+              @Override
+              public void visitClassType(String name) {
+                atTopLevel = false;
+              }
+
+              @Override
+              public SignatureVisitor visitReturnType() {
+                atTopLevel = false;
+                return this;
+              }
+            });
+    return result;
+  }
+
+  /**
+   * Tells whether methods of the given class may have non-null parameters and its fields may be
+   * non-null, so classes that call its methods or write its fields need to be checked.
+   */
+  boolean mayHaveNonNullMembers(XClass clazz) {
+    long stamp = symbolLock.readLock();
+    try {
+      return !isIndexed(clazz.getClassDescriptor()) && mayReferNullness(clazz);
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Tells whether nullness of the given class may be declared, so detectors can skip other classes
+   * before parsing them. Besides its own constant pool, a class gets nullness from its package,
+   * from its enclosing classes and from methods that it overrides.
+   *
+   * @return false if no member of the class can have declared nullness
+   */
+  boolean mayReferNullness(XClass clazz) {
+    clearSymbolsIfFull();
+    long stamp = symbolLock.readLock();
+    try {
+      return relevanceCache.get(
+          symbols.idOf(clazz.getClassDescriptor()), key -> computeRelevance(clazz));
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Clears the symbol table and the caches keyed by its identifiers, if the table is full. It is
+   * called when a detector starts visiting a class, and skipped while other lookups use
+   * identifiers, so it is tried again at the next class.
+   */
+  private void clearSymbolsIfFull() {
+    if (symbols.size() < maximumSymbols) {
+      return;
+    }
+    long stamp = symbolLock.tryWriteLock();
+    if (stamp == 0) {
+      return;
+    }
+    try {
+      if (symbols.size() < maximumSymbols) {
+        // another thread cleared it meanwhile
+        return;
+      }
+      methodCache.clear();
+      classCache.clear();
+      packageCache.clear();
+      indexedPackageCache.clear();
+      parameterCache.clear();
+      annotationCache.clear();
+      relevanceCache.clear();
+      constantPoolCache.clear();
+      fieldTable.clear();
+      annotatedFieldsCache.clear();
+      lambdaCache.clear();
+      typeUseCache.clear();
+      typeParametersCache.clear();
+      hierarchy.clear();
+      symbols.clear();
+      symbolClears.increment();
+    } finally {
+      symbolLock.unlockWrite(stamp);
+    }
+  }
+
+  private boolean computeRelevance(XClass clazz) {
+    ClassDescriptor descriptor = clazz.getClassDescriptor();
+    if (isIndexed(descriptor) || findPackageDefaultOf(descriptor).isPresent()) {
+      return true;
+    }
+    if (refersNullness(clazz.getClassDescriptor())) {
+      return true;
+    }
+    for (XClass enclosing : hierarchy.enclosingClassesOf(clazz)) {
+      if (refersNullness(enclosing.getClassDescriptor())) {
+        return true;
+      }
+    }
+    for (XClass supertype : hierarchy.supertypesOf(clazz)) {
+      if (refersNullness(supertype.getClassDescriptor())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean refersNullness(ClassDescriptor descriptor) {
+    return constantPoolCache.get(
+        symbols.idOf(descriptor),
+        key -> {
+          try {
+            ClassData data =
+                Global.getAnalysisCache().getClassAnalysis(ClassData.class, descriptor);
+            int scanned = ConstantPoolScanner.scan(data.getData(), aliases);
+            // nicknames that are not resolved yet are not in the aliases, so resolve them here to
+            // give the same answer whichever class is visited first
+            return scanned == ConstantPoolScanner.REFERS_NULLNESS
+                || (scanned == ConstantPoolScanner.HAS_OTHER_ANNOTATIONS
+                    && readAnnotationTypes(descriptor).stream()
+                        .anyMatch(annotation -> findNullnessOfAnnotation(annotation) != null));
+          } catch (CheckedAnalysisException e) {
+            // we cannot tell, so do not skip
+            return true;
+          }
+        });
+  }
+
+  /** @return type descriptors of annotations on the given class and on its members */
+  private static Set<String> readAnnotationTypes(ClassDescriptor descriptor)
+      throws CheckedAnalysisException {
+    Set<String> annotations = new HashSet<>();
+    Global.getAnalysisCache()
+        .getClassAnalysis(FBClassReader.class, descriptor)
+        .accept(
+            new ClassVisitor(FindBugsASM.ASM_VERSION) {
+              @Override
+              @Nullable
+              public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                annotations.add(annotation);
+                return null;
+              }
+
+              @Override
+              @Nullable
+              public AnnotationVisitor visitTypeAnnotation(
+                  int typeRef, @Nullable TypePath typePath, String annotation, boolean visible) {
+                annotations.add(annotation);
+                return null;
+              }
+
+              @Override
+              public FieldVisitor visitField(
+                  int access,
+                  String name,
+                  String descriptor,
+                  @Nullable String signature,
+                  @Nullable Object value) {
+                return new FieldVisitor(FindBugsASM.ASM_VERSION) {
+                  @Override
+                  @Nullable
+                  public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                    annotations.add(annotation);
+                    return null;
+                  }
+
+                  @Override
+                  @Nullable
+                  public AnnotationVisitor visitTypeAnnotation(
+                      int typeRef,
+                      @Nullable TypePath typePath,
+                      String annotation,
+                      boolean visible) {
+                    annotations.add(annotation);
+                    return null;
+                  }
+                };
+              }
+
+              @Override
+              public MethodVisitor visitMethod(
+                  int access,
+                  String name,
+                  String descriptor,
+                  @Nullable String signature,
+                  @Nullable String[] exceptions) {
+                return new MethodVisitor(FindBugsASM.ASM_VERSION) {
+                  @Override
+                  @Nullable
+                  public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                    annotations.add(annotation);
+                    return null;
+                  }
+
+                  @Override
+                  @Nullable
+                  public AnnotationVisitor visitTypeAnnotation(
+                      int typeRef,
+                      @Nullable TypePath typePath,
+                      String annotation,
+                      boolean visible) {
+                    annotations.add(annotation);
+                    return null;
+                  }
+
+                  @Override
+                  @Nullable
+                  public AnnotationVisitor visitParameterAnnotation(
+                      int parameter, String annotation, boolean visible) {
+                    annotations.add(annotation);
+                    return null;
+                  }
+                };
+              }
+            },
+            ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return annotations;
+  }
+
+  /**
+   * Finds inferred nullness of the value returned by the given method. Callers should check {@link
+   * #findNullnessOf(XMethod, IAnalysisCache)} first, because annotated nullness precedes.
+   *
+   * @return inferred nullness, or empty if the method is not inferred or its nullness is unknown
+   */
+  Optional<Nullness> findInferredNullnessOf(MethodDescriptor method) {
+    int id = inferredMethods.find(method);
+    Nullness nullness = id == 0 ? null : inferredNullness.get(id);
+    return nullness == null ? Optional.empty() : nullness.asOptional();
+  }
+
+  void addInferredNullness(Map<MethodDescriptor, Nullness> inferred) {
+    inferred.forEach(
+        (method, nullness) -> inferredNullness.put(inferredMethods.idOf(method), nullness));
+  }
+
+  /**
+   * Finds nullness of values stored in the given field. A field gets nullness from its annotation,
+   * or from default nullness of its class unless its type is a type variable.
+   *
+   * @return nullness of the field, or empty if it is not declared
+   */
+  Optional<Nullness> findNullnessOfField(XField field) {
+    long stamp = symbolLock.readLock();
+    try {
+      if (!SignatureParser.isReferenceType(field.getSignature()) || field.isSynthetic()) {
+        return Optional.empty();
+      }
+      if (isIndexed(field.getClassDescriptor())) {
+        // the index does not describe fields
+        return Optional.empty();
+      }
+      Nullness nullness =
+          fieldTable.get(
+              symbols.idOf(field.getFieldDescriptor()), key -> resolveNullnessOfField(field));
+      return nullness.isSetExplicitly() ? nullness.asOptional() : Optional.empty();
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  private Nullness resolveNullnessOfField(XField field) {
+    ClassDescriptor descriptor = field.getClassDescriptor();
+    Nullness annotated =
+        annotatedFieldsCache
+            .get(symbols.idOf(descriptor), key -> readAnnotatedFields(descriptor))
+            .get(symbols.memberKey(field.getName(), field.getSignature()));
+    if (annotated != null) {
+      return annotated;
+    }
+    String signature = field.getSourceSignature();
+    if (signature != null && signature.startsWith("T")) {
+      return Nullness.NO_EXPLICIT_CONFIG;
+    }
+    try {
+      XClass clazz =
+          Global.getAnalysisCache().getClassAnalysis(XClass.class, field.getClassDescriptor());
+      return findDefaultNullnessOf(clazz).orElse(Nullness.NO_EXPLICIT_CONFIG);
+    } catch (CheckedAnalysisException e) {
+      // missing classes are reported by SpotBugs itself
+      return Nullness.NO_EXPLICIT_CONFIG;
+    }
+  }
+
+  private MemberTable<Nullness> readAnnotatedFields(ClassDescriptor descriptor) {
+    FBClassReader reader;
+    try {
+      reader = Global.getAnalysisCache().getClassAnalysis(FBClassReader.class, descriptor);
+    } catch (CheckedAnalysisException e) {
+      // missing classes are reported by SpotBugs itself
+      return MemberTable.empty();
+    }
+    MemberTable<Nullness> fields = new MemberTable<>();
+    reader.accept(
+        new ClassVisitor(FindBugsASM.ASM_VERSION) {
+          @Override
+          public FieldVisitor visitField(
+              int access,
+              String name,
+              String descriptor,
+              @Nullable String signature,
+              @Nullable Object value) {
+            long key = symbols.memberKey(name, descriptor);
+            return new FieldVisitor(FindBugsASM.ASM_VERSION) {
+              @Override
+              @Nullable
+              public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                add(annotation);
+                return null;
+              }
+
+              @Override
+              @Nullable
+              public AnnotationVisitor visitTypeAnnotation(
+                  int typeRef, @Nullable TypePath typePath, String annotation, boolean visible) {
+                // annotations on type arguments and array components have a type path
+                if (typePath == null) {
+                  add(annotation);
+                }
+                return null;
+              }
+
+              private void add(String annotation) {
+                Nullness nullness = findNullnessOfAnnotation(annotation);
+                if (nullness != null) {
+                  fields.put(key, nullness);
+                }
+              }
+            };
+          }
+        },
+        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return fields;
+  }
+
+  /**
+   * Finds nullness annotated on type arguments and array components in the signature of a member.
+   * Classes that do not refer nullness annotations are not parsed.
+   *
+   * @param clazz class that declares the member
+   * @param name name of the member
+   * @param descriptor descriptor of the member
+   * @return {@link TypeUseNullness} of the member, or null if nothing nested in its types is
+   *     annotated
+   */
+  byte @Nullable [] findTypeUseOf(XClass clazz, String name, String descriptor) {
+    long stamp = symbolLock.readLock();
+    try {
+      if (!mayReferNullness(clazz)) {
+        return null;
+      }
+      ClassDescriptor classDescriptor = clazz.getClassDescriptor();
+      return typeUseCache
+          .get(symbols.idOf(classDescriptor), key -> readTypeUses(classDescriptor))
+          .get(symbols.memberKey(name, descriptor));
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  private MemberTable<byte[]> readTypeUses(ClassDescriptor descriptor) {
+    FBClassReader reader;
+    try {
+      reader = Global.getAnalysisCache().getClassAnalysis(FBClassReader.class, descriptor);
+    } catch (CheckedAnalysisException e) {
+      // missing classes are reported by SpotBugs itself
+      return MemberTable.empty();
+    }
+    MemberTable<byte[]> members = new MemberTable<>();
+    reader.accept(
+        new ClassVisitor(FindBugsASM.ASM_VERSION) {
+          @Override
+          public FieldVisitor visitField(
+              int access,
+              String name,
+              String descriptor,
+              @Nullable String signature,
+              @Nullable Object value) {
+            TypeUseCollector collector =
+                new TypeUseCollector(
+                    symbols.memberKey(name, descriptor),
+                    signature == null ? descriptor : signature);
+            return new FieldVisitor(FindBugsASM.ASM_VERSION) {
+              @Override
+              @Nullable
+              public AnnotationVisitor visitTypeAnnotation(
+                  int typeRef, @Nullable TypePath typePath, String annotation, boolean visible) {
+                collector.add(0, typePath, annotation);
+                return null;
+              }
+
+              @Override
+              public void visitEnd() {
+                collector.storeTo(members);
+              }
+            };
+          }
+
+          @Override
+          public org.objectweb.asm.MethodVisitor visitMethod(
+              int access,
+              String name,
+              String descriptor,
+              @Nullable String signature,
+              String @Nullable [] exceptions) {
+            TypeUseCollector collector =
+                new TypeUseCollector(
+                    symbols.memberKey(name, descriptor),
+                    signature == null ? descriptor : signature);
+            return new org.objectweb.asm.MethodVisitor(FindBugsASM.ASM_VERSION) {
+              @Override
+              @Nullable
+              public AnnotationVisitor visitTypeAnnotation(
+                  int typeRef, @Nullable TypePath typePath, String annotation, boolean visible) {
+                TypeReference reference = new TypeReference(typeRef);
+                if (reference.getSort() == TypeReference.METHOD_RETURN) {
+                  collector.add(-1, typePath, annotation);
+                } else if (reference.getSort() == TypeReference.METHOD_FORMAL_PARAMETER) {
+                  collector.add(reference.getFormalParameterIndex(), typePath, annotation);
+                }
+                return null;
+              }
+
+              @Override
+              public void visitEnd() {
+                collector.storeTo(members);
+              }
+            };
+          }
+        },
+        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return members;
+  }
+
+  /** Collects type annotations on one member, and encodes its types at the first annotation. */
+  private final class TypeUseCollector {
+    private final long key;
+    private final String signature;
+    private byte @Nullable [] types;
+    /** Whether a type argument or an array component is annotated. */
+    private boolean nested;
+
+    TypeUseCollector(long key, String signature) {
+      this.key = key;
+      this.signature = signature;
+    }
+
+    /** @param root index of the top-level type, or -1 for the return type of method */
+    void add(int root, @Nullable TypePath typePath, String annotation) {
+      Nullness nullness = findNullnessOfAnnotation(annotation);
+      if (nullness == null) {
+        return;
+      }
+      if (types == null) {
+        types = TypeUseNullness.encode(signature);
+        if (types == null) {
+          return;
+        }
+      }
+      int last = TypeUseNullness.lastRoot(types);
+      int start = root < 0 ? last : TypeUseNullness.root(types, root);
+      if (root > 0 && start == last) {
+        // javac does not count implicit parameters of some constructors
+        return;
+      }
+      int node = start < 0 ? -1 : TypeUseNullness.follow(types, start, typePath);
+      if (node >= 0) {
+        TypeUseNullness.annotate(types, node, nullness);
+        nested |= typePath != null;
+      }
+    }
+
+    void storeTo(MemberTable<byte[]> members) {
+      if (nested && types != null) {
+        members.put(key, types);
+      }
+    }
+  }
+
+  /** @return names of type parameters of the given class, in declaration order */
+  List<String> findTypeParametersOf(XClass clazz) {
+    long stamp = symbolLock.readLock();
+    try {
+      String signature = clazz.getSourceSignature();
+      if (signature == null || !signature.startsWith("<")) {
+        return List.of();
+      }
+      return typeParametersCache.get(
+          symbols.idOf(clazz.getClassDescriptor()),
+          key -> {
+            List<String> names = new ArrayList<>();
+            new SignatureReader(signature)
+                .accept(
+                    new SignatureVisitor(FindBugsASM.ASM_VERSION) {
+                      @Override
+                      public void visitFormalTypeParameter(String name) {
+                        names.add(name);
+                      }
+                    });
+            return List.copyOf(names);
+          });
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Stores nullness annotated on a field, found while its class is parsed, so detectors that read
+   * the field later do not resolve it again.
+   */
+  void addFieldNullness(FieldDescriptor field, Nullness nullness) {
+    long stamp = symbolLock.readLock();
+    try {
+      fieldTable.put(symbols.idOf(field), nullness);
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Finds nullness meant by the given annotation. Besides JSpecify annotations, this method
+   * supports {@code TypeQualifierNickname} of them, and registers found nickname as an alias.
+   *
+   * @return nullness meant by the annotation, or null if it is not a nullness annotation
+   */
+  @Nullable
+  Nullness findNullnessOfAnnotation(ClassDescriptor annotation) {
+    long stamp = symbolLock.readLock();
+    try {
+      Nullness nullness = Nullness.lookup(annotation.getClassName(), aliases);
+      if (nullness == null) {
+        nullness =
+            annotationCache.get(
+                symbols.idOf(annotation), key -> findNullnessOfNickname(annotation));
+      }
+      return nullness.isSetExplicitly() ? nullness : null;
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * @param descriptor type descriptor of the annotation like {@code
+   *     Lorg/jspecify/nullness/Nullable;}
+   * @see #findNullnessOfAnnotation(ClassDescriptor)
+   */
+  @Nullable
+  Nullness findNullnessOfAnnotation(String descriptor) {
+    long stamp = symbolLock.readLock();
+    try {
+      Nullness nullness = Nullness.lookup(descriptor, aliases);
+      if (nullness == null) {
+        nullness =
+            annotationCache.get(
+                symbols.idOf(descriptor),
+                key ->
+                    findNullnessOfNickname(
+                        DescriptorFactory.createClassDescriptorFromSignature(descriptor)));
+      }
+      return nullness.isSetExplicitly() ? nullness : null;
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  /** @return nullness meant by the nickname, or {@link Nullness#NO_EXPLICIT_CONFIG} if absent */
+  private Nullness findNullnessOfNickname(ClassDescriptor annotation) {
+    XClass clazz;
+    try {
+      clazz = Global.getAnalysisCache().getClassAnalysis(XClass.class, annotation);
+    } catch (CheckedAnalysisException e) {
+      // annotation class is not in the classpath
+      return Nullness.NO_EXPLICIT_CONFIG;
+    }
+    if (clazz == null || clazz.getAnnotation(TYPE_QUALIFIER_NICKNAME) == null) {
+      return Nullness.NO_EXPLICIT_CONFIG;
+    }
+    for (ClassDescriptor metaAnnotation : clazz.getAnnotationDescriptors()) {
+      Nullness nullness = Nullness.lookup(metaAnnotation.getClassName(), aliases);
+      if (nullness != null) {
+        Nullness.putAlias(aliases, annotation.getClassName(), nullness);
+        return nullness;
+      }
+    }
+    return Nullness.NO_EXPLICIT_CONFIG;
+  }
+
+  IntCache<Optional<Nullness>> getMethodCache() {
+    return methodCache;
+  }
+
+  /** @return the enclosing classes of the given class, from the innermost one */
+  List<XClass> findEnclosingClassesOf(XClass clazz) {
+    long stamp = symbolLock.readLock();
+    try {
+      return hierarchy.enclosingClassesOf(clazz);
+    } finally {
+      symbolLock.unlockRead(stamp);
+    }
+  }
+
+  PackageScopeIndex getPackageScopes() {
+    return packageScopes;
+  }
+
+  PluginMetrics getMetrics() {
+    return metrics;
+  }
+
+  NullnessFactStore getFactStore() {
+    return factStore;
+  }
+
+  /**
+   * Writes metrics and stored facts of this analysis. Detectors in the last pass call this at its
+   * end, and only the first call writes them.
+   */
+  void finishAnalysis() {
+    if (finished.compareAndSet(false, true)) {
+      writeMetrics();
+      factStore.save();
+    }
+  }
+
+  /** Writes metrics of this analysis, if {@link PluginMetrics#PROPERTY_OUTPUT} is set. */
+  private void writeMetrics() {
+    Map<String, Long> caches = new LinkedHashMap<>();
+    caches.put("methodCache.hits", methodCache.hitCount());
+    caches.put("methodCache.misses", methodCache.missCount());
+    caches.put("classCache.hits", classCache.hitCount());
+    caches.put("classCache.misses", classCache.missCount());
+    caches.put("parameterCache.hits", parameterCache.hitCount());
+    caches.put("parameterCache.misses", parameterCache.missCount());
+    caches.put("fieldTable.hits", fieldTable.hitCount());
+    caches.put("fieldTable.misses", fieldTable.missCount());
+    caches.put("typeUseCache.hits", typeUseCache.hitCount());
+    caches.put("typeUseCache.misses", typeUseCache.missCount());
+    caches.put("annotationCache.hits", annotationCache.hitCount());
+    caches.put("annotationCache.misses", annotationCache.missCount());
+    caches.put("packageCache.hits", packageCache.hitCount());
+    caches.put("packageCache.misses", packageCache.missCount());
+    caches.put("inferredMethods", (long) inferredNullness.size());
+    caches.put("symbols", (long) symbols.size());
+    caches.put("symbolClears", symbolClears.sum());
+    metrics.write(caches);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "NullnessDatabase[method cache: %s, class cache: %s, packages: %d]",
+        methodCache, classCache, packageScopes.size());
   }
 
   private Optional<Nullness> findNullnessOfMethod(XMethod method) {
-    return method.getAnnotationDescriptors().stream()
-        .map(desc -> Nullness.from(desc.getClassName()))
-        .filter(Optional::isPresent)
-        .map(Optional::get)
-        .findFirst();
+    for (ClassDescriptor annotation : method.getAnnotationDescriptors()) {
+      Nullness nullness = findNullnessOfAnnotation(annotation);
+      if (nullness != null) {
+        return nullness.asOptional();
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Finds default nullness that the given class, {@code package-info} or {@code module-info}
+   * declares by its own annotations, regardless of the scopes that enclose it.
+   *
+   * @return declared default nullness, or null if it is not declared
+   */
+  @Nullable
+  Nullness findDeclaredDefaultOf(XClass clazz) {
+    for (ClassDescriptor annotation : clazz.getAnnotationDescriptors()) {
+      if (annotation.getClassName().equals(DEFAULT_NON_NULL)) {
+        return Nullness.NOT_NULL;
+      }
+      Nullness found = findNullnessOfAnnotation(annotation);
+      if (found != null) {
+        return found;
+      }
+    }
+    return null;
   }
 
-  // TODO check interface and super classes
   private Optional<Nullness> findDefaultNullnessOfClass(XClass clazz) {
     AnnotationValue annotation =
-        clazz.getAnnotation(
-            DescriptorFactory.createClassDescriptor("org/jspecify/nullness/DefaultNonNull"));
+        clazz.getAnnotation(DescriptorFactory.createClassDescriptor(DEFAULT_NON_NULL));
     if (annotation != null) {
-      return Optional.of(Nullness.NOT_NULL);
+      return Nullness.NOT_NULL.asOptional();
     } else {
       return Optional.empty();
     }
   }
 
-  private Optional<Nullness> findDefaultNullnessOfPackage(
-      @DottedClassName String packageName, IAnalysisCache cache) {
-    @SlashedClassName
-    String packageInfoClassName = ClassName.toSlashedClassName(packageName) + "/package-info";
+  /** @return default nullness of the package of the given class, or of its module */
+  private Optional<Nullness> findDefaultNullnessOfPackage(ClassDescriptor classDescriptor) {
+    Optional<Nullness> nullness = findPackageDefaultOf(classDescriptor);
+    if (nullness.isEmpty()) {
+      metrics.countPackageInfoMiss();
+    }
+    return nullness;
+  }
+
+  /**
+   * Resolves default nullness once per package. Packages are not split across modules, so the first
+   * class of a package tells the module of the package.
+   *
+   * @return default nullness of the package of the given class, or of its module
+   */
+  Optional<Nullness> findPackageDefaultOf(ClassDescriptor classDescriptor) {
+    long stamp = symbolLock.readLock();
     try {
-      XClass clazz =
-          cache.getClassAnalysis(
-              XClass.class, DescriptorFactory.createClassDescriptor(packageInfoClassName));
-      if (clazz == null) {
-        return Optional.empty();
-      }
-      return findDefaultNullnessOfClass(clazz);
-    } catch (MissingClassException e) {
-      // no package-info.class found
-      return Optional.empty();
-    } catch (CheckedAnalysisException e) {
-      throw new RuntimeException(e);
+      return packageCache.get(
+          symbols.packageIdOf(classDescriptor), key -> packageScopes.find(classDescriptor));
+    } finally {
+      symbolLock.unlockRead(stamp);
     }
   }
 }
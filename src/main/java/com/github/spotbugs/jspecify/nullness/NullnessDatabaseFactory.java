@@ -15,16 +15,31 @@
  */
 package com.github.spotbugs.jspecify.nullness;
 
+import edu.umd.cs.findbugs.SystemProperties;
 import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.Global;
 import edu.umd.cs.findbugs.classfile.IAnalysisCache;
 import edu.umd.cs.findbugs.classfile.IDatabaseFactory;
 
 class NullnessDatabaseFactory implements IDatabaseFactory<NullnessDatabase> {
+  /** Set this system property to {@code false} to ignore the packaged nullness index. */
+  static final String PROPERTY_USE_INDEX = "spotbugs.jspecify.nullnessIndex";
 
   @Override
   public NullnessDatabase createDatabase() throws CheckedAnalysisException {
-    // TODO load nullness info of JDK from packaged resource file
-    return new NullnessDatabase();
+    NullnessIndex index =
+        SystemProperties.getBoolean(PROPERTY_USE_INDEX, true)
+            ? NullnessIndex.load()
+            : NullnessIndex.EMPTY;
+    // the database is created at its first use, after SpotBugs built the classpath
+    PackageScopeIndex packageScopes =
+        PackageScopeIndex.build(Global.getAnalysisCache().getClassPath());
+    return new NullnessDatabase(
+        index,
+        packageScopes,
+        NullnessDatabase.DEFAULT_CACHE_SIZE,
+        PluginMetrics.fromSystemProperty(),
+        NullnessFactStore.fromSystemProperty());
   }
 
   @Override
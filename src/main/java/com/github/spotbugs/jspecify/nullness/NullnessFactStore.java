@@ -0,0 +1,723 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugAnnotation;
+import edu.umd.cs.findbugs.BugAnnotationWithSourceLines;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.FieldAnnotation;
+import edu.umd.cs.findbugs.IntAnnotation;
+import edu.umd.cs.findbugs.MethodAnnotation;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.SystemProperties;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.analysis.ClassData;
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * On-disk store of nullness facts for incremental analysis. For each analysed class, it keeps the
+ * hash of the class file, a {@link Summary} of the nullness that the class provides to others, and
+ * for each detector the bugs it reported and the summaries of classes that its result depends on.
+ *
+ * <p>A detector calls {@link #replay} before analysing a class. When the class file, its own
+ * summary and the summaries of its dependencies are unchanged since the previous run, the stored
+ * bugs are reported again and the analysis gets skipped. Otherwise the detector analyses the class
+ * and calls {@link #record} with its result. The store is written by {@link #save()} at the end of
+ * analysis, and only keeps classes seen in that analysis.
+ *
+ * <p>The binary format is:
+ *
+ * <pre>
+ * int magic, short version, int classCount,
+ * (UTF class, short hashLength, byte[] hash, summary, int detectorCount,
+ *   (UTF detector, int dependencyCount, (UTF class, long fingerprint)*,
+ *    int bugCount, (int length, byte[] bug)*)*)*
+ * summary: byte defaultNullness, int methodCount, (UTF method, byte nullness)*,
+ *          int fieldCount, (UTF field, byte nullness)*,
+ *          int parameterCount, (UTF method, short wordCount, long[] nonNull)*,
+ *          int typeUseCount, (UTF member, short length, byte[] typeUse)*
+ * </pre>
+ *
+ * Instances are thread-safe.
+ */
+@NullMarked
+final class NullnessFactStore {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Set this system property to a file path, to store nullness facts for incremental analysis. */
+  static final String PROPERTY_PATH = "spotbugs.jspecify.factStore";
+
+  static final int MAGIC = 0x4A534653; // JSFS
+  static final short VERSION = 3;
+  private static final byte NONE = -1;
+  private static final byte CLASS_ANNOTATION = 1;
+  private static final byte METHOD_ANNOTATION = 2;
+  private static final byte FIELD_ANNOTATION = 3;
+  private static final byte SOURCE_LINE_ANNOTATION = 4;
+  static final byte INT_ANNOTATION = 5;
+
+  @Nullable private final Path path;
+  private final Map<String, ClassFacts> previous;
+  private final ConcurrentHashMap<String, ClassFacts> current = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<ClassDescriptor, byte[]> hashes = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<ClassDescriptor, Summary> summaries = new ConcurrentHashMap<>();
+
+  private NullnessFactStore(@Nullable Path path, Map<String, ClassFacts> previous) {
+    this.path = path;
+    this.previous = previous;
+  }
+
+  /** @return a store that neither replays nor records anything */
+  static NullnessFactStore disabled() {
+    return new NullnessFactStore(null, Map.of());
+  }
+
+  static NullnessFactStore fromSystemProperty() {
+    String value = SystemProperties.getProperty(PROPERTY_PATH);
+    return value == null || value.isEmpty() ? disabled() : open(Paths.get(value));
+  }
+
+  /** Opens the store at the given path. A missing or unreadable file results in an empty store. */
+  static NullnessFactStore open(Path path) {
+    Map<String, ClassFacts> previous = Map.of();
+    if (Files.isRegularFile(path)) {
+      try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+        previous = read(input);
+        log.debug("Loaded nullness facts of {} classes from {}", previous.size(), path);
+      } catch (IOException | RuntimeException e) {
+        log.warn("Failed to read {}, so analysing all classes", path, e);
+      }
+    }
+    return new NullnessFactStore(path, previous);
+  }
+
+  /**
+   * Reports bugs found in the previous run again, if the result of the detector cannot be changed
+   * since then.
+   *
+   * @return true if bugs were replayed, so the detector does not need to analyse the class
+   */
+  boolean replay(
+      NullnessDatabase database, XClass clazz, String detector, BugReporter bugReporter) {
+    if (path == null) {
+      return false;
+    }
+    ClassDescriptor descriptor = clazz.getClassDescriptor();
+    ClassFacts facts = previous.get(descriptor.getClassName());
+    byte[] hash = hashOf(descriptor);
+    if (facts == null
+        || hash.length == 0
+        || !Arrays.equals(facts.hash, hash)
+        || !facts.summary.equals(summaryOf(database, clazz))) {
+      return false;
+    }
+    DetectorFacts detectorFacts = facts.detectors.get(detector);
+    if (detectorFacts == null) {
+      return false;
+    }
+    for (Map.Entry<String, Long> dependency : detectorFacts.dependencies.entrySet()) {
+      if (fingerprintOf(database, dependency.getKey()) != dependency.getValue()) {
+        return false;
+      }
+    }
+    for (byte[] bug : detectorFacts.bugs) {
+      bugReporter.reportBug(decodeBug(bug));
+    }
+    current.compute(
+        descriptor.getClassName(),
+        (key, value) ->
+            (value == null ? new ClassFacts(facts.hash, facts.summary) : value)
+                .with(detector, detectorFacts));
+    return true;
+  }
+
+  /** Records the result of the detector, to replay it in the next run. */
+  void record(
+      NullnessDatabase database,
+      XClass clazz,
+      String detector,
+      Collection<ClassDescriptor> dependencies,
+      Collection<BugInstance> bugs) {
+    if (path == null) {
+      return;
+    }
+    List<byte[]> encodedBugs = new ArrayList<>(bugs.size());
+    for (BugInstance bug : bugs) {
+      byte[] encoded = encodeBug(bug);
+      if (encoded == null) {
+        // the bug cannot be replayed, so analyse this class again in the next run
+        return;
+      }
+      encodedBugs.add(encoded);
+    }
+    Map<String, Long> fingerprints = new TreeMap<>();
+    for (ClassDescriptor dependency : dependencies) {
+      fingerprints.put(dependency.getClassName(), fingerprintOf(database, dependency));
+    }
+    ClassDescriptor descriptor = clazz.getClassDescriptor();
+    byte[] hash = hashOf(descriptor);
+    Summary summary = summaryOf(database, clazz);
+    DetectorFacts detectorFacts = new DetectorFacts(fingerprints, encodedBugs);
+    current.compute(
+        descriptor.getClassName(),
+        (key, value) ->
+            (value == null ? new ClassFacts(hash, summary) : value).with(detector, detectorFacts));
+  }
+
+  /** Writes facts recorded in this analysis, replacing the previous file. */
+  void save() {
+    if (path == null) {
+      return;
+    }
+    try {
+      Path parent = path.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+      try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(temp))) {
+        write(new TreeMap<>(current), output);
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+      log.debug("Stored nullness facts of {} classes to {}", current.size(), path);
+    } catch (IOException e) {
+      log.warn("Failed to store nullness facts to {}", path, e);
+    }
+  }
+
+  /** @return SHA-256 hash of the class file, or an empty array if it is not available */
+  private byte[] hashOf(ClassDescriptor descriptor) {
+    byte[] hash = hashes.get(descriptor);
+    if (hash == null) {
+      try {
+        ClassData data = Global.getAnalysisCache().getClassAnalysis(ClassData.class, descriptor);
+        hash = MessageDigest.getInstance("SHA-256").digest(data.getData());
+      } catch (CheckedAnalysisException | NoSuchAlgorithmException e) {
+        hash = new byte[0];
+      }
+      hashes.putIfAbsent(descriptor, hash);
+    }
+    return hash;
+  }
+
+  private long fingerprintOf(NullnessDatabase database, @SlashedClassName String className) {
+    return fingerprintOf(database, DescriptorFactory.createClassDescriptor(className));
+  }
+
+  private long fingerprintOf(NullnessDatabase database, ClassDescriptor descriptor) {
+    XClass clazz;
+    try {
+      clazz = Global.getAnalysisCache().getClassAnalysis(XClass.class, descriptor);
+    } catch (CheckedAnalysisException e) {
+      // the class is missing, and it may appear in the next run
+      return 0L;
+    }
+    return Summary.mixInferred(summaryOf(database, clazz).fingerprint(), database, clazz);
+  }
+
+  private Summary summaryOf(NullnessDatabase database, XClass clazz) {
+    Summary summary = summaries.get(clazz.getClassDescriptor());
+    if (summary == null) {
+      // computed without holding the lock of the map, because it reads other classes
+      summary = Summary.of(database, clazz);
+      summaries.putIfAbsent(clazz.getClassDescriptor(), summary);
+    }
+    return summary;
+  }
+
+  @Nullable
+  static byte[] encodeBug(BugInstance bug) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeUTF(bug.getType());
+      output.writeByte(bug.getPriority());
+      output.writeShort(bug.getAnnotations().size());
+      for (BugAnnotation annotation : bug.getAnnotations()) {
+        if (!encodeAnnotation(annotation, output)) {
+          return null;
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static boolean encodeAnnotation(BugAnnotation annotation, DataOutputStream output)
+      throws IOException {
+    if (annotation instanceof ClassAnnotation) {
+      ClassAnnotation classAnnotation = (ClassAnnotation) annotation;
+      output.writeByte(CLASS_ANNOTATION);
+      output.writeUTF(classAnnotation.getClassName());
+    } else if (annotation instanceof MethodAnnotation) {
+      MethodAnnotation method = (MethodAnnotation) annotation;
+      output.writeByte(METHOD_ANNOTATION);
+      output.writeUTF(method.getClassName());
+      output.writeUTF(method.getMethodName());
+      output.writeUTF(method.getMethodSignature());
+      output.writeBoolean(method.isStatic());
+    } else if (annotation instanceof FieldAnnotation) {
+      FieldAnnotation field = (FieldAnnotation) annotation;
+      output.writeByte(FIELD_ANNOTATION);
+      output.writeUTF(field.getClassName());
+      output.writeUTF(field.getFieldName());
+      output.writeUTF(field.getFieldSignature());
+      output.writeBoolean(field.isStatic());
+    } else if (annotation instanceof SourceLineAnnotation) {
+      output.writeByte(SOURCE_LINE_ANNOTATION);
+      encodeSourceLine((SourceLineAnnotation) annotation, output);
+    } else if (annotation instanceof IntAnnotation) {
+      output.writeByte(INT_ANNOTATION);
+      output.writeInt(((IntAnnotation) annotation).getValue());
+    } else {
+      return false;
+    }
+    output.writeUTF(annotation.getDescription());
+    if (annotation instanceof BugAnnotationWithSourceLines) {
+      SourceLineAnnotation sourceLines =
+          ((BugAnnotationWithSourceLines) annotation).getSourceLines();
+      output.writeBoolean(sourceLines != null);
+      if (sourceLines != null) {
+        encodeSourceLine(sourceLines, output);
+      }
+    }
+    return true;
+  }
+
+  private static void encodeSourceLine(SourceLineAnnotation sourceLine, DataOutputStream output)
+      throws IOException {
+    output.writeUTF(sourceLine.getClassName());
+    output.writeUTF(sourceLine.getSourceFile());
+    output.writeInt(sourceLine.getStartLine());
+    output.writeInt(sourceLine.getEndLine());
+    output.writeInt(sourceLine.getStartBytecode());
+    output.writeInt(sourceLine.getEndBytecode());
+  }
+
+  static BugInstance decodeBug(byte[] bytes) {
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      BugInstance bug = new BugInstance(input.readUTF(), input.readByte());
+      for (int i = input.readShort(); i > 0; --i) {
+        bug.add(decodeAnnotation(input));
+      }
+      return bug;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static BugAnnotation decodeAnnotation(DataInputStream input) throws IOException {
+    byte kind = input.readByte();
+    BugAnnotation annotation;
+    switch (kind) {
+      case CLASS_ANNOTATION:
+        annotation = new ClassAnnotation(input.readUTF());
+        break;
+      case METHOD_ANNOTATION:
+        annotation =
+            new MethodAnnotation(
+                input.readUTF(), input.readUTF(), input.readUTF(), input.readBoolean());
+        break;
+      case FIELD_ANNOTATION:
+        annotation =
+            new FieldAnnotation(
+                input.readUTF(), input.readUTF(), input.readUTF(), input.readBoolean());
+        break;
+      case SOURCE_LINE_ANNOTATION:
+        annotation = decodeSourceLine(input);
+        break;
+      case INT_ANNOTATION:
+        annotation = new IntAnnotation(input.readInt());
+        break;
+      default:
+        throw new IOException("Unknown kind of bug annotation: " + kind);
+    }
+    annotation.setDescription(input.readUTF());
+    if (annotation instanceof BugAnnotationWithSourceLines && input.readBoolean()) {
+      ((BugAnnotationWithSourceLines) annotation).setSourceLines(decodeSourceLine(input));
+    }
+    return annotation;
+  }
+
+  private static SourceLineAnnotation decodeSourceLine(DataInputStream input) throws IOException {
+    return new SourceLineAnnotation(
+        input.readUTF(),
+        input.readUTF(),
+        input.readInt(),
+        input.readInt(),
+        input.readInt(),
+        input.readInt());
+  }
+
+  static Map<String, ClassFacts> read(InputStream stream) throws IOException {
+    DataInputStream input = new DataInputStream(stream);
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a nullness fact store");
+    }
+    short version = input.readShort();
+    if (version != VERSION) {
+      throw new IOException("Unsupported version of nullness fact store: " + version);
+    }
+    Map<String, ClassFacts> result = new HashMap<>();
+    for (int i = input.readInt(); i > 0; --i) {
+      String className = input.readUTF();
+      byte[] hash = new byte[input.readShort()];
+      input.readFully(hash);
+      ClassFacts facts = new ClassFacts(hash, Summary.read(input));
+      for (int j = input.readInt(); j > 0; --j) {
+        String detector = input.readUTF();
+        Map<String, Long> dependencies = new TreeMap<>();
+        for (int k = input.readInt(); k > 0; --k) {
+          dependencies.put(input.readUTF(), input.readLong());
+        }
+        List<byte[]> bugs = new ArrayList<>();
+        for (int k = input.readInt(); k > 0; --k) {
+          byte[] bug = new byte[input.readInt()];
+          input.readFully(bug);
+          bugs.add(bug);
+        }
+        facts = facts.with(detector, new DetectorFacts(dependencies, bugs));
+      }
+      result.put(className, facts);
+    }
+    return Map.copyOf(result);
+  }
+
+  static void write(Map<String, ClassFacts> classes, OutputStream stream) throws IOException {
+    DataOutputStream output = new DataOutputStream(stream);
+    output.writeInt(MAGIC);
+    output.writeShort(VERSION);
+    output.writeInt(classes.size());
+    for (Map.Entry<String, ClassFacts> entry : classes.entrySet()) {
+      ClassFacts facts = entry.getValue();
+      output.writeUTF(entry.getKey());
+      output.writeShort(facts.hash.length);
+      output.write(facts.hash);
+      facts.summary.write(output);
+      output.writeInt(facts.detectors.size());
+      for (Map.Entry<String, DetectorFacts> detector : facts.detectors.entrySet()) {
+        output.writeUTF(detector.getKey());
+        output.writeInt(detector.getValue().dependencies.size());
+        for (Map.Entry<String, Long> dependency : detector.getValue().dependencies.entrySet()) {
+          output.writeUTF(dependency.getKey());
+          output.writeLong(dependency.getValue());
+        }
+        output.writeInt(detector.getValue().bugs.size());
+        for (byte[] bug : detector.getValue().bugs) {
+          output.writeInt(bug.length);
+          output.write(bug);
+        }
+      }
+    }
+    output.flush();
+  }
+
+  private static byte toByte(Nullness nullness) {
+    return nullness == Nullness.NO_EXPLICIT_CONFIG ? NONE : (byte) nullness.ordinal();
+  }
+
+  private static Nullness toNullness(byte value) {
+    return value == NONE ? Nullness.NO_EXPLICIT_CONFIG : Nullness.values()[value];
+  }
+
+  /** Facts of one class. Instances are immutable. */
+  static final class ClassFacts {
+    final byte[] hash;
+    final Summary summary;
+    final SortedMap<String, DetectorFacts> detectors;
+
+    ClassFacts(byte[] hash, Summary summary) {
+      this(hash, summary, new TreeMap<>());
+    }
+
+    private ClassFacts(byte[] hash, Summary summary, SortedMap<String, DetectorFacts> detectors) {
+      this.hash = hash;
+      this.summary = summary;
+      this.detectors = detectors;
+    }
+
+    ClassFacts with(String detector, DetectorFacts facts) {
+      SortedMap<String, DetectorFacts> copy = new TreeMap<>(detectors);
+      copy.put(detector, facts);
+      return new ClassFacts(hash, summary, copy);
+    }
+  }
+
+  /** Result of one detector on one class. */
+  static final class DetectorFacts {
+    /** Fingerprint of the {@link Summary} of each class that the result depends on. */
+    final Map<String, Long> dependencies;
+    /** Reported bugs, encoded by {@link #encodeBug(BugInstance)}. */
+    final List<byte[]> bugs;
+
+    DetectorFacts(Map<String, Long> dependencies, List<byte[]> bugs) {
+      this.dependencies = dependencies;
+      this.bugs = bugs;
+    }
+  }
+
+  /**
+   * Nullness that a class provides to other classes: its default nullness, nullness of values
+   * returned by its methods, nullness of its fields, non-null parameters of its methods, and
+   * nullness annotated on type arguments and array components of its members. Members are keyed by
+   * their name and signature.
+   */
+  static final class Summary {
+    final Nullness defaultNullness;
+    final SortedMap<String, Nullness> methods;
+    final SortedMap<String, Nullness> fields;
+    /** {@link ParameterBitmap} of methods that have non-null parameters. */
+    final SortedMap<String, long[]> parameters;
+    /** {@link TypeUseNullness} of methods and fields that have annotated nested types. */
+    final SortedMap<String, byte[]> typeUses;
+
+    Summary(
+        Nullness defaultNullness,
+        SortedMap<String, Nullness> methods,
+        SortedMap<String, Nullness> fields,
+        SortedMap<String, long[]> parameters,
+        SortedMap<String, byte[]> typeUses) {
+      this.defaultNullness = defaultNullness;
+      this.methods = methods;
+      this.fields = fields;
+      this.parameters = parameters;
+      this.typeUses = typeUses;
+    }
+
+    static Summary of(NullnessDatabase database, XClass clazz) {
+      SortedMap<String, Nullness> methods = new TreeMap<>();
+      SortedMap<String, long[]> parameters = new TreeMap<>();
+      SortedMap<String, byte[]> typeUses = new TreeMap<>();
+      for (XMethod method : clazz.getXMethods()) {
+        String key = method.getName() + method.getSignature();
+        putTypeUse(typeUses, database, clazz, method.getName(), method.getSignature());
+        database
+            .findNullnessOf(method, Global.getAnalysisCache())
+            .ifPresent(nullness -> methods.put(key, nullness));
+        long[] nonNull = database.findNonNullParametersOf(method);
+        if (nonNull.length > 0) {
+          parameters.put(key, nonNull);
+        }
+      }
+      SortedMap<String, Nullness> fields = new TreeMap<>();
+      for (XField field : clazz.getXFields()) {
+        putTypeUse(typeUses, database, clazz, field.getName(), field.getSignature());
+        database
+            .findNullnessOfField(field)
+            .ifPresent(nullness -> fields.put(field.getName() + field.getSignature(), nullness));
+      }
+      Nullness defaultNullness;
+      if (isScopeDeclaration(clazz.getClassDescriptor())) {
+        // classes in the package or the module depend on what it declares, not on what it inherits
+        Nullness declared = database.findDeclaredDefaultOf(clazz);
+        defaultNullness = declared == null ? Nullness.NO_EXPLICIT_CONFIG : declared;
+      } else {
+        defaultNullness = database.findDefaultNullnessOf(clazz).orElse(Nullness.NO_EXPLICIT_CONFIG);
+      }
+      return new Summary(defaultNullness, methods, fields, parameters, typeUses);
+    }
+
+    private static void putTypeUse(
+        SortedMap<String, byte[]> typeUses,
+        NullnessDatabase database,
+        XClass clazz,
+        String name,
+        String descriptor) {
+      byte[] typeUse = database.findTypeUseOf(clazz, name, descriptor);
+      if (typeUse != null) {
+        typeUses.put(name + descriptor, typeUse);
+      }
+    }
+
+    /** @return true if the class is a {@code package-info} or a {@code module-info} */
+    private static boolean isScopeDeclaration(ClassDescriptor descriptor) {
+      String simpleName = descriptor.getSimpleName();
+      return simpleName.equals("package-info") || simpleName.equals("module-info");
+    }
+
+    /** @return 64-bit FNV-1a hash, which is stable between runs unlike {@link #hashCode()} */
+    long fingerprint() {
+      long hash = 0xcbf29ce484222325L;
+      hash = mix(hash, defaultNullness.name());
+      for (Map.Entry<String, Nullness> entry : methods.entrySet()) {
+        hash = mix(mix(hash, entry.getKey()), entry.getValue().name());
+      }
+      hash = mix(hash, "|");
+      for (Map.Entry<String, Nullness> entry : fields.entrySet()) {
+        hash = mix(mix(hash, entry.getKey()), entry.getValue().name());
+      }
+      hash = mix(hash, "|");
+      for (Map.Entry<String, long[]> entry : parameters.entrySet()) {
+        hash = mix(mix(hash, entry.getKey()), Arrays.toString(entry.getValue()));
+      }
+      hash = mix(hash, "|");
+      for (Map.Entry<String, byte[]> entry : typeUses.entrySet()) {
+        hash = mix(mix(hash, entry.getKey()), Arrays.toString(entry.getValue()));
+      }
+      return hash;
+    }
+
+    /**
+     * Mixes inferred nullness of methods into the fingerprint. It is not a part of the summary,
+     * because it is only known after the pass that infers it.
+     */
+    static long mixInferred(long fingerprint, NullnessDatabase database, XClass clazz) {
+      long hash = fingerprint;
+      for (XMethod method : clazz.getXMethods()) {
+        Optional<Nullness> inferred = database.findInferredNullnessOf(method.getMethodDescriptor());
+        if (inferred.isPresent()) {
+          hash = mix(mix(hash, method.getName() + method.getSignature()), inferred.get().name());
+        }
+      }
+      return hash;
+    }
+
+    private static long mix(long hash, String string) {
+      for (int i = 0; i < string.length(); ++i) {
+        hash = (hash ^ string.charAt(i)) * 0x100000001b3L;
+      }
+      return (hash ^ 0xff) * 0x100000001b3L;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (!(obj instanceof Summary)) {
+        return false;
+      }
+      Summary other = (Summary) obj;
+      return defaultNullness == other.defaultNullness
+          && methods.equals(other.methods)
+          && fields.equals(other.fields)
+          && equalArrays(parameters, other.parameters)
+          && equalArrays(typeUses, other.typeUses);
+    }
+
+    /** @return true if both maps have the same keys, and arrays of the same elements */
+    private static boolean equalArrays(Map<String, ?> map, Map<String, ?> other) {
+      if (!map.keySet().equals(other.keySet())) {
+        return false;
+      }
+      for (Map.Entry<String, ?> entry : map.entrySet()) {
+        if (!Objects.deepEquals(entry.getValue(), other.get(entry.getKey()))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(fingerprint());
+    }
+
+    static Summary read(DataInputStream input) throws IOException {
+      Nullness defaultNullness = toNullness(input.readByte());
+      SortedMap<String, Nullness> methods = new TreeMap<>();
+      for (int i = input.readInt(); i > 0; --i) {
+        methods.put(input.readUTF(), toNullness(input.readByte()));
+      }
+      SortedMap<String, Nullness> fields = new TreeMap<>();
+      for (int i = input.readInt(); i > 0; --i) {
+        fields.put(input.readUTF(), toNullness(input.readByte()));
+      }
+      SortedMap<String, long[]> parameters = new TreeMap<>();
+      for (int i = input.readInt(); i > 0; --i) {
+        String method = input.readUTF();
+        long[] nonNull = new long[input.readShort()];
+        for (int j = 0; j < nonNull.length; ++j) {
+          nonNull[j] = input.readLong();
+        }
+        parameters.put(method, nonNull);
+      }
+      SortedMap<String, byte[]> typeUses = new TreeMap<>();
+      for (int i = input.readInt(); i > 0; --i) {
+        String member = input.readUTF();
+        byte[] typeUse = new byte[input.readShort()];
+        input.readFully(typeUse);
+        typeUses.put(member, typeUse);
+      }
+      return new Summary(defaultNullness, methods, fields, parameters, typeUses);
+    }
+
+    void write(DataOutputStream output) throws IOException {
+      output.writeByte(toByte(defaultNullness));
+      output.writeInt(methods.size());
+      for (Map.Entry<String, Nullness> entry : methods.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeByte(toByte(entry.getValue()));
+      }
+      output.writeInt(fields.size());
+      for (Map.Entry<String, Nullness> entry : fields.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeByte(toByte(entry.getValue()));
+      }
+      output.writeInt(parameters.size());
+      for (Map.Entry<String, long[]> entry : parameters.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeShort(entry.getValue().length);
+        for (long word : entry.getValue()) {
+          output.writeLong(word);
+        }
+      }
+      output.writeInt(typeUses.size());
+      for (Map.Entry<String, byte[]> entry : typeUses.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeShort(entry.getValue().length);
+        output.write(entry.getValue());
+      }
+    }
+  }
+}
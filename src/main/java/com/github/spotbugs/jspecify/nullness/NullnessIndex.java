@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+
+/**
+ * Prebuilt nullness facts of the JDK and libraries, generated at build time and packaged as a
+ * resource. Default nullness of packages listed in this index is taken from the index, so analysis
+ * does not need to parse their {@code package-info.class}. Methods without their own entry are
+ * still resolved from their class files, so they get nullness of methods they override.
+ *
+ * <p>The binary format consists of a header, a string table, and tables of packages, classes and
+ * methods that refer strings by their index in the string table:
+ *
+ * <pre>
+ * int magic, short version
+ * int stringCount, (UTF string)*
+ * int packageCount, (int name, byte defaultNullness)*
+ * int classCount, (int name, byte defaultNullness)*
+ * int methodCount, (int class, int name, int signature, byte flags, byte nullness)*
+ * </pre>
+ *
+ * Nullness is encoded as the ordinal of {@link Nullness}, and {@link #NONE} means absence.
+ *
+ * <p>Instances are thread-safe: the decoded content is immutable, and gets published once through a
+ * volatile field.
+ */
+@NullMarked
+final class NullnessIndex {
+  static final String RESOURCE_NAME = "jspecify-nullness.idx";
+  static final int MAGIC = 0x4A534E49; // JSNI
+  static final short VERSION = 1;
+  static final byte NONE = -1;
+  static final byte FLAG_STATIC = 1;
+
+  static final NullnessIndex EMPTY = new NullnessIndex(new byte[0]);
+
+  private final byte[] bytes;
+  @Nullable private volatile Content content;
+
+  private NullnessIndex(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  /**
+   * Reads the packaged index. The content is decoded lazily, at the first lookup.
+   *
+   * @return the packaged index, or {@link #EMPTY} if the resource does not exist
+   */
+  static NullnessIndex load() {
+    try (InputStream input = NullnessIndex.class.getResourceAsStream("/" + RESOURCE_NAME)) {
+      if (input == null) {
+        return EMPTY;
+      }
+      return new NullnessIndex(input.readAllBytes());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load " + RESOURCE_NAME, e);
+    }
+  }
+
+  static NullnessIndex of(byte[] bytes) {
+    return new NullnessIndex(bytes.clone());
+  }
+
+  /** @return true if default nullness of the given package is described by this index */
+  boolean covers(@SlashedClassName String packageName) {
+    return content().packages.containsKey(packageName);
+  }
+
+  /** @return true if the given method has its own entry in this index */
+  boolean contains(MethodDescriptor method) {
+    return content().methods.containsKey(method);
+  }
+
+  /**
+   * Finds nullness of the returned value of the given method, or the default nullness of its class
+   * or package if the method has no entry. Callers should check {@link #covers(String)} first, to
+   * distinguish between unknown and absent nullness.
+   */
+  Optional<Nullness> findNullnessOf(MethodDescriptor method) {
+    Nullness nullness = content().methods.get(method);
+    if (nullness == null) {
+      return findDefaultNullnessOf(method.getSlashedClassName());
+    }
+    return nullness == Nullness.NO_EXPLICIT_CONFIG ? Optional.empty() : nullness.asOptional();
+  }
+
+  /** @return default nullness of the given class, or of its package if the class has no entry */
+  Optional<Nullness> findDefaultNullnessOf(@SlashedClassName String className) {
+    Content c = content();
+    Nullness nullness = c.classes.get(className);
+    if (nullness == null) {
+      nullness = c.packages.get(packageNameOf(className));
+    }
+    return nullness == null || nullness == Nullness.NO_EXPLICIT_CONFIG
+        ? Optional.empty()
+        : nullness.asOptional();
+  }
+
+  int size() {
+    return content().methods.size();
+  }
+
+  private Content content() {
+    Content c = content;
+    if (c == null) {
+      synchronized (this) {
+        c = content;
+        if (c == null) {
+          c = bytes.length == 0 ? Content.EMPTY : decode(bytes);
+          content = c;
+        }
+      }
+    }
+    return c;
+  }
+
+  private static Content decode(byte[] bytes) {
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      if (input.readInt() != MAGIC) {
+        throw new IllegalStateException(RESOURCE_NAME + " is not a nullness index");
+      }
+      short version = input.readShort();
+      if (version != VERSION) {
+        throw new IllegalStateException("Unsupported version of nullness index: " + version);
+      }
+      String[] strings = new String[input.readInt()];
+      for (int i = 0; i < strings.length; ++i) {
+        strings[i] = input.readUTF().intern();
+      }
+      Map<String, Nullness> packages = new HashMap<>();
+      for (int i = input.readInt(); i > 0; --i) {
+        packages.put(strings[input.readInt()], toNullness(input.readByte()));
+      }
+      Map<String, Nullness> classes = new HashMap<>();
+      for (int i = input.readInt(); i > 0; --i) {
+        classes.put(strings[input.readInt()], toNullness(input.readByte()));
+      }
+      DescriptorFactory factory = DescriptorFactory.instance();
+      Map<MethodDescriptor, Nullness> methods = new HashMap<>();
+      for (int i = input.readInt(); i > 0; --i) {
+        String className = strings[input.readInt()];
+        String name = strings[input.readInt()];
+        String signature = strings[input.readInt()];
+        boolean isStatic = (input.readByte() & FLAG_STATIC) != 0;
+        methods.put(
+            factory.getMethodDescriptor(className, name, signature, isStatic),
+            toNullness(input.readByte()));
+      }
+      return new Content(packages, classes, methods);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to decode " + RESOURCE_NAME, e);
+    }
+  }
+
+  private static Nullness toNullness(byte value) {
+    return value == NONE ? Nullness.NO_EXPLICIT_CONFIG : Nullness.values()[value];
+  }
+
+  @SlashedClassName
+  static String packageNameOf(@SlashedClassName String className) {
+    int index = className.lastIndexOf('/');
+    return index < 0 ? "" : className.substring(0, index);
+  }
+
+  private static final class Content {
+    static final Content EMPTY = new Content(Map.of(), Map.of(), Map.of());
+
+    final Map<String, Nullness> packages;
+    final Map<String, Nullness> classes;
+    final Map<MethodDescriptor, Nullness> methods;
+
+    Content(
+        Map<String, Nullness> packages,
+        Map<String, Nullness> classes,
+        Map<MethodDescriptor, Nullness> methods) {
+      this.packages = Map.copyOf(packages);
+      this.classes = Map.copyOf(classes);
+      this.methods = Map.copyOf(methods);
+    }
+  }
+
+  /** Collects nullness facts and writes them in the binary format read by {@link NullnessIndex}. */
+  static final class Writer {
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+    private final Map<String, Byte> packages = new LinkedHashMap<>();
+    private final Map<String, Byte> classes = new LinkedHashMap<>();
+    private final Map<String, int[]> methods = new LinkedHashMap<>();
+
+    Writer addPackage(@SlashedClassName String packageName, Nullness defaultNullness) {
+      intern(packageName);
+      packages.put(packageName, toByte(defaultNullness));
+      return this;
+    }
+
+    Writer addClass(@SlashedClassName String className, Nullness defaultNullness) {
+      packages.putIfAbsent(packageNameOf(className), NONE);
+      intern(packageNameOf(className));
+      intern(className);
+      classes.put(className, toByte(defaultNullness));
+      return this;
+    }
+
+    Writer addMethod(
+        @SlashedClassName String className,
+        String name,
+        String signature,
+        boolean isStatic,
+        Nullness nullness) {
+      packages.putIfAbsent(packageNameOf(className), NONE);
+      intern(packageNameOf(className));
+      methods.put(
+          className + '.' + name + signature,
+          new int[] {
+            intern(className),
+            intern(name),
+            intern(signature),
+            isStatic ? FLAG_STATIC : 0,
+            toByte(nullness)
+          });
+      return this;
+    }
+
+    int methodCount() {
+      return methods.size();
+    }
+
+    void write(OutputStream output) throws IOException {
+      DataOutputStream data = new DataOutputStream(output);
+      data.writeInt(MAGIC);
+      data.writeShort(VERSION);
+      data.writeInt(strings.size());
+      for (String string : strings.keySet()) {
+        data.writeUTF(string);
+      }
+      data.writeInt(packages.size());
+      for (Map.Entry<String, Byte> entry : packages.entrySet()) {
+        data.writeInt(intern(entry.getKey()));
+        data.writeByte(entry.getValue());
+      }
+      data.writeInt(classes.size());
+      for (Map.Entry<String, Byte> entry : classes.entrySet()) {
+        data.writeInt(intern(entry.getKey()));
+        data.writeByte(entry.getValue());
+      }
+      data.writeInt(methods.size());
+      for (int[] method : methods.values()) {
+        data.writeInt(method[0]);
+        data.writeInt(method[1]);
+        data.writeInt(method[2]);
+        data.writeByte(method[3]);
+        data.writeByte(method[4]);
+      }
+      data.flush();
+    }
+
+    private int intern(String string) {
+      return strings.computeIfAbsent(string, key -> strings.size());
+    }
+
+    private static byte toByte(Nullness nullness) {
+      return nullness == Nullness.NO_EXPLICIT_CONFIG ? NONE : (byte) nullness.ordinal();
+    }
+  }
+}
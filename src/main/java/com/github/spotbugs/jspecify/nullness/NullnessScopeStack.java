@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.util.Arrays;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+
+/**
+ * Default nullness of nested scopes: module, package, enclosing classes and the class, from the
+ * outermost one. Each level keeps the effective default, inherited from the enclosing level when
+ * the scope does not declare its own, so the default of the innermost scope is read in O(1) and
+ * members are checked without resolving the enclosing scopes again.
+ *
+ * <p>Levels are stored in an array that grows only for deeply nested classes, so a detector can
+ * reuse one instance for all classes it visits.
+ */
+@NullMarked
+final class NullnessScopeStack {
+  private Nullness[] effective = new Nullness[8];
+  private int depth;
+
+  /** Clears all the levels, to visit another class. */
+  void reset() {
+    depth = 0;
+  }
+
+  /**
+   * Enters a nested scope.
+   *
+   * @param declared default nullness declared by the scope, or null if it is not declared
+   */
+  void push(@Nullable Nullness declared) {
+    if (depth == effective.length) {
+      effective = Arrays.copyOf(effective, depth * 2);
+    }
+    effective[depth] = declared != null && declared.isSetExplicitly() ? declared : current();
+    ++depth;
+  }
+
+  /** Leaves the innermost scope. */
+  void pop() {
+    if (depth == 0) {
+      throw new IllegalStateException("No scope to leave");
+    }
+    --depth;
+  }
+
+  /** @return effective default nullness in the innermost scope */
+  Nullness current() {
+    return depth == 0 ? Nullness.NO_EXPLICIT_CONFIG : effective[depth - 1];
+  }
+
+  int depth() {
+    return depth;
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.OpcodeStack.CustomUserValue;
+import edu.umd.cs.findbugs.OpcodeStack.Item;
+import edu.umd.cs.findbugs.ba.ClassContext;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import java.lang.invoke.MethodHandles;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Method;
+import org.jspecify.nullness.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base of detectors that track nullness of values in the operand stack. Values returned by invoked
+ * methods and values read from fields get their {@link Nullness} as the user value of the {@link
+ * Item}, and classes are skipped or replayed from the {@link NullnessFactStore} when possible.
+ */
+@CustomUserValue
+abstract class NullnessStackDetector extends OpcodeStackDetector {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final BugReporter reporter;
+  /** Bugs found in the visiting class, reported at the end of the class. */
+  private final ClassBugBuffer classBugs = new ClassBugBuffer();
+  /** Classes of invoked methods in the visiting class, whose nullness affects the result. */
+  private final Set<ClassDescriptor> dependencies = new HashSet<>();
+
+  /** Method that {@link #checkedOperands} belong to. */
+  @Nullable private Method checkedMethod;
+  /** Operands known to be non-null in the visiting method, found by {@link NullCheckAnalysis}. */
+  private long[] checkedOperands = new long[0];
+
+  NullnessStackDetector(BugReporter reporter) {
+    this.reporter = Objects.requireNonNull(reporter);
+  }
+
+  /**
+   * Tells cheaply whether this detector can report bugs in the given class, to skip it before the
+   * fact store is consulted.
+   */
+  abstract boolean isRelevant(NullnessDatabase database, XClass clazz);
+
+  /**
+   * Tells whether the opcode stack needs to be computed for the given class, that is not replayed
+   * from the fact store.
+   */
+  boolean hasTarget(NullnessDatabase database, XClass clazz) {
+    return true;
+  }
+
+  /**
+   * Tells whether the given class or a class that it refers may have methods with non-null
+   * parameters or non-null fields.
+   */
+  static boolean callsNonNullMembers(NullnessDatabase database, XClass clazz) {
+    if (database.mayHaveNonNullMembers(clazz)) {
+      return true;
+    }
+    for (ClassDescriptor called : clazz.getCalledClassDescriptors()) {
+      XClass calledClass = lookUp(called);
+      if (calledClass != null && database.mayHaveNonNullMembers(calledClass)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Nullable
+  static XClass lookUp(ClassDescriptor descriptor) {
+    try {
+      return Global.getAnalysisCache().getClassAnalysis(XClass.class, descriptor);
+    } catch (CheckedAnalysisException e) {
+      // missing classes are reported by SpotBugs itself
+      return null;
+    }
+  }
+
+  @Override
+  public void visitClassContext(ClassContext classContext) {
+    XClass clazz = classContext.getXClass();
+    NullnessDatabase database = Global.getAnalysisCache().getDatabase(NullnessDatabase.class);
+    PluginMetrics metrics = database.getMetrics();
+    long start = metrics.startTimer();
+    NullnessFactStore factStore = database.getFactStore();
+    String detector = getClass().getSimpleName();
+    if (!isRelevant(database, clazz)) {
+      metrics.countSkippedClass();
+    } else if (factStore.replay(database, clazz, detector, reporter)) {
+      metrics.countReplayedClass();
+    } else {
+      classBugs.clear();
+      dependencies.clear();
+      // lambda bodies depend on nullness of their functional interfaces
+      database
+          .findLambdaTargetsOf(clazz)
+          .values()
+          .forEach(target -> dependencies.add(target.getClassDescriptor()));
+      if (hasTarget(database, clazz)) {
+        super.visitClassContext(classContext);
+      }
+      factStore.record(database, clazz, detector, dependencies, classBugs.flush(reporter, metrics));
+    }
+    metrics.stopTimer(detector, start);
+  }
+
+  void report(BugInstance bug) {
+    classBugs.add(bug);
+  }
+
+  @Override
+  public void afterOpcode(int code) {
+    switch (code) {
+      case Const.INVOKEINTERFACE:
+      case Const.INVOKESPECIAL:
+      case Const.INVOKESTATIC:
+      case Const.INVOKEVIRTUAL:
+        XMethod methodOperand = getXMethodOperand();
+        // an inherited method is resolved in the class that declares it, not in the operand
+        dependencies.add(
+            methodOperand == null
+                ? getClassDescriptorOperand()
+                : methodOperand.getClassDescriptor());
+        NullnessDatabase database = Global.getAnalysisCache().getDatabase(NullnessDatabase.class);
+        XClass classOperand = getXClassOperand();
+        Optional<Nullness> optional =
+            database.findNullnessOf(methodOperand, Global.getAnalysisCache());
+        if (methodOperand != null && classOperand != null) {
+          Nullness element = findNullnessOfElement(database, classOperand, methodOperand);
+          if (element != null) {
+            optional = element.asOptional();
+          }
+        }
+        if (optional.isEmpty() && methodOperand != null) {
+          optional = database.findInferredNullnessOf(methodOperand.getMethodDescriptor());
+        }
+        byte[] returnTypes =
+            methodOperand == null || classOperand == null || !hasNestedTypes(methodOperand)
+                ? null
+                : database.findTypeUseOf(
+                    classOperand, methodOperand.getName(), methodOperand.getSignature());
+        super.afterOpcode(code);
+        Object value = optional.orElse(null);
+        if (returnTypes != null) {
+          String signature = methodOperand.getSignature();
+          value =
+              new TypeUseValue(
+                  optional.orElse(null),
+                  signature.substring(signature.indexOf(')') + 1),
+                  returnTypes,
+                  TypeUseNullness.lastRoot(returnTypes));
+        }
+        if (value != null) {
+          stack.getStackItem(0).setUserValue(value);
+        }
+        return;
+        // constructor has no returned value
+      case Const.GETFIELD:
+      case Const.GETSTATIC:
+      case Const.PUTFIELD:
+      case Const.PUTSTATIC:
+        XField fieldOperand = getXFieldOperand();
+        if (fieldOperand == null) {
+          super.afterOpcode(code);
+          return;
+        }
+        dependencies.add(fieldOperand.getClassDescriptor());
+        NullnessDatabase fieldDatabase =
+            Global.getAnalysisCache().getDatabase(NullnessDatabase.class);
+        Optional<Nullness> fieldNullness = fieldDatabase.findNullnessOfField(fieldOperand);
+        boolean read = code == Const.GETFIELD || code == Const.GETSTATIC;
+        XClass fieldClass =
+            read
+                    && (fieldOperand.getSourceSignature() != null
+                        || fieldOperand.getSignature().startsWith("["))
+                ? lookUp(fieldOperand.getClassDescriptor())
+                : null;
+        byte[] fieldTypes =
+            fieldClass == null
+                ? null
+                : fieldDatabase.findTypeUseOf(
+                    fieldClass, fieldOperand.getName(), fieldOperand.getSignature());
+        super.afterOpcode(code);
+        if (fieldTypes != null) {
+          stack
+              .getStackItem(0)
+              .setUserValue(
+                  new TypeUseValue(
+                      fieldNullness.orElse(null), fieldOperand.getSignature(), fieldTypes, 0));
+        } else if (read) {
+          fieldNullness.ifPresent(nullness -> stack.getStackItem(0).setUserValue(nullness));
+        }
+        return;
+      case Const.AALOAD:
+        Object array = stack.getStackDepth() > 1 ? stack.getStackItem(1).getUserValue() : null;
+        super.afterOpcode(code);
+        if (array instanceof TypeUseValue) {
+          Object component = ((TypeUseValue) array).component();
+          if (component != null) {
+            stack.getStackItem(0).setUserValue(component);
+          }
+        }
+        return;
+      default:
+        super.afterOpcode(code);
+    }
+  }
+
+  /** @return true if the generic signature of the given method may have nested types */
+  private static boolean hasNestedTypes(XMethod method) {
+    return method.getSourceSignature() != null || method.getSignature().contains(")[");
+  }
+
+  /**
+   * Finds nullness of a value that the invoked method returns as a type parameter of its class,
+   * from type arguments of the receiver, like {@code String} in {@code List<@Nullable String>}. The
+   * stack is not updated yet, so the receiver is below the arguments.
+   *
+   * @return nullness annotated on the type argument, or null if it is unknown
+   */
+  @Nullable
+  private Nullness findNullnessOfElement(
+      NullnessDatabase database, XClass classOperand, XMethod methodOperand) {
+    String sourceSignature = methodOperand.getSourceSignature();
+    int parameters = methodOperand.getNumParams();
+    if (methodOperand.isStatic()
+        || sourceSignature == null
+        || stack.getStackDepth() <= parameters) {
+      return null;
+    }
+    Object receiver = stack.getStackItem(parameters).getUserValue();
+    if (!(receiver instanceof TypeUseValue)) {
+      return null;
+    }
+    TypeUseValue value = (TypeUseValue) receiver;
+    String returnType = sourceSignature.substring(sourceSignature.lastIndexOf(')') + 1);
+    if (!returnType.startsWith("T")
+        || !value.type.equals("L" + classOperand.getClassDescriptor().getClassName() + ";")) {
+      return null;
+    }
+    String typeVariable = returnType.substring(1, returnType.length() - 1);
+    if (declaresTypeParameter(sourceSignature, typeVariable)) {
+      // the type variable of the method hides the one of the class
+      return null;
+    }
+    List<String> typeParameters = database.findTypeParametersOf(classOperand);
+    int index = typeParameters.indexOf(typeVariable);
+    if (index < 0 || TypeUseNullness.childCount(value.types, value.node) != typeParameters.size()) {
+      // raw type, or an inner type whose type arguments are mixed with the outer ones
+      return null;
+    }
+    return TypeUseNullness.typeArgument(value.types, value.node, index);
+  }
+
+  private static boolean declaresTypeParameter(String methodSignature, String name) {
+    if (!methodSignature.startsWith("<")) {
+      return false;
+    }
+    String typeParameters = methodSignature.substring(0, methodSignature.indexOf('('));
+    return typeParameters.startsWith("<" + name + ":") || typeParameters.contains(";" + name + ":");
+  }
+
+  /** @return true if the given value is null or may be null */
+  static boolean canBeNull(Item item) {
+    Object value = item.getUserValue();
+    Nullness nullness =
+        value instanceof TypeUseValue ? ((TypeUseValue) value).nullness : (Nullness) value;
+    return item.isNull() || (nullness != null && nullness.canBeNull());
+  }
+
+  /**
+   * Tells whether an operand of the current instruction is checked to be non-null on every path
+   * that reaches it. The dataflow analysis runs once per method, and only when a detector is about
+   * to report a bug in it, so methods without suspicious values do not pay for it.
+   *
+   * @param operand index of the argument of invocations, or 0 for the value that {@code ARETURN},
+   *     {@code PUTFIELD} and {@code PUTSTATIC} take
+   */
+  boolean isCheckedNonNull(int operand) {
+    Method method = getMethod();
+    if (checkedMethod != method) {
+      checkedMethod = method;
+      checkedOperands = NullCheckAnalysis.findCheckedOperands(getClassContext(), method);
+    }
+    int pc = getPC();
+    return operand < Long.SIZE
+        && pc < checkedOperands.length
+        && (checkedOperands[pc] & (1L << operand)) != 0;
+  }
+
+  /**
+   * User value of a value whose type has annotated type arguments or array components, to resolve
+   * nullness of elements taken out of it.
+   */
+  static final class TypeUseValue {
+    /** Nullness of the value itself, or null if it is unknown. */
+    @Nullable final Nullness nullness;
+    /** Erased descriptor of the type of the value. */
+    final String type;
+    /** {@link TypeUseNullness} of the member that the value comes from. */
+    final byte[] types;
+    /** Index of the type of the value in {@link #types}. */
+    final int node;
+
+    TypeUseValue(@Nullable Nullness nullness, String type, byte[] types, int node) {
+      this.nullness = nullness;
+      this.type = type;
+      this.types = types;
+      this.node = node;
+    }
+
+    /**
+     * @return user value of a component of this array, or null if this is not an array or its
+     *     component is not annotated
+     */
+    @Nullable
+    Object component() {
+      int component = type.startsWith("[") ? TypeUseNullness.child(types, node, 0) : -1;
+      if (component < 0) {
+        return null;
+      }
+      Nullness componentNullness = TypeUseNullness.nullnessAt(types, component);
+      if (TypeUseNullness.childCount(types, component) > 0) {
+        return new TypeUseValue(componentNullness, type.substring(1), types, component);
+      }
+      return componentNullness;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (!(obj instanceof TypeUseValue)) {
+        return false;
+      }
+      TypeUseValue other = (TypeUseValue) obj;
+      // arrays are shared from the cache, so values of the same member have the same array
+      return nullness == other.nullness
+          && type.equals(other.type)
+          && types == other.types
+          && node == other.node;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(nullness, type, System.identityHashCode(types), node);
+    }
+  }
+
+  @Override
+  public void report() {
+    super.report();
+    NullnessDatabase database = Global.getAnalysisCache().getDatabase(NullnessDatabase.class);
+    log.debug("{}", database);
+    database.finishAnalysis();
+  }
+}
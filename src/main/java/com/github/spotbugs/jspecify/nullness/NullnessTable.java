@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+
+/**
+ * Nullness of fields or methods keyed by their identifier in {@link SymbolTable}, in an open
+ * addressing table that keeps one {@code int} key and one {@code byte} per member instead of a
+ * boxed entry. Field accesses are far more frequent than method invocations in data classes, so
+ * lookups do not take a lock: they read the table optimistically, and retry with the read lock only
+ * when a writer modified the table meanwhile.
+ */
+@NullMarked
+final class NullnessTable {
+  private static final int INITIAL_CAPACITY = 1024;
+  /** Key and value of empty slots. Other values are the ordinal of {@link Nullness} plus one. */
+  private static final byte ABSENT = 0;
+
+  private static final Nullness[] NULLNESS = Nullness.values();
+
+  private final StampedLock lock = new StampedLock();
+  /** Slots of the table, replaced by a larger one when it is half full. */
+  private Slots slots = new Slots(INITIAL_CAPACITY);
+
+  private int size;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /** @return nullness of the given member, or null if it is not in this table */
+  @Nullable
+  Nullness get(int member) {
+    long stamp = lock.tryOptimisticRead();
+    byte value = slots.find(member);
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        value = slots.find(member);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return value == ABSENT ? null : NULLNESS[value - 1];
+  }
+
+  /**
+   * Returns nullness of the given member, or resolves and stores it. Like {@link IntCache}, the
+   * function is invoked without holding any lock, and the first stored value wins.
+   */
+  Nullness get(int member, IntFunction<Nullness> function) {
+    Nullness nullness = get(member);
+    if (nullness != null) {
+      hits.increment();
+      return nullness;
+    }
+    misses.increment();
+    return put(member, function.apply(member), false);
+  }
+
+  /** Stores nullness of the given member, replacing the stored one. */
+  void put(int member, Nullness nullness) {
+    put(member, nullness, true);
+  }
+
+  private Nullness put(int member, Nullness nullness, boolean replace) {
+    if (member == ABSENT) {
+      throw new IllegalArgumentException("Member should be an identifier of symbol");
+    }
+    long stamp = lock.writeLock();
+    try {
+      int index = slots.indexOf(member);
+      if (slots.keys[index] != ABSENT) {
+        if (!replace) {
+          return NULLNESS[slots.values[index] - 1];
+        }
+      } else if (++size * 2 > slots.keys.length) {
+        slots = slots.grow();
+        index = slots.indexOf(member);
+      }
+      // readers may see the key before the value, but then the stamp tells them to retry
+      slots.values[index] = (byte) (nullness.ordinal() + 1);
+      slots.keys[index] = member;
+      return nullness;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /** Removes all the entries. Counts of hits and misses are kept. */
+  void clear() {
+    long stamp = lock.writeLock();
+    try {
+      slots = new Slots(INITIAL_CAPACITY);
+      size = 0;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  int size() {
+    long stamp = lock.readLock();
+    try {
+      return size;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  long hitCount() {
+    return hits.sum();
+  }
+
+  long missCount() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("size=%d, hits=%d, misses=%d", size(), hits.sum(), misses.sum());
+  }
+
+  /** Keys and values of the same capacity, which is a power of two. */
+  private static final class Slots {
+    final int[] keys;
+    final byte[] values;
+
+    Slots(int capacity) {
+      keys = new int[capacity];
+      values = new byte[capacity];
+    }
+
+    /** @return the stored value, or {@link #ABSENT} if the member is not in the slots */
+    byte find(int member) {
+      int mask = keys.length - 1;
+      int index = hash(member) & mask;
+      // at most half of slots are used, so an empty slot is always found
+      for (int probe = 0; probe <= mask; ++probe) {
+        int key = keys[index];
+        if (key == ABSENT) {
+          return ABSENT;
+        }
+        if (key == member) {
+          return values[index];
+        }
+        index = (index + 1) & mask;
+      }
+      return ABSENT;
+    }
+
+    /** @return index of the slot that has the given member, or of the empty slot to store it */
+    int indexOf(int member) {
+      int mask = keys.length - 1;
+      int index = hash(member) & mask;
+      while (keys[index] != ABSENT && keys[index] != member) {
+        index = (index + 1) & mask;
+      }
+      return index;
+    }
+
+    Slots grow() {
+      Slots grown = new Slots(keys.length * 2);
+      for (int i = 0; i < keys.length; ++i) {
+        int key = keys[i];
+        if (key != ABSENT) {
+          int index = grown.indexOf(key);
+          grown.keys[index] = key;
+          grown.values[index] = values[i];
+        }
+      }
+      return grown;
+    }
+
+    /** Identifiers are sequential, so they are spread over the slots by Fibonacci hashing. */
+    private static int hash(int member) {
+      int hash = member * 0x9E3779B9;
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
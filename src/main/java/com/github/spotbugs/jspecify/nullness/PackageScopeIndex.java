@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.ICodeBase;
+import edu.umd.cs.findbugs.classfile.ICodeBaseEntry;
+import edu.umd.cs.findbugs.classfile.ResourceNotFoundException;
+import edu.umd.cs.findbugs.classfile.engine.asm.FindBugsASM;
+import edu.umd.cs.findbugs.internalAnnotations.SlashedClassName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default nullness of packages, resolved from {@code package-info.class} and {@code
+ * module-info.class}. Packages in the application are indexed in one pass over the classpath when
+ * analysis starts, so resolving them is a map lookup. Packages in the auxiliary classpath are
+ * resolved at their first lookup, by probing each auxiliary code base for {@code package-info}.
+ * {@code module-info.class} of each auxiliary code base is read once when the index is built, and a
+ * package without {@code package-info} gets the default of the module that contains its class,
+ * found through the code base of the class entry.
+ *
+ * <p>Instances are thread-safe. The application packages are an immutable snapshot, and auxiliary
+ * packages are cached in a concurrent map without holding its lock while reading class files.
+ */
+@NullMarked
+final class PackageScopeIndex {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  static final PackageScopeIndex EMPTY =
+      new PackageScopeIndex(Map.of(), Map.of(), new IdentityHashMap<>(), null);
+
+  private static final String PACKAGE_INFO = "package-info.class";
+  private static final String MODULE_INFO = "module-info.class";
+  private static final String DEFAULT_NON_NULL_DESCRIPTOR =
+      "L" + NullnessDatabase.DEFAULT_NON_NULL + ";";
+
+  private final Map<String, Nullness> applicationPackages;
+  /** Default nullness of modules that contain application packages, if it is set explicitly. */
+  private final Map<String, Nullness> applicationModules;
+
+  /**
+   * Default nullness of modules in the auxiliary classpath keyed by their code base, if it is set
+   * explicitly. Not modified after the index is built.
+   */
+  private final IdentityHashMap<ICodeBase, Nullness> auxiliaryModules;
+
+  @Nullable private final IClassPath classPath;
+  private final ConcurrentHashMap<String, Nullness> auxiliaryPackages = new ConcurrentHashMap<>();
+
+  private PackageScopeIndex(
+      Map<String, Nullness> applicationPackages,
+      Map<String, Nullness> applicationModules,
+      IdentityHashMap<ICodeBase, Nullness> auxiliaryModules,
+      @Nullable IClassPath classPath) {
+    this.applicationPackages = applicationPackages;
+    this.applicationModules = applicationModules;
+    this.auxiliaryModules = auxiliaryModules;
+    this.classPath = classPath;
+  }
+
+  /** Builds the index by scanning resources in the application code bases once. */
+  static PackageScopeIndex build(IClassPath classPath) {
+    Map<ICodeBase, Nullness> modules = new IdentityHashMap<>();
+    Map<String, ICodeBase> packages = new HashMap<>();
+    Map<String, Nullness> packageInfos = new HashMap<>();
+    for (Map.Entry<String, ICodeBaseEntry> entry :
+        classPath.getApplicationCodebaseEntries().entrySet()) {
+      String resourceName = entry.getKey();
+      if (!resourceName.endsWith(".class")) {
+        continue;
+      }
+      ICodeBaseEntry codeBaseEntry = entry.getValue();
+      if (isModuleInfo(resourceName)) {
+        modules.put(codeBaseEntry.getCodeBase(), readDefaultNullness(codeBaseEntry));
+        continue;
+      }
+      String packageName = packageNameOf(resourceName);
+      packages.putIfAbsent(packageName, codeBaseEntry.getCodeBase());
+      if (resourceName.endsWith("/" + PACKAGE_INFO)) {
+        packageInfos.put(packageName, readDefaultNullness(codeBaseEntry));
+      }
+    }
+
+    Map<String, Nullness> result = new HashMap<>();
+    Map<String, Nullness> moduleResult = new HashMap<>();
+    packages.forEach(
+        (packageName, codeBase) -> {
+          Nullness moduleNullness = modules.getOrDefault(codeBase, Nullness.NO_EXPLICIT_CONFIG);
+          if (moduleNullness.isSetExplicitly()) {
+            moduleResult.put(packageName, moduleNullness);
+          }
+          Nullness nullness = packageInfos.getOrDefault(packageName, Nullness.NO_EXPLICIT_CONFIG);
+          result.put(packageName, nullness.isSetExplicitly() ? nullness : moduleNullness);
+        });
+    log.debug("Indexed default nullness of {} packages in the application", result.size());
+    IdentityHashMap<ICodeBase, Nullness> auxiliaryModules = readAuxiliaryModules(classPath);
+    log.debug("Found {} auxiliary modules with default nullness", auxiliaryModules.size());
+    return new PackageScopeIndex(
+        Map.copyOf(result), Map.copyOf(moduleResult), auxiliaryModules, classPath);
+  }
+
+  /** Reads {@code module-info.class} of each auxiliary code base once. */
+  private static IdentityHashMap<ICodeBase, Nullness> readAuxiliaryModules(IClassPath classPath) {
+    IdentityHashMap<ICodeBase, Nullness> modules = new IdentityHashMap<>();
+    Iterator<? extends ICodeBase> iterator = classPath.auxCodeBaseIterator();
+    while (iterator.hasNext()) {
+      ICodeBase codeBase = iterator.next();
+      ICodeBaseEntry entry = lookupModuleInfo(codeBase);
+      if (entry != null) {
+        Nullness nullness = readDefaultNullness(entry);
+        if (nullness.isSetExplicitly()) {
+          modules.put(codeBase, nullness);
+        }
+      }
+    }
+    return modules;
+  }
+
+  /** @return {@code module-info.class} of the code base, or null if it is not a module */
+  @Nullable
+  private static ICodeBaseEntry lookupModuleInfo(ICodeBase codeBase) {
+    ICodeBaseEntry entry = codeBase.lookupResource(MODULE_INFO);
+    // a multi-release JAR can have the module descriptor only in a versioned directory
+    for (int version = 9; entry == null && version <= Runtime.version().feature(); ++version) {
+      entry = codeBase.lookupResource("META-INF/versions/" + version + "/" + MODULE_INFO);
+    }
+    return entry;
+  }
+
+  /**
+   * @return default nullness of the package of the given class, or of the module if the package
+   *     does not set it, or empty if it is not set explicitly
+   */
+  Optional<Nullness> find(ClassDescriptor clazz) {
+    @SlashedClassName String className = clazz.getClassName();
+    String packageName = packageNameOf(className);
+    Nullness nullness = applicationPackages.get(packageName);
+    if (nullness == null) {
+      nullness = auxiliaryPackages.get(packageName);
+    }
+    if (nullness == null) {
+      // two threads may probe the same package concurrently, and they get the same answer
+      Nullness found = findInAuxiliaryClassPath(packageName, className);
+      Nullness previous = auxiliaryPackages.putIfAbsent(packageName, found);
+      nullness = previous == null ? found : previous;
+    }
+    return nullness.isSetExplicitly() ? nullness.asOptional() : Optional.empty();
+  }
+
+  /**
+   * @return default nullness of the module that contains the given class, or empty if it is not set
+   *     explicitly
+   */
+  Optional<Nullness> findModuleDefault(ClassDescriptor clazz) {
+    Nullness nullness = applicationModules.get(packageNameOf(clazz.getClassName()));
+    if (nullness == null) {
+      nullness = findAuxiliaryModuleOf(clazz.getClassName());
+    }
+    return nullness.isSetExplicitly() ? nullness.asOptional() : Optional.empty();
+  }
+
+  /**
+   * Finds the module of a class in the auxiliary classpath. The classpath caches the entry of each
+   * class that SpotBugs has read, so this is a map lookup for classes under analysis.
+   */
+  private Nullness findAuxiliaryModuleOf(@SlashedClassName String className) {
+    if (classPath == null || auxiliaryModules.isEmpty()) {
+      return Nullness.NO_EXPLICIT_CONFIG;
+    }
+    try {
+      ICodeBase codeBase = classPath.lookupResource(className + ".class").getCodeBase();
+      return auxiliaryModules.getOrDefault(codeBase, Nullness.NO_EXPLICIT_CONFIG);
+    } catch (ResourceNotFoundException e) {
+      // missing classes are reported by SpotBugs itself
+      return Nullness.NO_EXPLICIT_CONFIG;
+    }
+  }
+
+  int size() {
+    return applicationPackages.size() + auxiliaryPackages.size();
+  }
+
+  private Nullness findInAuxiliaryClassPath(
+      @SlashedClassName String packageName, @SlashedClassName String className) {
+    if (classPath == null) {
+      return Nullness.NO_EXPLICIT_CONFIG;
+    }
+    String resourceName = packageName.isEmpty() ? PACKAGE_INFO : packageName + "/" + PACKAGE_INFO;
+    Iterator<? extends ICodeBase> iterator = classPath.auxCodeBaseIterator();
+    while (iterator.hasNext()) {
+      // ICodeBase#lookupResource() returns null instead of throwing exception
+      ICodeBaseEntry entry = iterator.next().lookupResource(resourceName);
+      if (entry != null) {
+        Nullness nullness = readDefaultNullness(entry);
+        if (nullness.isSetExplicitly()) {
+          return nullness;
+        }
+        break;
+      }
+    }
+    // packages are not split across modules, so one class tells the module of its package
+    return findAuxiliaryModuleOf(className);
+  }
+
+  private static boolean isModuleInfo(String resourceName) {
+    return resourceName.equals(MODULE_INFO)
+        || (resourceName.startsWith("META-INF/versions/")
+            && resourceName.endsWith("/" + MODULE_INFO));
+  }
+
+  @SlashedClassName
+  private static String packageNameOf(String resourceName) {
+    int index = resourceName.lastIndexOf('/');
+    return index < 0 ? "" : resourceName.substring(0, index);
+  }
+
+  /** Reads annotations on the given {@code package-info.class} or {@code module-info.class}. */
+  private static Nullness readDefaultNullness(ICodeBaseEntry entry) {
+    ScopeAnnotationVisitor visitor = new ScopeAnnotationVisitor();
+    try (InputStream input = entry.openResource()) {
+      new ClassReader(input)
+          .accept(
+              visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Failed to read annotations in {}", entry, e);
+    }
+    return visitor.nullness;
+  }
+
+  private static final class ScopeAnnotationVisitor extends ClassVisitor {
+    Nullness nullness = Nullness.NO_EXPLICIT_CONFIG;
+
+    ScopeAnnotationVisitor() {
+      super(FindBugsASM.ASM_VERSION);
+    }
+
+    @Override
+    @Nullable
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+      if (DEFAULT_NON_NULL_DESCRIPTOR.equals(descriptor)) {
+        nullness = Nullness.NOT_NULL;
+      } else {
+        Nullness.from(descriptor).ifPresent(found -> nullness = found);
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.util.Arrays;
+import org.jspecify.nullness.NullMarked;
+
+/**
+ * Bitmaps of non-null parameters, where the bit {@code i % 64} of the word {@code i / 64} is set if
+ * the parameter {@code i} is non-null. Most methods have a few parameters, so bitmaps of one word
+ * with small values are shared instances, and the memory per method stays flat. Bitmaps are never
+ * modified once returned.
+ */
+@NullMarked
+final class ParameterBitmap {
+  /** Bitmap of methods that have no non-null parameter. */
+  static final long[] NONE = new long[0];
+
+  /** Shared bitmaps of methods whose non-null parameters are in the first eight ones. */
+  private static final long[][] SMALL = new long[256][];
+
+  static {
+    SMALL[0] = NONE;
+    for (int i = 1; i < SMALL.length; ++i) {
+      SMALL[i] = new long[] {i};
+    }
+  }
+
+  private ParameterBitmap() {}
+
+  /** @return true if the given parameter is non-null */
+  static boolean isSet(long[] bitmap, int parameter) {
+    int word = parameter >>> 6;
+    return word < bitmap.length && (bitmap[word] & (1L << parameter)) != 0;
+  }
+
+  /**
+   * @param nonNull whether each parameter is non-null
+   * @return bitmap of the given flags
+   */
+  static long[] of(boolean[] nonNull) {
+    long[] words = new long[(nonNull.length + 63) >>> 6];
+    int length = 0;
+    for (int i = 0; i < nonNull.length; ++i) {
+      if (nonNull[i]) {
+        words[i >>> 6] |= 1L << i;
+        length = (i >>> 6) + 1;
+      }
+    }
+    if (length == 0) {
+      return NONE;
+    }
+    if (length == 1 && words[0] >= 0 && words[0] < SMALL.length) {
+      return SMALL[(int) words[0]];
+    }
+    return Arrays.copyOf(words, length);
+  }
+}
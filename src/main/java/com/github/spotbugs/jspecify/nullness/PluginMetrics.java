@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.SystemProperties;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters of the plugin's hot paths in one analysis. Counters are {@link LongAdder}, so updating
+ * them does not contend between analysis threads. Detectors are timed only when the output file is
+ * set by the {@link #PROPERTY_OUTPUT} system property.
+ */
+@NullMarked
+final class PluginMetrics {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Set this system property to a file path to write metrics at the end of analysis. The file is
+   * written in CSV if its name ends with {@code .csv}, or in JSON otherwise.
+   */
+  static final String PROPERTY_OUTPUT = "spotbugs.jspecify.metrics";
+
+  @Nullable private final Path output;
+  private final ConcurrentHashMap<String, LongAdder> detectorNanos = new ConcurrentHashMap<>();
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder packageInfoMisses = new LongAdder();
+  private final LongAdder missingClasses = new LongAdder();
+  private final LongAdder replayedClasses = new LongAdder();
+  private final LongAdder skippedClasses = new LongAdder();
+  private final LongAdder duplicateBugs = new LongAdder();
+
+  PluginMetrics(@Nullable Path output) {
+    this.output = output;
+  }
+
+  static PluginMetrics fromSystemProperty() {
+    String value = SystemProperties.getProperty(PROPERTY_OUTPUT);
+    return new PluginMetrics(value == null || value.isEmpty() ? null : Paths.get(value));
+  }
+
+  /** @return the start time to pass to {@link #stopTimer}, or 0 if metrics are disabled */
+  long startTimer() {
+    return output == null ? 0L : System.nanoTime();
+  }
+
+  void stopTimer(String detector, long start) {
+    if (output != null) {
+      detectorNanos
+          .computeIfAbsent(detector, key -> new LongAdder())
+          .add(System.nanoTime() - start);
+    }
+  }
+
+  void countLookup() {
+    lookups.increment();
+  }
+
+  void countPackageInfoMiss() {
+    packageInfoMisses.increment();
+  }
+
+  void countMissingClass() {
+    missingClasses.increment();
+  }
+
+  void countReplayedClass() {
+    replayedClasses.increment();
+  }
+
+  void countSkippedClass() {
+    skippedClasses.increment();
+  }
+
+  void countDuplicateBugs(int count) {
+    duplicateBugs.add(count);
+  }
+
+  /** @return current value of counters, followed by the given ones */
+  Map<String, Long> snapshot(Map<String, Long> additional) {
+    Map<String, Long> result = new LinkedHashMap<>();
+    result.put("lookups", lookups.sum());
+    result.put("packageInfoMisses", packageInfoMisses.sum());
+    result.put("missingClasses", missingClasses.sum());
+    result.put("replayedClasses", replayedClasses.sum());
+    result.put("skippedClasses", skippedClasses.sum());
+    result.put("duplicateBugs", duplicateBugs.sum());
+    result.putAll(additional);
+    new TreeMap<>(detectorNanos)
+        .forEach((detector, nanos) -> result.put("nanos." + detector, nanos.sum()));
+    return result;
+  }
+
+  /**
+   * Writes the snapshot to the output file, overwriting the previous one. Each detector calls this
+   * at the end of its pass, so the file reflects the last finished detector.
+   */
+  synchronized void write(Map<String, Long> additional) {
+    if (output == null) {
+      return;
+    }
+    Map<String, Long> snapshot = snapshot(additional);
+    String text = output.toString().endsWith(".csv") ? toCsv(snapshot) : toJson(snapshot);
+    try {
+      Files.write(output, text.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      log.warn("Failed to write metrics to {}", output, e);
+    }
+  }
+
+  static String toJson(Map<String, Long> metrics) {
+    StringBuilder builder = new StringBuilder("{");
+    metrics.forEach(
+        (key, value) -> {
+          if (builder.length() > 1) {
+            builder.append(',');
+          }
+          builder.append("\n  \"").append(key).append("\": ").append(value);
+        });
+    return builder.append("\n}\n").toString();
+  }
+
+  static String toCsv(Map<String, Long> metrics) {
+    StringBuilder builder = new StringBuilder("metric,value\n");
+    metrics.forEach((key, value) -> builder.append(key).append(',').append(value).append('\n'));
+    return builder.toString();
+  }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.Detector2;
+import edu.umd.cs.findbugs.asm.FBClassReader;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XField;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Infers nullness of values returned by unannotated methods in the application, and stores it in
+ * {@link NullnessDatabase} at the end of the pass. This detector reports nothing, and runs in an
+ * earlier pass than {@link ReturnUnexpectedNullDetector} that refers the inferred nullness.
+ *
+ * <p>Only methods that cannot be overridden are inferred: static, private and final methods, and
+ * methods in final classes. Otherwise an overriding method could return another value at runtime.
+ *
+ * <p>Methods of classes that may refer nullness are inferred when their class is visited. Other
+ * classes are not parsed when visited: only the methods that the former classes call, directly or
+ * through inferred methods, are inferred at the end of the pass, because nullness of other methods
+ * is never looked up.
+ *
+ * <p>SpotBugs visits classes and finishes the pass on one thread for each detector instance, so the
+ * state collected during the pass is kept in plain collections.
+ */
+@NullMarked
+public class ReturnNullnessInferenceDetector implements Detector2 {
+  private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int NOT_OVERRIDABLE =
+      Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL;
+
+  private final BugReporter reporter;
+  private final Map<MethodDescriptor, ReturnSummaries.MethodFacts> graph = new HashMap<>();
+  /** Visited classes that do not refer nullness, whose methods are inferred only if called. */
+  private final Set<ClassDescriptor> deferredClasses = new HashSet<>();
+  /** Methods called from inferred classes, to infer at the end of the pass. */
+  private final Set<MethodDescriptor> calledMethods = new LinkedHashSet<>();
+  @Nullable private NullnessDatabase database;
+
+  public ReturnNullnessInferenceDetector(BugReporter reporter) {
+    this.reporter = Objects.requireNonNull(reporter);
+  }
+
+  @Override
+  public void visitClass(ClassDescriptor classDescriptor) throws CheckedAnalysisException {
+    IAnalysisCache analysisCache = Global.getAnalysisCache();
+    NullnessDatabase database = analysisCache.getDatabase(NullnessDatabase.class);
+    this.database = database;
+    PluginMetrics metrics = database.getMetrics();
+    long start = metrics.startTimer();
+    try {
+      final XClass clazz;
+      try {
+        clazz = analysisCache.getClassAnalysis(XClass.class, classDescriptor);
+      } catch (CheckedAnalysisException e) {
+        metrics.countMissingClass();
+        reporter.reportMissingClass(classDescriptor);
+        return;
+      }
+      if (!database.mayReferNullness(clazz)) {
+        metrics.countSkippedClass();
+        deferredClasses.add(classDescriptor);
+        return;
+      }
+      ClassNode classNode = readClass(classDescriptor, analysisCache);
+      for (MethodNode method : classNode.methods) {
+        addCalledMethods(method);
+        infer(database, clazz, method, analysisCache);
+      }
+    } finally {
+      metrics.stopTimer(getDetectorClassName(), start);
+    }
+  }
+
+  private static ClassNode readClass(ClassDescriptor classDescriptor, IAnalysisCache analysisCache)
+      throws CheckedAnalysisException {
+    ClassNode classNode = new ClassNode();
+    analysisCache
+        .getClassAnalysis(FBClassReader.class, classDescriptor)
+        .accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return classNode;
+  }
+
+  /** Adds methods that the given method calls and that return a reference. */
+  private void addCalledMethods(MethodNode method) {
+    for (AbstractInsnNode insn : method.instructions) {
+      if (insn instanceof MethodInsnNode) {
+        MethodInsnNode call = (MethodInsnNode) insn;
+        int sort = Type.getReturnType(call.desc).getSort();
+        if ((sort == Type.OBJECT || sort == Type.ARRAY) && !call.owner.startsWith("[")) {
+          calledMethods.add(
+              DescriptorFactory.instance()
+                  .getMethodDescriptor(
+                      call.owner, call.name, call.desc, call.getOpcode() == Opcodes.INVOKESTATIC));
+        }
+      }
+    }
+  }
+
+  /** Collects facts of the given method to {@link #graph}, if its nullness can be inferred. */
+  private void infer(
+      NullnessDatabase database, XClass clazz, MethodNode method, IAnalysisCache analysisCache) {
+    if (!isTarget(method, clazz.isFinal())) {
+      return;
+    }
+    boolean isStatic = (method.access & Opcodes.ACC_STATIC) != 0;
+    XMethod xmethod = clazz.findMethod(method.name, method.desc, isStatic);
+    if (xmethod != null && database.findNullnessOf(xmethod, analysisCache).isEmpty()) {
+      collect(clazz.getClassDescriptor().getClassName(), method, analysisCache)
+          .ifPresent(
+              facts -> {
+                graph.put(xmethod.getMethodDescriptor(), facts);
+                calledMethods.addAll(facts.callees);
+              });
+    }
+  }
+
+  /**
+   * Infers methods of deferred classes that inferred classes call. Inferring them can add more
+   * called methods, so this repeats until no method is added.
+   */
+  private void inferCalledMethods(NullnessDatabase database, IAnalysisCache analysisCache) {
+    Map<ClassDescriptor, ClassNode> classNodes = new HashMap<>();
+    Set<MethodDescriptor> done = new HashSet<>();
+    while (!calledMethods.isEmpty()) {
+      Iterator<MethodDescriptor> iterator = calledMethods.iterator();
+      MethodDescriptor called = iterator.next();
+      iterator.remove();
+      ClassDescriptor owner = called.getClassDescriptor();
+      if (!done.add(called) || !deferredClasses.contains(owner)) {
+        continue;
+      }
+      try {
+        XClass clazz = analysisCache.getClassAnalysis(XClass.class, owner);
+        ClassNode classNode = classNodes.get(owner);
+        if (classNode == null) {
+          classNode = readClass(owner, analysisCache);
+          classNodes.put(owner, classNode);
+        }
+        for (MethodNode method : classNode.methods) {
+          if (method.name.equals(called.getName()) && method.desc.equals(called.getSignature())) {
+            infer(database, clazz, method, analysisCache);
+          }
+        }
+      } catch (CheckedAnalysisException e) {
+        // visited classes are in the classpath, so this does not happen
+        log.debug("Failed to read {}", owner, e);
+      }
+    }
+  }
+
+  @Override
+  public void finishPass() {
+    if (database == null) {
+      return;
+    }
+    long start = System.nanoTime();
+    inferCalledMethods(database, Global.getAnalysisCache());
+    Map<MethodDescriptor, Nullness> inferred =
+        ReturnSummaries.solve(graph, ForkJoinPool.commonPool());
+    database.addInferredNullness(inferred);
+    log.debug(
+        "Inferred returned nullness of {} in {} methods in {} ms",
+        inferred.size(),
+        graph.size(),
+        (System.nanoTime() - start) / 1_000_000);
+    graph.clear();
+    deferredClasses.clear();
+    calledMethods.clear();
+  }
+
+  @Override
+  public String getDetectorClassName() {
+    return getClass().getName();
+  }
+
+  private static boolean isTarget(MethodNode method, boolean isFinalClass) {
+    if ((method.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0
+        || method.name.startsWith("<")) {
+      return false;
+    }
+    int sort = Type.getReturnType(method.desc).getSort();
+    if (sort != Type.OBJECT && sort != Type.ARRAY) {
+      return false;
+    }
+    return isFinalClass || (method.access & NOT_OVERRIDABLE) != 0;
+  }
+
+  /** @return returned values of the given method, or empty if its bytecode cannot be analysed */
+  private Optional<ReturnSummaries.MethodFacts> collect(
+      String owner, MethodNode method, IAnalysisCache analysisCache) {
+    Frame<SourceValue>[] frames;
+    try {
+      frames = new Analyzer<>(new SourceInterpreter()).analyze(owner, method);
+    } catch (AnalyzerException e) {
+      log.debug("Failed to analyse {}.{}{}", owner, method.name, method.desc, e);
+      return Optional.empty();
+    }
+    ReturnedValues values = new ReturnedValues(method, frames, analysisCache);
+    for (AbstractInsnNode insn : method.instructions) {
+      if (insn.getOpcode() == Opcodes.ARETURN) {
+        values.addStackTop(insn);
+      }
+    }
+    return Optional.of(new ReturnSummaries.MethodFacts(values.state, values.callees));
+  }
+
+  /**
+   * Traces the instructions that produce returned values. Copies like {@code DUP}, {@code
+   * CHECKCAST} and local variables are followed to their source.
+   */
+  private final class ReturnedValues {
+    private final MethodNode method;
+    private final Frame<SourceValue>[] frames;
+    private final IAnalysisCache analysisCache;
+    /** Number of local variable slots used by {@code this} and parameters. */
+    private final int parameterSlots;
+
+    private final Set<AbstractInsnNode> visited = new HashSet<>();
+    int state = ReturnSummaries.NON_NULL;
+    final Set<MethodDescriptor> callees = new LinkedHashSet<>();
+
+    ReturnedValues(MethodNode method, Frame<SourceValue>[] frames, IAnalysisCache analysisCache) {
+      this.method = method;
+      this.frames = frames;
+      this.analysisCache = analysisCache;
+      int argumentsSize = Type.getArgumentsAndReturnSizes(method.desc) >> 2;
+      // the size includes the implicit this parameter
+      this.parameterSlots =
+          (method.access & Opcodes.ACC_STATIC) != 0 ? argumentsSize - 1 : argumentsSize;
+    }
+
+    private void join(int value) {
+      state = Math.max(state, value);
+    }
+
+    /** Adds sources of the value on top of the operand stack, just before the instruction. */
+    void addStackTop(AbstractInsnNode insn) {
+      Frame<SourceValue> frame = frames[method.instructions.indexOf(insn)];
+      if (frame == null) {
+        // unreachable code
+        return;
+      }
+      addSources(frame.getStack(frame.getStackSize() - 1));
+    }
+
+    private void addSources(SourceValue value) {
+      if (value.insns.isEmpty()) {
+        // values that no instruction produces, like caught exceptions
+        join(ReturnSummaries.UNKNOWN);
+      }
+      for (AbstractInsnNode source : value.insns) {
+        add(source);
+      }
+    }
+
+    private void add(AbstractInsnNode insn) {
+      if (!visited.add(insn)) {
+        return;
+      }
+      switch (insn.getOpcode()) {
+        case Opcodes.ACONST_NULL:
+          join(ReturnSummaries.NULLABLE);
+          return;
+        case Opcodes.LDC:
+        case Opcodes.NEW:
+        case Opcodes.NEWARRAY:
+        case Opcodes.ANEWARRAY:
+        case Opcodes.MULTIANEWARRAY:
+        case Opcodes.INVOKEDYNAMIC:
+          return;
+        case Opcodes.DUP:
+        case Opcodes.CHECKCAST:
+        case Opcodes.ASTORE:
+          addStackTop(insn);
+          return;
+        case Opcodes.ALOAD:
+          addLocal(insn);
+          return;
+        case Opcodes.INVOKEVIRTUAL:
+        case Opcodes.INVOKESPECIAL:
+        case Opcodes.INVOKESTATIC:
+        case Opcodes.INVOKEINTERFACE:
+          addCallee((MethodInsnNode) insn);
+          return;
+        case Opcodes.GETFIELD:
+        case Opcodes.GETSTATIC:
+          addField((FieldInsnNode) insn);
+          return;
+        default:
+          // array elements and so on
+          join(ReturnSummaries.UNKNOWN);
+      }
+    }
+
+    private void addLocal(AbstractInsnNode insn) {
+      int var = ((VarInsnNode) insn).var;
+      boolean isStatic = (method.access & Opcodes.ACC_STATIC) != 0;
+      if (var == 0 && !isStatic) {
+        // this
+        return;
+      }
+      if (var < parameterSlots) {
+        // SourceValue does not tell that the parameter reaches here, if it gets reassigned
+        join(ReturnSummaries.UNKNOWN);
+      }
+      Frame<SourceValue> frame = frames[method.instructions.indexOf(insn)];
+      if (frame != null) {
+        addSources(frame.getLocal(var));
+      }
+    }
+
+    private void addField(FieldInsnNode insn) {
+      XClass clazz;
+      try {
+        clazz =
+            analysisCache.getClassAnalysis(
+                XClass.class, DescriptorFactory.createClassDescriptor(insn.owner));
+      } catch (CheckedAnalysisException e) {
+        join(ReturnSummaries.UNKNOWN);
+        return;
+      }
+      XField field = clazz.findField(insn.name, insn.desc, insn.getOpcode() == Opcodes.GETSTATIC);
+      if (field == null) {
+        // inherited fields are not resolved
+        join(ReturnSummaries.UNKNOWN);
+        return;
+      }
+      join(
+          Objects.requireNonNull(database)
+              .findNullnessOfField(field)
+              .map(this::toState)
+              .orElse(ReturnSummaries.UNKNOWN));
+    }
+
+    private void addCallee(MethodInsnNode insn) {
+      if (insn.owner.startsWith("[")) {
+        // methods of arrays like clone()
+        join(ReturnSummaries.UNKNOWN);
+        return;
+      }
+      boolean isStatic = insn.getOpcode() == Opcodes.INVOKESTATIC;
+      XClass clazz;
+      try {
+        clazz =
+            analysisCache.getClassAnalysis(
+                XClass.class, DescriptorFactory.createClassDescriptor(insn.owner));
+      } catch (CheckedAnalysisException e) {
+        join(ReturnSummaries.UNKNOWN);
+        return;
+      }
+      XMethod callee = clazz.findMethod(insn.name, insn.desc, isStatic);
+      if (callee == null) {
+        // inherited methods are not resolved
+        join(ReturnSummaries.UNKNOWN);
+        return;
+      }
+      Optional<Nullness> declared =
+          Objects.requireNonNull(database).findNullnessOf(callee, analysisCache);
+      if (declared.isPresent()) {
+        join(toState(declared.get()));
+      } else if (clazz.isFinal() || callee.isStatic() || callee.isPrivate() || callee.isFinal()) {
+        callees.add(callee.getMethodDescriptor());
+      } else {
+        join(ReturnSummaries.UNKNOWN);
+      }
+    }
+
+    private int toState(Nullness nullness) {
+      return nullness == Nullness.NOT_NULL
+          ? ReturnSummaries.NON_NULL
+          : nullness == Nullness.NULLABLE ? ReturnSummaries.NULLABLE : ReturnSummaries.UNKNOWN;
+    }
+  }
+}
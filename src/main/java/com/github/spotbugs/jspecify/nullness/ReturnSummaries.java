@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.nullness.NullMarked;
+
+/**
+ * Inferred nullness of values returned by unannotated methods in the application. Each method is
+ * described by {@link MethodFacts}: what its {@code ARETURN} instructions may return, and which
+ * methods it returns the result of. Summaries are solved bottom-up over strongly connected
+ * components of this call graph, so a component is solved once all the components it calls are
+ * solved. Components that do not depend on each other are solved in parallel.
+ */
+@NullMarked
+final class ReturnSummaries {
+  /** The method returns non-null value in every path. */
+  static final int NON_NULL = 0;
+  /** The method returns value of unknown nullness, like parameters or fields. */
+  static final int UNKNOWN = 1;
+  /** The method may return null. */
+  static final int NULLABLE = 2;
+
+  private ReturnSummaries() {}
+
+  /** Returned values of one method, as collected from its bytecode. */
+  static final class MethodFacts {
+    /** The join of values that do not depend on other methods in the graph. */
+    final int base;
+    /** Methods whose returned value this method returns. */
+    final List<MethodDescriptor> callees;
+
+    MethodFacts(int base, Collection<MethodDescriptor> callees) {
+      this.base = base;
+      this.callees = List.copyOf(callees);
+    }
+  }
+
+  /**
+   * Solves summaries of the given methods. Callees that are not in the graph are handled as {@link
+   * #UNKNOWN}.
+   *
+   * @return nullness of methods that return non-null value or may return null, methods of unknown
+   *     nullness are absent
+   */
+  static Map<MethodDescriptor, Nullness> solve(
+      Map<MethodDescriptor, MethodFacts> graph, ForkJoinPool pool) {
+    Graph indexed = new Graph(graph);
+    int[] component = new int[indexed.size()];
+    List<int[]> components = indexed.stronglyConnectedComponents(component);
+    int[] states = new int[indexed.size()];
+
+    // Tarjan's algorithm finds a component after all the components reachable from it
+    int count = components.size();
+    AtomicInteger[] pending = new AtomicInteger[count];
+    List<List<Integer>> callers = new ArrayList<>(count);
+    for (int c = 0; c < count; ++c) {
+      callers.add(new ArrayList<>());
+    }
+    for (int c = 0; c < count; ++c) {
+      int dependencies = 0;
+      boolean[] seen = new boolean[count];
+      for (int node : components.get(c)) {
+        for (int callee : indexed.successors[node]) {
+          int d = component[callee];
+          if (d != c && !seen[d]) {
+            seen[d] = true;
+            dependencies++;
+            callers.get(d).add(c);
+          }
+        }
+      }
+      pending[c] = new AtomicInteger(dependencies);
+    }
+
+    CountDownLatch done = new CountDownLatch(count);
+    Solver solver = new Solver(indexed, components, states, pending, callers, pool, done);
+    for (int c = 0; c < count; ++c) {
+      if (pending[c].get() == 0) {
+        solver.submit(c);
+      }
+    }
+    try {
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Map.of();
+    }
+
+    Map<MethodDescriptor, Nullness> result = new HashMap<>();
+    for (int node = 0; node < indexed.size(); ++node) {
+      if (states[node] == NON_NULL) {
+        result.put(indexed.methods[node], Nullness.NOT_NULL);
+      } else if (states[node] == NULLABLE) {
+        result.put(indexed.methods[node], Nullness.NULLABLE);
+      }
+    }
+    return result;
+  }
+
+  /** Call graph whose nodes are numbered, so traversal works on arrays. */
+  private static final class Graph {
+    final MethodDescriptor[] methods;
+    final int[] base;
+    /** Callees in the graph of each node. */
+    final int[][] successors;
+    /** Whether each node calls a method out of the graph, that is unknown. */
+    final boolean[] callsUnknown;
+
+    Graph(Map<MethodDescriptor, MethodFacts> graph) {
+      int size = graph.size();
+      methods = graph.keySet().toArray(new MethodDescriptor[0]);
+      Map<MethodDescriptor, Integer> ids = new HashMap<>();
+      for (int i = 0; i < size; ++i) {
+        ids.put(methods[i], i);
+      }
+      base = new int[size];
+      successors = new int[size][];
+      callsUnknown = new boolean[size];
+      for (int i = 0; i < size; ++i) {
+        MethodFacts facts = graph.get(methods[i]);
+        base[i] = facts.base;
+        int[] found = new int[facts.callees.size()];
+        int length = 0;
+        for (MethodDescriptor callee : facts.callees) {
+          Integer id = ids.get(callee);
+          if (id == null) {
+            callsUnknown[i] = true;
+          } else {
+            found[length++] = id;
+          }
+        }
+        successors[i] = Arrays.copyOf(found, length);
+      }
+    }
+
+    int size() {
+      return methods.length;
+    }
+
+    /**
+     * Finds strongly connected components by Tarjan's algorithm, iteratively to support deep call
+     * chains.
+     *
+     * @param component filled with the index of the component of each node
+     * @return nodes in each component, in reverse topological order
+     */
+    List<int[]> stronglyConnectedComponents(int[] component) {
+      int size = size();
+      int[] index = new int[size];
+      int[] lowLink = new int[size];
+      boolean[] onStack = new boolean[size];
+      Arrays.fill(index, -1);
+      int[] nextEdge = new int[size];
+      Deque<Integer> stack = new ArrayDeque<>();
+      Deque<Integer> path = new ArrayDeque<>();
+      List<int[]> components = new ArrayList<>();
+      int counter = 0;
+
+      for (int root = 0; root < size; ++root) {
+        if (index[root] >= 0) {
+          continue;
+        }
+        path.push(root);
+        index[root] = lowLink[root] = counter++;
+        stack.push(root);
+        onStack[root] = true;
+        while (!path.isEmpty()) {
+          int node = path.peek();
+          if (nextEdge[node] < successors[node].length) {
+            int next = successors[node][nextEdge[node]++];
+            if (index[next] < 0) {
+              index[next] = lowLink[next] = counter++;
+              stack.push(next);
+              onStack[next] = true;
+              path.push(next);
+            } else if (onStack[next]) {
+              lowLink[node] = Math.min(lowLink[node], index[next]);
+            }
+            continue;
+          }
+          path.pop();
+          if (!path.isEmpty()) {
+            int parent = path.peek();
+            lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+          }
+          if (lowLink[node] == index[node]) {
+            List<Integer> members = new ArrayList<>();
+            int member;
+            do {
+              member = stack.pop();
+              onStack[member] = false;
+              component[member] = components.size();
+              members.add(member);
+            } while (member != node);
+            components.add(members.stream().mapToInt(Integer::intValue).toArray());
+          }
+        }
+      }
+      return components;
+    }
+  }
+
+  /**
+   * Solves each component once its callees are solved, then schedules callers that have no other
+   * pending callee. The atomic counters order writes of a component before reads by its callers.
+   */
+  private static final class Solver {
+    private final Graph graph;
+    private final List<int[]> components;
+    private final int[] states;
+    private final AtomicInteger[] pending;
+    private final List<List<Integer>> callers;
+    private final ForkJoinPool pool;
+    private final CountDownLatch done;
+
+    Solver(
+        Graph graph,
+        List<int[]> components,
+        int[] states,
+        AtomicInteger[] pending,
+        List<List<Integer>> callers,
+        ForkJoinPool pool,
+        CountDownLatch done) {
+      this.graph = graph;
+      this.components = components;
+      this.states = states;
+      this.pending = pending;
+      this.callers = callers;
+      this.pool = pool;
+      this.done = done;
+    }
+
+    void submit(int component) {
+      pool.execute(() -> run(component));
+    }
+
+    private void run(int component) {
+      try {
+        solve(components.get(component));
+      } finally {
+        done.countDown();
+        for (int caller : callers.get(component)) {
+          if (pending[caller].decrementAndGet() == 0) {
+            submit(caller);
+          }
+        }
+      }
+    }
+
+    /**
+     * Iterates to the fixed point, starting from {@link #NON_NULL}. States only grow in the order
+     * of {@code NON_NULL < UNKNOWN < NULLABLE}, so the iteration terminates.
+     */
+    private void solve(int[] members) {
+      boolean changed = true;
+      while (changed) {
+        changed = false;
+        for (int node : members) {
+          int state =
+              graph.callsUnknown[node] ? Math.max(graph.base[node], UNKNOWN) : graph.base[node];
+          for (int callee : graph.successors[node]) {
+            state = Math.max(state, states[callee]);
+          }
+          if (state > states[node]) {
+            states[node] = state;
+            changed = true;
+          }
+        }
+      }
+    }
+  }
+}
@@ -18,36 +18,53 @@ package com.github.spotbugs.jspecify.nullness;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.BugReporter;
 import edu.umd.cs.findbugs.OpcodeStack.CustomUserValue;
-import edu.umd.cs.findbugs.OpcodeStack.Item;
 import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.ba.XClass;
 import edu.umd.cs.findbugs.ba.XMethod;
-import edu.umd.cs.findbugs.bcel.OpcodeStackDetector;
 import edu.umd.cs.findbugs.classfile.Global;
-import java.util.Objects;
 import java.util.Optional;
 import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
 
 @CustomUserValue
-public class ReturnUnexpectedNullDetector extends OpcodeStackDetector {
-  private final BugReporter reporter;
-
+public class ReturnUnexpectedNullDetector extends NullnessStackDetector {
   public ReturnUnexpectedNullDetector(BugReporter reporter) {
-    this.reporter = Objects.requireNonNull(reporter);
+    super(reporter);
+  }
+
+  @Override
+  boolean isRelevant(NullnessDatabase database, XClass clazz) {
+    return database.mayReferNullness(clazz);
+  }
+
+  /**
+   * Skips the class when none of its methods is expected to return non-null value, so the opcode
+   * stack does not get computed for classes out of the JSpecify scope.
+   */
+  @Override
+  boolean hasTarget(NullnessDatabase database, XClass clazz) {
+    return clazz.getXMethods().stream().anyMatch(method -> isTargetMethod(database, method));
+  }
+
+  /**
+   * Decides whether the current method is a target once per method, then skips the opcode stack
+   * tracking for methods that are not target.
+   */
+  @Override
+  public boolean shouldVisitCode(Code code) {
+    return isTargetMethod();
   }
 
   @Override
   public void sawOpcode(int seen) {
     switch (seen) {
       case Const.ARETURN:
-        if (isTargetMethod() && stack.getStackDepth() > 0) {
-          Item item = stack.getStackItem(0);
-          Nullness nullness = (Nullness) item.getUserValue();
-          if (item.isNull() || (nullness != null && nullness.canBeNull())) {
-            reporter.reportBug(
-                new BugInstance("JSPECIFY_RETURN_UNEXPECTED_NULL", Priorities.HIGH_PRIORITY)
-                    .addClassAndMethod(this)
-                    .addSourceLine(this));
-          }
+        // shouldVisitCode() ensures that the current method is a target method
+        if (stack.getStackDepth() > 0 && canBeNull(stack.getStackItem(0)) && !isCheckedNonNull(0)) {
+          report(
+              new BugInstance("JSPECIFY_RETURN_UNEXPECTED_NULL", Priorities.HIGH_PRIORITY)
+                  .addClassAndMethod(this)
+                  .addSourceLine(this));
         }
         return;
       default: // do nothing
@@ -55,30 +72,13 @@ public class ReturnUnexpectedNullDetector extends OpcodeStackDetector {
   }
 
   boolean isTargetMethod() {
-    // TODO does it work with lambda?
+    // lambda bodies get nullness of the interface method that they implement
     NullnessDatabase database = Global.getAnalysisCache().getDatabase(NullnessDatabase.class);
-    Optional<Nullness> optional =
-        database.findNullnessOf(getXClass(), getXMethod(), Global.getAnalysisCache());
-    return optional.isPresent() && !optional.get().canBeNull();
+    return isTargetMethod(database, getXMethod());
   }
 
-  @Override
-  public void afterOpcode(int code) {
-    switch (code) {
-      case Const.INVOKEINTERFACE:
-      case Const.INVOKESPECIAL:
-      case Const.INVOKESTATIC:
-      case Const.INVOKEVIRTUAL:
-        XMethod methodOperand = getXMethodOperand();
-        NullnessDatabase database = Global.getAnalysisCache().getDatabase(NullnessDatabase.class);
-        Optional<Nullness> optional =
-            database.findNullnessOf(getXClassOperand(), methodOperand, Global.getAnalysisCache());
-        super.afterOpcode(code);
-        optional.ifPresent(nullness -> stack.getStackItem(0).setUserValue(nullness));
-        return;
-        // constructor has no returned value
-      default:
-        super.afterOpcode(code);
-    }
+  private static boolean isTargetMethod(NullnessDatabase database, XMethod method) {
+    Optional<Nullness> optional = database.findNullnessOf(method, Global.getAnalysisCache());
+    return optional.isPresent() && !optional.get().canBeNull();
   }
 }
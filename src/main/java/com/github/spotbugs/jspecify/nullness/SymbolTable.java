@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+
+/**
+ * Interns class, package, method and field descriptors and names into dense {@code int}
+ * identifiers, so caches of nullness are keyed by primitive values instead of strings and
+ * descriptors. Identifiers are positive, and stay the same until the table is {@linkplain #clear()
+ * cleared}. Like {@link NullnessTable}, lookups do not take a lock: they read the table
+ * optimistically, and retry with the read lock only when a writer modified the table meanwhile.
+ */
+@NullMarked
+final class SymbolTable {
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final StampedLock lock = new StampedLock();
+  /** Slots of the table, replaced by a larger one when it is half full. */
+  private Slots slots = new Slots(INITIAL_CAPACITY);
+  /** Symbols keyed by their identifier. The first element is not used. */
+  private Object[] symbols = new Object[INITIAL_CAPACITY];
+  /** Identifier of the package of each class, keyed by identifier of the class, or 0 if unknown. */
+  private int[] packages = new int[INITIAL_CAPACITY];
+
+  private int size;
+
+  /**
+   * @param symbol {@link ClassDescriptor}, {@code MethodDescriptor}, {@code FieldDescriptor} or
+   *     {@link String}
+   * @return identifier of the given symbol, which is added to this table if absent
+   */
+  int idOf(Object symbol) {
+    int id = find(symbol);
+    return id == 0 ? add(symbol) : id;
+  }
+
+  /** @return identifier of the given symbol, or 0 if it is not in this table */
+  int find(Object symbol) {
+    long stamp = lock.tryOptimisticRead();
+    int id = slots.find(symbol);
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        id = slots.find(symbol);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return id;
+  }
+
+  /** @return identifier of the package of the given class, which has the slashed package name */
+  int packageIdOf(ClassDescriptor clazz) {
+    int classId = idOf(clazz);
+    long stamp = lock.tryOptimisticRead();
+    int[] current = packages;
+    int packageId = classId < current.length ? current[classId] : 0;
+    if (!lock.validate(stamp)) {
+      packageId = 0;
+    }
+    if (packageId != 0) {
+      return packageId;
+    }
+    // computed once per class, so package names are not cut out of class names on every lookup
+    packageId = idOf(NullnessIndex.packageNameOf(clazz.getClassName()));
+    stamp = lock.writeLock();
+    try {
+      packages[classId] = packageId;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    return packageId;
+  }
+
+  /**
+   * @return key of a member that has the given name and descriptor, unique in its class without
+   *     concatenating the name and the descriptor
+   */
+  long memberKey(String name, String descriptor) {
+    return ((long) idOf(name) << 32) | idOf(descriptor);
+  }
+
+  /** @return the symbol of the given identifier */
+  Object symbolOf(int id) {
+    long stamp = lock.readLock();
+    try {
+      if (id <= 0 || id > size) {
+        throw new IllegalArgumentException("Unknown symbol: " + id);
+      }
+      return symbols[id];
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  int size() {
+    long stamp = lock.readLock();
+    try {
+      return size;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Removes all the symbols. Identifiers given so far are reused for symbols added later, so
+   * callers should drop everything keyed by them.
+   */
+  void clear() {
+    long stamp = lock.writeLock();
+    try {
+      slots = new Slots(INITIAL_CAPACITY);
+      symbols = new Object[INITIAL_CAPACITY];
+      packages = new int[INITIAL_CAPACITY];
+      size = 0;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private int add(Object symbol) {
+    long stamp = lock.writeLock();
+    try {
+      int index = slots.indexOf(symbol);
+      if (slots.keys[index] != null) {
+        // another thread added it meanwhile
+        return slots.ids[index];
+      }
+      int id = ++size;
+      if (id >= symbols.length) {
+        symbols = Arrays.copyOf(symbols, symbols.length * 2);
+        packages = Arrays.copyOf(packages, packages.length * 2);
+      }
+      symbols[id] = symbol;
+      if (size * 2 > slots.keys.length) {
+        slots = slots.grow();
+        index = slots.indexOf(symbol);
+      }
+      // readers may see the key before the identifier, but then the stamp tells them to retry
+      slots.ids[index] = id;
+      slots.keys[index] = symbol;
+      return id;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /** Keys and identifiers of the same capacity, which is a power of two. */
+  private static final class Slots {
+    final @Nullable Object[] keys;
+    final int[] ids;
+
+    Slots(int capacity) {
+      keys = new Object[capacity];
+      ids = new int[capacity];
+    }
+
+    /** @return identifier of the symbol, or 0 if it is not in the slots */
+    int find(Object symbol) {
+      int mask = keys.length - 1;
+      int index = hash(symbol) & mask;
+      // at most half of slots are used, so an empty slot is always found
+      for (int probe = 0; probe <= mask; ++probe) {
+        Object key = keys[index];
+        if (key == null) {
+          return 0;
+        }
+        if (key == symbol || key.equals(symbol)) {
+          return ids[index];
+        }
+        index = (index + 1) & mask;
+      }
+      return 0;
+    }
+
+    /** @return index of the slot that has the given symbol, or of the empty slot to store it */
+    int indexOf(Object symbol) {
+      int mask = keys.length - 1;
+      int index = hash(symbol) & mask;
+      while (keys[index] != null && !symbol.equals(keys[index])) {
+        index = (index + 1) & mask;
+      }
+      return index;
+    }
+
+    Slots grow() {
+      Slots grown = new Slots(keys.length * 2);
+      for (int i = 0; i < keys.length; ++i) {
+        Object key = keys[i];
+        if (key != null) {
+          int index = grown.indexOf(key);
+          grown.keys[index] = key;
+          grown.ids[index] = ids[i];
+        }
+      }
+      return grown;
+    }
+
+    private static int hash(Object symbol) {
+      int hash = symbol.hashCode();
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.Global;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+
+/**
+ * Memoized supertypes and enclosing classes of classes. The supertypes of a class are walked once
+ * per class in an analysis, level by level, so nearer supertypes come first.
+ */
+@NullMarked
+final class TypeHierarchy {
+  private final SymbolTable symbols;
+  private final IntCache<List<XClass>> supertypes;
+  private final IntCache<List<XClass>> enclosingClasses;
+
+  TypeHierarchy(SymbolTable symbols, int cacheSize) {
+    this.symbols = symbols;
+    supertypes = new IntCache<>(cacheSize);
+    enclosingClasses = new IntCache<>(cacheSize);
+  }
+
+  /**
+   * @return all the supertypes of the given class except {@link Object}, in breadth-first order:
+   *     the direct supertypes come first, then their direct supertypes, and so on
+   */
+  List<XClass> supertypesOf(XClass clazz) {
+    return supertypes.get(
+        symbols.idOf(clazz.getClassDescriptor()), key -> computeSupertypes(clazz));
+  }
+
+  /** @return the enclosing classes of the given class, from the innermost one */
+  List<XClass> enclosingClassesOf(XClass clazz) {
+    if (clazz.getImmediateEnclosingClass() == null) {
+      return List.of();
+    }
+    return enclosingClasses.get(
+        symbols.idOf(clazz.getClassDescriptor()), key -> computeEnclosingClasses(clazz));
+  }
+
+  /** Forgets the memoized classes, when identifiers of the symbol table are cleared. */
+  void clear() {
+    supertypes.clear();
+    enclosingClasses.clear();
+  }
+
+  private List<XClass> computeSupertypes(XClass clazz) {
+    Set<XClass> result = new LinkedHashSet<>();
+    Deque<XClass> queue = new ArrayDeque<>();
+    queue.add(clazz);
+    while (!queue.isEmpty()) {
+      XClass current = queue.remove();
+      List<XClass> direct = new ArrayList<>();
+      addIfFound(direct, current.getSuperclassDescriptor());
+      for (ClassDescriptor anInterface : current.getInterfaceDescriptorList()) {
+        addIfFound(direct, anInterface);
+      }
+      for (XClass supertype : direct) {
+        // interfaces inherited through several paths are visited once, at their nearest level
+        if (result.add(supertype)) {
+          queue.add(supertype);
+        }
+      }
+    }
+    return List.copyOf(result);
+  }
+
+  private List<XClass> computeEnclosingClasses(XClass clazz) {
+    List<XClass> result = new ArrayList<>();
+    XClass enclosing = lookUp(clazz.getImmediateEnclosingClass());
+    while (enclosing != null) {
+      result.add(enclosing);
+      enclosing = lookUp(enclosing.getImmediateEnclosingClass());
+    }
+    return List.copyOf(result);
+  }
+
+  private static void addIfFound(List<XClass> list, @Nullable ClassDescriptor descriptor) {
+    if (descriptor != null && !descriptor.matches(Object.class)) {
+      XClass found = lookUp(descriptor);
+      if (found != null) {
+        list.add(found);
+      }
+    }
+  }
+
+  @Nullable
+  private static XClass lookUp(@Nullable ClassDescriptor descriptor) {
+    if (descriptor == null) {
+      return null;
+    }
+    try {
+      return Global.getAnalysisCache().getClassAnalysis(XClass.class, descriptor);
+    } catch (CheckedAnalysisException e) {
+      // missing supertypes are reported by SpotBugs itself
+      return null;
+    }
+  }
+}
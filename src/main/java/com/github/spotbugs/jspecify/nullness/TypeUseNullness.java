@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import java.util.Arrays;
+import org.jspecify.nullness.NullMarked;
+import org.jspecify.nullness.Nullable;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+
+/**
+ * Nullness of types in the signature of a member, including type arguments, wildcard bounds and
+ * array components, encoded as one byte per type in pre-order. Types of a method are its parameter
+ * types followed by its return type, and a field has one type.
+ *
+ * <p>Each byte holds the annotated nullness in bits 0-1 (0 means not annotated), the kind of
+ * wildcard in bits 2-3, and the number of nested types in bits 4-7. A {@link TypePath} is resolved
+ * by walking the array, so the model takes no memory other than the array. Types with more than 15
+ * type arguments, and paths through inner types, are not supported; type arguments of an inner type
+ * are nested in the node of its outer type.
+ */
+@NullMarked
+final class TypeUseNullness {
+  private static final int NULLNESS_MASK = 0x3;
+  private static final int KIND_SHIFT = 2;
+  private static final int KIND_MASK = 0x3 << KIND_SHIFT;
+  private static final int CHILDREN_SHIFT = 4;
+  private static final int MAX_CHILDREN = 0xF;
+
+  static final int KIND_TYPE = 0;
+  static final int KIND_EXTENDS = 1;
+  static final int KIND_SUPER = 2;
+  static final int KIND_UNBOUNDED = 3;
+
+  private static final Nullness[] NULLNESS = {
+    null, Nullness.UNKNOWN, Nullness.NULLABLE, Nullness.NOT_NULL
+  };
+
+  private TypeUseNullness() {}
+
+  /**
+   * @param signature generic signature of the member if it has, or its descriptor
+   * @return types in the signature without nullness, or null if they cannot be encoded
+   */
+  static byte @Nullable [] encode(String signature) {
+    Encoder encoder = new Encoder();
+    try {
+      SignatureReader reader = new SignatureReader(signature);
+      if (signature.startsWith("(") || signature.startsWith("<")) {
+        reader.accept(encoder.method());
+      } else {
+        reader.acceptType(encoder.type(-1));
+      }
+    } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+      // broken signature, or too many type arguments
+      return null;
+    }
+    return Arrays.copyOf(encoder.types, encoder.size);
+  }
+
+  /** @return index of the {@code root}-th top-level type, or -1 if there is no such type */
+  static int root(byte[] types, int root) {
+    int node = 0;
+    for (int i = 0; i < root && node >= 0; ++i) {
+      node = skip(types, node);
+    }
+    return node < types.length ? node : -1;
+  }
+
+  /** @return index of the last top-level type, that is the return type of a method */
+  static int lastRoot(byte[] types) {
+    int last = -1;
+    for (int node = 0; node >= 0 && node < types.length; node = skip(types, node)) {
+      last = node;
+    }
+    return last;
+  }
+
+  /** @return index of the type that the path points from the given type, or -1 */
+  static int follow(byte[] types, int node, @Nullable TypePath path) {
+    if (path == null) {
+      return node;
+    }
+    for (int i = 0; i < path.getLength() && node >= 0; ++i) {
+      switch (path.getStep(i)) {
+        case TypePath.ARRAY_ELEMENT:
+        case TypePath.WILDCARD_BOUND:
+          node = child(types, node, 0);
+          break;
+        case TypePath.TYPE_ARGUMENT:
+          node = child(types, node, path.getStepArgument(i));
+          break;
+        default:
+          // inner types share the node of their outer type
+          return -1;
+      }
+    }
+    return node;
+  }
+
+  /** @return index of the {@code index}-th nested type of the given type, or -1 */
+  static int child(byte[] types, int node, int index) {
+    if (index >= childCount(types, node)) {
+      return -1;
+    }
+    int child = node + 1;
+    for (int i = 0; i < index; ++i) {
+      child = skip(types, child);
+    }
+    return child;
+  }
+
+  static int childCount(byte[] types, int node) {
+    return (types[node] & 0xFF) >>> CHILDREN_SHIFT;
+  }
+
+  static int kind(byte[] types, int node) {
+    return (types[node] & KIND_MASK) >>> KIND_SHIFT;
+  }
+
+  /** @return nullness annotated on the given type, or null if it is not annotated */
+  @Nullable
+  static Nullness nullnessAt(byte[] types, int node) {
+    return NULLNESS[types[node] & NULLNESS_MASK];
+  }
+
+  /**
+   * @return nullness of values typed by the {@code index}-th type argument of the given type,
+   *     looking through the bound of {@code ? extends}, or null if it is not annotated
+   */
+  @Nullable
+  static Nullness typeArgument(byte[] types, int node, int index) {
+    int argument = child(types, node, index);
+    if (argument < 0) {
+      return null;
+    }
+    Nullness nullness = nullnessAt(types, argument);
+    if (nullness == null && kind(types, argument) == KIND_EXTENDS) {
+      nullness = nullnessAt(types, argument + 1);
+    }
+    return nullness;
+  }
+
+  static void annotate(byte[] types, int node, Nullness nullness) {
+    int code;
+    switch (nullness) {
+      case UNKNOWN:
+        code = 1;
+        break;
+      case NULLABLE:
+        code = 2;
+        break;
+      case NOT_NULL:
+        code = 3;
+        break;
+      default:
+        return;
+    }
+    types[node] = (byte) ((types[node] & ~NULLNESS_MASK) | code);
+  }
+
+  /** @return index of the type next to the subtree of the given type */
+  private static int skip(byte[] types, int node) {
+    int remaining = 1;
+    while (remaining > 0) {
+      if (node >= types.length) {
+        return -1;
+      }
+      remaining += childCount(types, node) - 1;
+      ++node;
+    }
+    return node;
+  }
+
+  /** Appends types to the array in pre-order, counting nested types of each type. */
+  private static final class Encoder {
+    byte[] types = new byte[8];
+    int size;
+
+    /** @return index of the new type, nested in the given parent or top-level if it is -1 */
+    int start(int parent, int kind) {
+      if (parent >= 0) {
+        if (childCount(types, parent) == MAX_CHILDREN) {
+          throw new IllegalArgumentException("Too many type arguments");
+        }
+        types[parent] = (byte) (types[parent] + (1 << CHILDREN_SHIFT));
+      }
+      if (size == types.length) {
+        types = Arrays.copyOf(types, size * 2);
+      }
+      types[size] = (byte) (kind << KIND_SHIFT);
+      return size++;
+    }
+
+    /** Visits parameter types and the return type of a method, but not type parameters. */
+    SignatureVisitor method() {
+      return new SignatureVisitor(Opcodes.ASM9) {
+        @Override
+        public SignatureVisitor visitParameterType() {
+          return type(-1);
+        }
+
+        @Override
+        public SignatureVisitor visitReturnType() {
+          return type(-1);
+        }
+      };
+    }
+
+    /** @return visitor of one type nested in the given parent, or top-level if it is -1 */
+    SignatureVisitor type(int parent) {
+      return new SignatureVisitor(Opcodes.ASM9) {
+        /** Index of the visiting class type, to nest its type arguments. */
+        private int node = -1;
+
+        @Override
+        public void visitBaseType(char descriptor) {
+          start(parent, KIND_TYPE);
+        }
+
+        @Override
+        public void visitTypeVariable(String name) {
+          start(parent, KIND_TYPE);
+        }
+
+        @Override
+        public SignatureVisitor visitArrayType() {
+          return type(start(parent, KIND_TYPE));
+        }
+
+        @Override
+        public void visitClassType(String name) {
+          node = start(parent, KIND_TYPE);
+        }
+
+        @Override
+        public void visitTypeArgument() {
+          start(node, KIND_UNBOUNDED);
+        }
+
+        @Override
+        public SignatureVisitor visitTypeArgument(char wildcard) {
+          switch (wildcard) {
+            case SignatureVisitor.EXTENDS:
+              return type(start(node, KIND_EXTENDS));
+            case SignatureVisitor.SUPER:
+              return type(start(node, KIND_SUPER));
+            default:
+              return type(node);
+          }
+        }
+      };
+    }
+  }
+}
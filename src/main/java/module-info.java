@@ -3,5 +3,6 @@ module com.github.spotbugs.jspecify {
   requires org.apache.bcel;
   requires com.github.spotbugs.spotbugs;
   requires org.objectweb.asm.tree;
+  requires org.objectweb.asm.tree.analysis;
   requires org.slf4j;
 }
@@ -41,6 +41,8 @@ class DiagnosticBuilder {
 
   private static final Map<String, String> COMMENT_TO_BUGTYPE =
       Map.of(
+          "jspecify_conflicting_annotations",
+          BUGTYPE_CONFLICTING_ANNOTATIONS,
           "jspecify_nullness_intrinsically_not_nullable",
           BUGTYPE_NULLNESS_INTRINSICALLY_NOT_NULLABLE);
 
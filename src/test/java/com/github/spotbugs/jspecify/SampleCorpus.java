@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.JavaFileObject.Kind;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * Samples bundled to the JSpecify project, compiled all at once by one compilation task that keeps
+ * class files in memory. A sample is a source file in the root of the sample directory, or a
+ * directory in the root that holds a package and its subpackages.
+ */
+final class SampleCorpus {
+  private final Map<String, List<Path>> sources;
+  private final Map<String, Map<String, byte[]>> classFiles;
+
+  private SampleCorpus(
+      Map<String, List<Path>> sources, Map<String, Map<String, byte[]>> classFiles) {
+    this.sources = sources;
+    this.classFiles = classFiles;
+  }
+
+  /** @return names of samples in the given directory, listed lazily */
+  static Stream<String> listSamples(Path root) throws IOException {
+    return Files.list(root)
+        .filter(path -> Files.isDirectory(path) || isSourceFile(path))
+        .map(path -> path.getFileName().toString())
+        .sorted();
+  }
+
+  /**
+   * Compiles all samples in the given directory by one compilation task.
+   *
+   * @param classpath jar files that samples depend on
+   */
+  static SampleCorpus compile(Path root, List<Path> classpath) throws IOException {
+    Map<String, List<Path>> sources = new HashMap<>();
+    try (Stream<Path> files = Files.walk(root)) {
+      files
+          .filter(SampleCorpus::isSourceFile)
+          .forEach(
+              file ->
+                  sources
+                      .computeIfAbsent(sampleOf(root, file), key -> new ArrayList<>())
+                      .add(file));
+    }
+    Map<String, Map<String, byte[]>> classFiles = new HashMap<>();
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    try (StandardJavaFileManager standardFileManager =
+            compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        JavaFileManager fileManager =
+            new InMemoryFileManager(standardFileManager, root, classFiles)) {
+      standardFileManager.setLocationFromPaths(StandardLocation.CLASS_PATH, classpath);
+      Iterable<? extends JavaFileObject> compilationUnits =
+          standardFileManager.getJavaFileObjectsFromPaths(
+              sources.values().stream().flatMap(List::stream).collect(Collectors.toList()));
+      Boolean success =
+          compiler
+              .getTask(
+                  null, fileManager, diagnostics, List.of("-proc:none"), null, compilationUnits)
+              .call();
+      assertTrue(
+          success,
+          () ->
+              diagnostics.getDiagnostics().stream()
+                  .map(Object::toString)
+                  .collect(Collectors.joining(System.lineSeparator())));
+    }
+    return new SampleCorpus(sources, classFiles);
+  }
+
+  /** @return source files of the given sample */
+  List<Path> sourcesOf(String sample) {
+    return sources.getOrDefault(sample, Collections.emptyList());
+  }
+
+  /**
+   * Writes class files of the given sample into the given directory, to analyse them.
+   *
+   * @return count of written class files
+   */
+  int writeClassFiles(String sample, Path classDir) throws IOException {
+    Map<String, byte[]> classes = classFiles.getOrDefault(sample, Collections.emptyMap());
+    for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+      Path file = classDir.resolve(entry.getKey().replace('.', '/') + Kind.CLASS.extension);
+      Files.createDirectories(file.getParent());
+      Files.write(file, entry.getValue());
+    }
+    return classes.size();
+  }
+
+  private static boolean isSourceFile(Path path) {
+    return Files.isRegularFile(path)
+        && path.getFileName().toString().endsWith(Kind.SOURCE.extension);
+  }
+
+  /** @return name of the sample that the given file belongs to */
+  private static String sampleOf(Path root, Path file) {
+    return root.relativize(file).getName(0).toString();
+  }
+
+  /** File manager that keeps class files in memory, grouped by sample of their source file. */
+  private static final class InMemoryFileManager
+      extends ForwardingJavaFileManager<StandardJavaFileManager> {
+    private final Path root;
+    private final Map<String, Map<String, byte[]>> classFiles;
+
+    InMemoryFileManager(
+        StandardJavaFileManager fileManager,
+        Path root,
+        Map<String, Map<String, byte[]>> classFiles) {
+      super(fileManager);
+      this.root = root;
+      this.classFiles = classFiles;
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(
+        Location location, String className, Kind kind, FileObject sibling) throws IOException {
+      if (sibling == null) {
+        throw new IOException("Class " + className + " has no source file");
+      }
+      Map<String, byte[]> classes =
+          classFiles.computeIfAbsent(
+              sampleOf(root, Paths.get(sibling.toUri())), key -> new TreeMap<>());
+      URI uri = URI.create("memory:///" + className.replace('.', '/') + kind.extension);
+      return new SimpleJavaFileObject(uri, kind) {
+        @Override
+        public OutputStream openOutputStream() {
+          return new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+              classes.put(className, toByteArray());
+            }
+          };
+        }
+      };
+    }
+  }
+}
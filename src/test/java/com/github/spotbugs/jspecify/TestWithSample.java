@@ -19,76 +19,109 @@ import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import com.google.common.collect.ImmutableList;
 import edu.umd.cs.findbugs.BugCollection;
 import edu.umd.cs.findbugs.test.SpotBugsExtension;
 import edu.umd.cs.findbugs.test.SpotBugsRunner;
 import edu.umd.cs.findbugs.test.matcher.BugInstanceMatcher;
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import javax.tools.JavaCompiler;
-import javax.tools.JavaFileObject;
-import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
-import org.junit.jupiter.api.Assertions;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.jspecify.nullness.NullMarked;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestReporter;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
-/** Run test with samples bundled to the JSpecify project. */
+/**
+ * Run test with samples bundled to the JSpecify project. The whole corpus is compiled once, then
+ * each sample is analysed in parallel, and the wall time of each analysis is published as a report
+ * entry of the test.
+ */
 @ExtendWith(SpotBugsExtension.class)
+@Execution(ExecutionMode.CONCURRENT)
 class TestWithSample {
   private static final String ABBREV = "JSPECIFY";
 
-  // TODO resolve version dynamically
-  private static final List<Path> JAR =
-      List.of(
-          Paths.get("..", "jspecify", "build", "libs", "jspecify-0.0.0-SNAPSHOT.jar")
-              .toAbsolutePath()
-              .normalize(),
-          Paths.get(
-                  System.getenv("user.home"),
-                  ".gradle",
-                  "caches",
-                  "modules-2",
-                  "files-2.1",
-                  "com.google.guava",
-                  "guava",
-                  "31.1-jre",
-                  "60458f877d055d0c9114d9e1a2efb737b4bc282c",
-                  "guava-31.1-jre.jar")
-              .toAbsolutePath()
-              .normalize());
+  private static final Path SAMPLES =
+      Paths.get("..", "jspecify", "samples").toAbsolutePath().normalize();
+
+  private static final Path JSPECIFY_LIBS =
+      Paths.get("..", "jspecify", "build", "libs").toAbsolutePath().normalize();
 
-  @TempDir File classFileDir;
+  private static SampleCorpus corpus;
 
-  private static File[] listSamples() {
-    // TODO support packages in the sample dir
-    Path samples = Paths.get("..", "jspecify", "samples").normalize();
-    return Arrays.stream(samples.toFile().listFiles())
-        .filter(File::isFile)
-        .filter(file -> file.getName().endsWith(".java"))
-        .toArray(size -> new File[size]);
+  @BeforeAll
+  static void compileSamples() throws IOException {
+    corpus = SampleCorpus.compile(SAMPLES, classpath());
   }
 
-  @ParameterizedTest(name = "Compile and run analysis on {0}")
+  private static Stream<String> listSamples() throws IOException {
+    return SampleCorpus.listSamples(SAMPLES);
+  }
+
+  /**
+   * Resolves jar files that samples depend on: the JSpecify jar built by the JSpecify project if it
+   * exists, or the one that this test depends on, and Guava.
+   */
+  private static List<Path> classpath() throws IOException {
+    List<Path> classpath = new ArrayList<>();
+    if (Files.isDirectory(JSPECIFY_LIBS)) {
+      try (Stream<Path> jars = Files.list(JSPECIFY_LIBS)) {
+        jars.filter(
+                jar -> {
+                  String name = jar.getFileName().toString();
+                  return name.startsWith("jspecify-")
+                      && name.endsWith(".jar")
+                      && !name.endsWith("-sources.jar")
+                      && !name.endsWith("-javadoc.jar");
+                })
+            .forEach(classpath::add);
+      }
+    }
+    if (classpath.isEmpty()) {
+      classpath.add(locationOf(NullMarked.class));
+    }
+    classpath.add(locationOf(ImmutableList.class));
+    return classpath;
+  }
+
+  private static Path locationOf(Class<?> clazz) {
+    try {
+      return Paths.get(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @ParameterizedTest(name = "Run analysis on {0}")
   @MethodSource("listSamples")
-  void test(File javaFile, SpotBugsRunner spotbugs) throws IOException {
-    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-    try (StandardJavaFileManager javaFileManager =
-        compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
-      compile(javaFile, compiler, javaFileManager);
-      List<BugInstanceMatcher> expectedBugs = new DiagnosticBuilder().build(javaFile);
-      BugCollection bugs = spotbugs.performAnalysis(classFileDir.toPath());
-      expectedBugs.forEach(expectedBug -> assertThat(bugs, hasItem(expectedBug)));
-      assertEquals(expectedBugs.size(), countJSpecifyBugs(bugs));
+  void test(
+      String sample, SpotBugsRunner spotbugs, TestReporter reporter, @TempDir Path classFileDir)
+      throws IOException {
+    int classes = corpus.writeClassFiles(sample, classFileDir);
+    List<BugInstanceMatcher> expectedBugs = new ArrayList<>();
+    for (Path javaFile : corpus.sourcesOf(sample)) {
+      expectedBugs.addAll(new DiagnosticBuilder().build(javaFile.toFile()));
     }
+
+    long start = System.nanoTime();
+    BugCollection bugs = spotbugs.performAnalysis(classFileDir);
+    long wallTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    reporter.publishEntry(sample, String.format("analysed %d classes in %d ms", classes, wallTime));
+
+    expectedBugs.forEach(expectedBug -> assertThat(bugs, hasItem(expectedBug)));
+    assertEquals(expectedBugs.size(), countJSpecifyBugs(bugs));
   }
 
   /**
@@ -100,22 +133,4 @@ class TestWithSample {
   private long countJSpecifyBugs(BugCollection bugs) {
     return bugs.getCollection().stream().filter(bug -> ABBREV.equals(bug.getAbbrev())).count();
   }
-
-  private void compile(
-      File javaFile, JavaCompiler compiler, StandardJavaFileManager javaFileManager) {
-    Iterable<? extends JavaFileObject> javaFileObjects =
-        javaFileManager.getJavaFileObjects(javaFile);
-    String classpath = JAR.stream().map(Path::toString).collect(Collectors.joining(","));
-    Boolean success =
-        compiler
-            .getTask(
-                null,
-                javaFileManager,
-                null,
-                List.of("-classpath", classpath, "-d", classFileDir.getPath()),
-                null,
-                javaFileObjects)
-            .call();
-    Assertions.assertTrue(success);
-  }
 }
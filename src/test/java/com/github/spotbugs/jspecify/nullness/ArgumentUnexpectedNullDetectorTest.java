@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArgumentUnexpectedNullDetectorTest {
+  private static List<String> findBugs(Path classes, Path... auxClasspath) {
+    return Samples.analyse(classes, auxClasspath)
+        .filter(bug -> bug.getType().equals("JSPECIFY_ARGUMENT_UNEXPECTED_NULL"))
+        .map(Samples::describe)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  void reportsNullPassedToNonNullParameter(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Greeter",
+            "package sample;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Greeter {\n"
+                + "  public static void greet(@Nullable String title, String name) {}\n"
+                + "}\n",
+            "Caller",
+            "package sample.util;\n"
+                + "import sample.Greeter;\n"
+                + "public class Caller {\n"
+                + "  void nullName() { Greeter.greet(\"Dr.\", null); }\n"
+                + "  void nullTitle() { Greeter.greet(null, \"name\"); }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    assertEquals(List.of("JSPECIFY_ARGUMENT_UNEXPECTED_NULL nullName"), findBugs(classes));
+  }
+
+  @Test
+  void doesNotReportCheckedArguments(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Checks",
+            "package sample;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Checks {\n"
+                + "  @Nullable static String maybe() { return null; }\n"
+                + "  static void take(String s) {}\n"
+                + "  void checked() { String s = maybe(); if (s != null) { take(s); } }\n"
+                + "  void unchecked() { String s = maybe(); if (s != null) { take(s); } take(s); }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    assertEquals(List.of("JSPECIFY_ARGUMENT_UNEXPECTED_NULL unchecked"), findBugs(classes));
+  }
+
+  @Test
+  void reportsNullPassedToNullMarkedModuleInAuxiliaryClasspath(
+      @TempDir Path sources, @TempDir Path classes, @TempDir Path library) throws Exception {
+    Samples.compile(
+        Map.of(
+            "Lib",
+            "package lib;\n" + "public class Lib { public static void take(String s) {} }\n",
+            "App",
+            "package app;\n" + "public class App { void run() { lib.Lib.take(null); } }\n"),
+        sources,
+        classes);
+    Files.createDirectories(library.resolve("lib"));
+    Files.move(classes.resolve("lib/Lib.class"), library.resolve("lib/Lib.class"));
+    Files.write(library.resolve("module-info.class"), Samples.nullMarkedModule("lib"));
+
+    assertEquals(List.of("JSPECIFY_ARGUMENT_UNEXPECTED_NULL run"), findBugs(classes, library));
+  }
+}
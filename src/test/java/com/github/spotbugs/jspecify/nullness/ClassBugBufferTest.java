@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.Priorities;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ClassBugBufferTest {
+  private static BugInstance bug(String method, int priority) {
+    return new BugInstance("JSPECIFY_NULLNESS_INTRINSICALLY_NOT_NULLABLE", priority)
+        .addClass("sample.Foo")
+        .addMethod("sample.Foo", method, "()I", false);
+  }
+
+  @Test
+  void reportsDuplicatedBugsOnceWithHighestPriority() {
+    List<BugInstance> reportedBugs = new ArrayList<>();
+    // AbstractBugReporter needs the analysis context, so record bugs given to the interface
+    BugReporter reporter =
+        (BugReporter)
+            Proxy.newProxyInstance(
+                BugReporter.class.getClassLoader(),
+                new Class<?>[] {BugReporter.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("reportBug")) {
+                    reportedBugs.add((BugInstance) args[0]);
+                  }
+                  return null;
+                });
+    PluginMetrics metrics = new PluginMetrics(null);
+    ClassBugBuffer buffer = new ClassBugBuffer();
+    buffer.add(bug("value", Priorities.NORMAL_PRIORITY));
+    buffer.add(bug("other", Priorities.NORMAL_PRIORITY));
+    buffer.add(bug("value", Priorities.HIGH_PRIORITY));
+    assertEquals(0, reportedBugs.size());
+
+    List<BugInstance> reported = buffer.flush(reporter, metrics);
+
+    assertEquals(2, reported.size());
+    assertEquals("value", reported.get(0).getPrimaryMethod().getMethodName());
+    assertEquals(Priorities.HIGH_PRIORITY, reported.get(0).getPriority());
+    assertEquals(2, reportedBugs.size());
+    assertEquals(1L, metrics.snapshot(Map.of()).get("duplicateBugs"));
+    assertEquals(0, buffer.size());
+  }
+
+  @Test
+  void keepsBugsOfDifferentParameters() {
+    ClassBugBuffer buffer = new ClassBugBuffer();
+    buffer.add(bug("value", Priorities.HIGH_PRIORITY).addParameterAnnotation(0, "INT_NULL_ARG"));
+    buffer.add(bug("value", Priorities.HIGH_PRIORITY).addParameterAnnotation(1, "INT_NULL_ARG"));
+
+    assertEquals(2, buffer.size());
+  }
+}
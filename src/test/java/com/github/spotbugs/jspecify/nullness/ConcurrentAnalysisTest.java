@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.IFindBugsEngine;
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.ba.XMethod;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import edu.umd.cs.findbugs.test.AnalysisRunner;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Checks that analysis on several threads gets the same result as on a single thread. */
+class ConcurrentAnalysisTest {
+  private static final int THREADS = 4;
+  private static final int CLASSES = 20;
+
+  @TempDir static Path classes;
+  private static Path jspecify;
+
+  @BeforeAll
+  static void compileSamples(@TempDir Path sources) throws Exception {
+    jspecify = Samples.jspecifyJar();
+    Map<String, String> samples = new HashMap<>();
+    samples.put("package-info", Samples.NULL_MARKED_PACKAGE);
+    for (int i = 0; i < CLASSES; ++i) {
+      samples.put(
+          "Sample" + i,
+          "package sample;\n"
+              + "import org.jspecify.nullness.Nullable;\n"
+              + "public class Sample"
+              + i
+              + " {\n"
+              + "  @Nullable int count;\n"
+              + "  @Nullable public int size() { return count; }\n"
+              + "  @Nullable public String maybeNull(int i) { return i > 0 ? \"a\" : null; }\n"
+              + "  public String returnsNull() { return null; }\n"
+              + "  public String returnsMaybeNull() { return maybeNull(0); }\n"
+              + "  public String returnsValue(Object o) { return String.valueOf(o).trim(); }\n"
+              + "}\n");
+    }
+    Samples.compile(samples, sources, classes);
+  }
+
+  @Test
+  void analysisOnThreadsIsSameAsOnSingleThread() throws Exception {
+    List<String> expected = analyse(engine -> {});
+    assertFalse(expected.isEmpty());
+
+    // analysis caches are not thread-safe, so each thread has its own one, but they share the
+    // database like detectors on several threads do
+    NullnessDatabase shared = newDatabase(Samples.createClassPath(classes));
+    Consumer<IFindBugsEngine> sharing =
+        engine ->
+            engine.addClassObserver(
+                classDescriptor ->
+                    Global.getAnalysisCache().eagerlyPutDatabase(NullnessDatabase.class, shared));
+    List<Callable<List<String>>> tasks = Collections.nCopies(THREADS * 2, () -> analyse(sharing));
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (Future<List<String>> future : executor.invokeAll(tasks)) {
+        assertEquals(expected, future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(shared.getMethodCache().size() > 0);
+  }
+
+  private List<String> analyse(Consumer<IFindBugsEngine> configurer) {
+    return new AnalysisRunner()
+        .addAuxClasspathEntry(jspecify).run(configurer, classes).getBugCollection().getCollection()
+            .stream()
+            .map(BugInstance::toString)
+            .sorted()
+            .collect(Collectors.toList());
+  }
+
+  @Test
+  void sharedDatabaseOnThreadsIsSameAsOnSingleThread() throws Exception {
+    IAnalysisCache analysisCache = Samples.createAnalysisCache(classes);
+    IClassPath classPath = analysisCache.getClassPath();
+
+    List<XClass> xclasses = new ArrayList<>();
+    for (int i = 0; i < CLASSES; ++i) {
+      xclasses.add(
+          analysisCache.getClassAnalysis(
+              XClass.class, DescriptorFactory.createClassDescriptor("sample/Sample" + i)));
+    }
+    Map<MethodDescriptor, Optional<Nullness>> expected =
+        lookUp(newDatabase(classPath), xclasses, new Random(0));
+    assertTrue(expected.values().stream().anyMatch(Optional::isPresent));
+
+    NullnessDatabase shared = newDatabase(classPath);
+    List<Callable<Map<MethodDescriptor, Optional<Nullness>>>> tasks = new ArrayList<>();
+    for (int i = 0; i < THREADS; ++i) {
+      Random random = new Random(i);
+      tasks.add(
+          () -> {
+            Global.setAnalysisCacheForCurrentThread(analysisCache);
+            return lookUp(shared, xclasses, random);
+          });
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      for (Future<Map<MethodDescriptor, Optional<Nullness>>> future : executor.invokeAll(tasks)) {
+        assertEquals(expected, future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static NullnessDatabase newDatabase(IClassPath classPath) {
+    return new NullnessDatabase(
+        NullnessIndex.load(),
+        PackageScopeIndex.build(classPath),
+        NullnessDatabase.DEFAULT_CACHE_SIZE,
+        new PluginMetrics(null),
+        NullnessFactStore.disabled());
+  }
+
+  /** Looks up all methods in random order, to make threads contend on different entries. */
+  private static Map<MethodDescriptor, Optional<Nullness>> lookUp(
+      NullnessDatabase database, List<XClass> xclasses, Random random) {
+    List<XMethod> methods = new ArrayList<>();
+    xclasses.forEach(xclass -> methods.addAll(xclass.getXMethods()));
+    Collections.shuffle(methods, random);
+    Map<MethodDescriptor, Optional<Nullness>> result = new HashMap<>();
+    for (XMethod method : methods) {
+      result.put(
+          method.getMethodDescriptor(), database.findNullnessOf(method, Global.getAnalysisCache()));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConstantPoolScannerTest {
+  @TempDir static Path classes;
+
+  @BeforeAll
+  static void compileSamples(@TempDir Path sources) throws IOException {
+    Samples.compile(
+        Map.of(
+            "Annotated",
+            "package legacy;\n"
+                + "public class Annotated {\n"
+                + "  @org.jspecify.nullness.Nullable public String value() { return null; }\n"
+                + "}\n",
+            "Legacy",
+            "package legacy;\n"
+                + "public class Legacy {\n"
+                + "  static final long LONG = 1L << 40;\n"
+                + "  static final double DOUBLE = 0.5;\n"
+                + "  public Runnable task() { return () -> System.out.println(LONG + DOUBLE); }\n"
+                + "  public String value() { return \"org/jspecify\"; }\n"
+                + "}\n",
+            "Outer",
+            "package legacy;\n"
+                + "@org.jspecify.nullness.NullMarked\n"
+                + "public class Outer {\n"
+                + "  public class Inner { public String value() { return \"\"; } }\n"
+                + "}\n",
+            "Sub",
+            "package legacy;\n" + "public class Sub extends Annotated {}\n",
+            "Base",
+            "package legacy;\n" + "public class Base { public String value() { return \"\"; } }\n",
+            "Plain",
+            "package legacy;\n" + "public class Plain extends Base {}\n",
+            "Deprecated",
+            "package legacy;\n" + "@java.lang.Deprecated public class Deprecated {}\n",
+            "TypeQualifierNickname",
+            "package javax.annotation.meta;\n" + "public @interface TypeQualifierNickname {}\n",
+            "NotNull",
+            "package nickname;\n"
+                + "@javax.annotation.meta.TypeQualifierNickname\n"
+                + "@org.jspecify.nullness.NullMarked\n"
+                + "public @interface NotNull {}\n",
+            "Nicknamed",
+            "package legacy;\n"
+                + "public class Nicknamed {\n"
+                + "  @nickname.NotNull public String value() { return \"\"; }\n"
+                + "}\n"),
+        sources,
+        classes);
+  }
+
+  private static byte[] classFile(String className) throws IOException {
+    return Files.readAllBytes(classes.resolve(className + ".class"));
+  }
+
+  @Test
+  void findsJSpecifyReferences() throws IOException {
+    assertTrue(ConstantPoolScanner.refersNullness(classFile("legacy/Annotated")));
+    assertTrue(ConstantPoolScanner.refersNullness(classFile("legacy/Outer")));
+  }
+
+  @Test
+  void skipsClassesWithoutJSpecifyReferences() throws IOException {
+    assertFalse(ConstantPoolScanner.refersNullness(classFile("legacy/Legacy")));
+    assertFalse(ConstantPoolScanner.refersNullness(classFile("legacy/Outer$Inner")));
+  }
+
+  @Test
+  void tellsClassesThatHaveOtherAnnotations() throws IOException {
+    assertEquals(
+        ConstantPoolScanner.NO_ANNOTATIONS,
+        ConstantPoolScanner.scan(classFile("legacy/Legacy"), Map.of()));
+    assertEquals(
+        ConstantPoolScanner.HAS_OTHER_ANNOTATIONS,
+        ConstantPoolScanner.scan(classFile("legacy/Deprecated"), Map.of()));
+    assertEquals(
+        ConstantPoolScanner.HAS_OTHER_ANNOTATIONS,
+        ConstantPoolScanner.scan(classFile("legacy/Nicknamed"), Map.of()));
+    Map<String, Nullness> aliases = new HashMap<>();
+    Nullness.putAlias(aliases, "nickname/NotNull", Nullness.NOT_NULL);
+    assertEquals(
+        ConstantPoolScanner.REFERS_NULLNESS,
+        ConstantPoolScanner.scan(classFile("legacy/Nicknamed"), aliases));
+  }
+
+  @Test
+  void doesNotSkipTruncatedClassFiles() {
+    assertTrue(ConstantPoolScanner.refersNullness(new byte[4]));
+  }
+
+  @Test
+  void inheritsRelevanceFromEnclosingClassesAndSupertypes() throws Exception {
+    IAnalysisCache analysisCache = Samples.createAnalysisCache(classes);
+    NullnessDatabase database = new NullnessDatabase();
+
+    assertTrue(database.mayReferNullness(xclass(analysisCache, "legacy/Outer$Inner")));
+    assertTrue(database.mayReferNullness(xclass(analysisCache, "legacy/Sub")));
+    assertFalse(database.mayReferNullness(xclass(analysisCache, "legacy/Plain")));
+  }
+
+  @Test
+  void findsNicknameBeforeItIsResolved() throws Exception {
+    IAnalysisCache analysisCache = Samples.createAnalysisCache(classes);
+    NullnessDatabase database = new NullnessDatabase();
+
+    // nothing has resolved the nickname that the class uses yet
+    assertTrue(database.mayReferNullness(xclass(analysisCache, "legacy/Nicknamed")));
+    assertFalse(database.mayReferNullness(xclass(analysisCache, "legacy/Deprecated")));
+  }
+
+  private static XClass xclass(IAnalysisCache analysisCache, String className) throws Exception {
+    return analysisCache.getClassAnalysis(
+        XClass.class, DescriptorFactory.createClassDescriptor(className));
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FieldUnexpectedNullDetectorTest {
+  private static List<String> findBugs(Path classes) {
+    return Samples.analyse(classes)
+        .filter(bug -> bug.getType().equals("JSPECIFY_FIELD_UNEXPECTED_NULL"))
+        .map(Samples::describe)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  void reportsNullStoredToNonNullField(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Holder",
+            "package sample;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Holder {\n"
+                + "  @Nullable String maybe;\n"
+                + "  String name = \"\";\n"
+                + "  public void clear() { name = null; }\n"
+                + "  public void reset() { maybe = null; }\n"
+                + "  public void copy() { name = maybe; }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    assertEquals(
+        List.of("JSPECIFY_FIELD_UNEXPECTED_NULL clear", "JSPECIFY_FIELD_UNEXPECTED_NULL copy"),
+        findBugs(classes));
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class IntCacheTest {
+  @Test
+  void computesValueOnlyOnce() {
+    IntCache<Integer> cache = new IntCache<>(16);
+    AtomicInteger computed = new AtomicInteger();
+
+    assertEquals(3, cache.get(42, key -> computed.incrementAndGet() + 2));
+    assertEquals(3, cache.get(42, key -> computed.incrementAndGet() + 2));
+
+    assertEquals(1, computed.get());
+    assertEquals(1, cache.hitCount());
+    assertEquals(1, cache.missCount());
+  }
+
+  @Test
+  void keepsSizeBounded() {
+    IntCache<Integer> cache = new IntCache<>(8);
+    for (int i = 1; i <= 100; ++i) {
+      cache.get(i, key -> key * 2);
+    }
+    assertEquals(8, cache.size());
+    assertEquals(100, cache.missCount());
+  }
+
+  @Test
+  void keepsRemainingEntriesAfterEviction() {
+    IntCache<Integer> cache = new IntCache<>(64);
+    for (int i = 1; i <= 1000; ++i) {
+      cache.get(i, key -> key * 2);
+    }
+
+    int present = 0;
+    for (int i = 1; i <= 1000; ++i) {
+      Integer value = cache.getIfPresent(i);
+      if (value != null) {
+        assertEquals(i * 2, value);
+        ++present;
+      }
+    }
+    assertEquals(64, present);
+    assertTrue(cache.getIfPresent(1000) != null, "the last stored entry should not be evicted");
+  }
+
+  @Test
+  void keepsCountsAfterClear() {
+    IntCache<Integer> cache = new IntCache<>(8);
+    cache.get(1, key -> 2);
+    cache.get(1, key -> 2);
+    cache.clear();
+
+    assertEquals(0, cache.size());
+    assertNull(cache.getIfPresent(1));
+    assertEquals(4, cache.get(1, key -> 4));
+    assertEquals(1, cache.hitCount());
+    assertEquals(2, cache.missCount());
+  }
+
+  @Test
+  void rejectsNonPositiveSize() {
+    assertThrows(IllegalArgumentException.class, () -> new IntCache<>(0));
+  }
+
+  @Test
+  void rejectsAbsentKey() {
+    IntCache<Integer> cache = new IntCache<>(8);
+    assertThrows(IllegalArgumentException.class, () -> cache.get(0, key -> 1));
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import java.nio.file.Path;
+import java.util.Map;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LambdaTargetsTest {
+  @Test
+  void findsInterfaceMethodsOfLambdaBodies(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "Lambdas",
+            "package sample;\n"
+                + "import java.util.function.Function;\n"
+                + "public class Lambdas {\n"
+                + "  interface Producer { String produce(); }\n"
+                + "  Producer producer() { return () -> \"\"; }\n"
+                + "  Function<String, Integer> function() { return s -> 0; }\n"
+                + "  Producer reference() { return this::toString; }\n"
+                + "}\n"),
+        sources,
+        classes);
+    JavaClass javaClass =
+        new ClassParser(classes.resolve("sample/Lambdas.class").toString()).parse();
+    SymbolTable symbols = new SymbolTable();
+
+    MemberTable<MethodDescriptor> targets = LambdaTargets.of(javaClass, symbols);
+
+    // method references implement the interface by an existing method, so they are not targets
+    assertEquals(2, targets.size());
+    assertEquals(
+        DescriptorFactory.instance()
+            .getMethodDescriptor(
+                "sample/Lambdas$Producer", "produce", "()Ljava/lang/String;", false),
+        targets.get(symbols.memberKey("lambda$producer$0", "()Ljava/lang/String;")));
+    assertEquals(
+        DescriptorFactory.instance()
+            .getMethodDescriptor(
+                "java/util/function/Function",
+                "apply",
+                "(Ljava/lang/Object;)Ljava/lang/Object;",
+                false),
+        targets.get(
+            symbols.memberKey("lambda$function$1", "(Ljava/lang/String;)Ljava/lang/Integer;")));
+  }
+
+  @Test
+  void sharesEmptyTableOfClassesWithoutLambda(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of("Plain", "package sample;\n" + "public class Plain {}\n"), sources, classes);
+    JavaClass javaClass = new ClassParser(classes.resolve("sample/Plain.class").toString()).parse();
+
+    assertSame(MemberTable.empty(), LambdaTargets.of(javaClass, new SymbolTable()));
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.umd.cs.findbugs.IntAnnotation;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NeedlessAnnotationDetectorTest {
+  private static List<String> findBugs(Path classes) {
+    return Samples.analyse(classes)
+        .filter(
+            bug -> bug.getType().endsWith("_ANNOTATIONS") || bug.getType().endsWith("_ANNOTATION"))
+        .map(Samples::describe)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  void reportsConflictingAndRedundantAnnotations(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "TypeQualifierNickname",
+            "package javax.annotation.meta;\n" + "public @interface TypeQualifierNickname {}\n",
+            "NotNull",
+            "package nickname;\n"
+                + "import java.lang.annotation.*;\n"
+                + "@javax.annotation.meta.TypeQualifierNickname\n"
+                + "@org.jspecify.nullness.NullMarked\n"
+                + "@Target(ElementType.TYPE_USE) @Retention(RetentionPolicy.RUNTIME)\n"
+                + "public @interface NotNull {}\n",
+            "Annotated",
+            "package sample;\n"
+                + "import nickname.NotNull;\n"
+                + "import org.jspecify.nullness.NullMarked;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Annotated {\n"
+                + "  @Nullable @NotNull String conflicting() { return \"\"; }\n"
+                + "  @NotNull String redundant() { return \"\"; }\n"
+                + "  @Nullable String nullable() { return null; }\n"
+                + "  void parameter(@Nullable @NotNull String s, @Nullable String t) {}\n"
+                + "  @NullMarked static class Nested { @Nullable String field; }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    assertEquals(
+        List.of(
+            "JSPECIFY_CONFLICTING_ANNOTATIONS conflicting",
+            "JSPECIFY_CONFLICTING_ANNOTATIONS parameter",
+            "JSPECIFY_REDUNDANT_ANNOTATION redundant",
+            "JSPECIFY_REDUNDANT_ANNOTATION sample.Annotated$Nested"),
+        findBugs(classes));
+  }
+
+  @Test
+  void reportsEachPrimitiveParameterAnnotatedAsNullable(
+      @TempDir Path sources, @TempDir Path classes) throws Exception {
+    Samples.compile(
+        Map.of(
+            "Primitives",
+            "package sample;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Primitives {\n"
+                + "  void take(@Nullable int first, String s, @Nullable long second) {}\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    List<String> parameters =
+        Samples.analyse(classes)
+            .filter(bug -> bug.getType().equals("JSPECIFY_NULLNESS_INTRINSICALLY_NOT_NULLABLE"))
+            .map(
+                bug ->
+                    bug.getPrimaryMethod().getMethodName()
+                        + " "
+                        + bug.getAnnotationWithRole(IntAnnotation.class, IntAnnotation.INT_VALUE)
+                            .getValue())
+            .sorted()
+            .collect(Collectors.toList());
+
+    assertEquals(List.of("take 1", "take 3"), parameters);
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import edu.umd.cs.findbugs.test.AnalysisRunner;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NullnessFactStoreTest {
+  private static final String FIELDS =
+      "package sample;\n"
+          + "import org.jspecify.nullness.Nullable;\n"
+          + "public class Fields { @Nullable int count; }\n";
+  private static final String CALLER =
+      "package sample;\n"
+          + "public class Caller { public String get(Callee c) { return c.value(); } }\n";
+  private static final String NULLABLE_CALLEE =
+      "package sample;\n"
+          + "import org.jspecify.nullness.Nullable;\n"
+          + "public class Callee { @Nullable public String value() { return null; } }\n";
+  private static final String NON_NULL_CALLEE =
+      "package sample;\n" + "public class Callee { public String value() { return \"a\"; } }\n";
+
+  @TempDir Path sources;
+  @TempDir Path classes;
+  @TempDir Path store;
+
+  @AfterEach
+  void clearProperties() {
+    System.clearProperty(NullnessFactStore.PROPERTY_PATH);
+    System.clearProperty(PluginMetrics.PROPERTY_OUTPUT);
+  }
+
+  @Test
+  void roundTripsBug() {
+    BugInstance bug =
+        new BugInstance("JSPECIFY_RETURN_UNEXPECTED_NULL", Priorities.HIGH_PRIORITY)
+            .addClass("sample.Caller")
+            .addMethod("sample.Caller", "get", "(Lsample/Callee;)Ljava/lang/String;", false)
+            .addSourceLine(new SourceLineAnnotation("sample.Caller", "Caller.java", 2, 2, 0, 4));
+
+    BugInstance decoded = NullnessFactStore.decodeBug(NullnessFactStore.encodeBug(bug));
+
+    assertEquals(bug.getType(), decoded.getType());
+    assertEquals(bug.getPriority(), decoded.getPriority());
+    assertEquals(bug.getAnnotations(), decoded.getAnnotations());
+  }
+
+  @Test
+  void summaryDependsOnNonNullParameters() throws IOException {
+    NullnessFactStore.Summary oneParameter =
+        summaryWithParameters(ParameterBitmap.of(new boolean[] {true}));
+    NullnessFactStore.Summary twoParameters =
+        summaryWithParameters(ParameterBitmap.of(new boolean[] {true, true}));
+
+    assertNotEquals(oneParameter, twoParameters);
+    assertNotEquals(oneParameter.fingerprint(), twoParameters.fingerprint());
+    assertEquals(
+        oneParameter, summaryWithParameters(ParameterBitmap.of(new boolean[] {true, false})));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    NullnessFactStore.write(
+        Map.of("sample/Callee", new NullnessFactStore.ClassFacts(new byte[] {1}, twoParameters)),
+        bytes);
+    NullnessFactStore.Summary read =
+        NullnessFactStore.read(new ByteArrayInputStream(bytes.toByteArray()))
+            .get("sample/Callee")
+            .summary;
+    assertEquals(twoParameters, read);
+    assertEquals(twoParameters.fingerprint(), read.fingerprint());
+  }
+
+  private static NullnessFactStore.Summary summaryWithParameters(long[] nonNull) {
+    return new NullnessFactStore.Summary(
+        Nullness.NO_EXPLICIT_CONFIG,
+        new TreeMap<>(Map.of("value()Ljava/lang/String;", Nullness.NULLABLE)),
+        new TreeMap<>(),
+        new TreeMap<>(Map.of("take(Ljava/lang/String;Ljava/lang/String;)V", nonNull)),
+        new TreeMap<>());
+  }
+
+  @Test
+  void replaysOnlyClassesUnaffectedByChanges() throws IOException {
+    Samples.compile(
+        Map.of(
+            "package-info", Samples.NULL_MARKED_PACKAGE,
+            "Fields", FIELDS,
+            "Caller", CALLER,
+            "Callee", NULLABLE_CALLEE),
+        sources,
+        classes);
+    List<String> before = analyse(false);
+    assertEquals(before, analyse(true));
+    assertEquals(before, analyse(true));
+    assertTrue(replayedClasses() > 0);
+
+    // Caller is unchanged, but the nullness of the method it calls has changed
+    Samples.compile(Map.of("Callee", NON_NULL_CALLEE), sources, classes);
+    List<String> after = analyse(false);
+    assertNotEquals(before, after);
+    assertEquals(after, analyse(true));
+  }
+
+  @Test
+  void doesNotReplayCallersOfChangedInheritedMethod() throws IOException {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Sub",
+            "package sample;\n" + "public class Sub extends Callee {}\n",
+            "Caller",
+            "package sample;\n"
+                + "public class Caller { public String get(Sub c) { return c.value(); } }\n",
+            "Callee",
+            NULLABLE_CALLEE),
+        sources,
+        classes);
+    List<String> before = analyse(false);
+    assertEquals(before, analyse(true));
+
+    // Caller calls the method through Sub, which is unchanged
+    Samples.compile(Map.of("Callee", NON_NULL_CALLEE), sources, classes);
+    List<String> after = analyse(false);
+    assertNotEquals(before, after);
+    assertEquals(after, analyse(true));
+  }
+
+  @Test
+  void doesNotReplayCallersOfChangedTypeArguments() throws IOException {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Caller",
+            "package sample;\n"
+                + "public class Caller {\n"
+                + "  public String first(Callee c) { return c.items().get(0); }\n"
+                + "}\n",
+            "Callee",
+            "package sample;\n"
+                + "import java.util.List;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Callee {\n"
+                + "  public List<@Nullable String> items() { return List.of(); }\n"
+                + "}\n"),
+        sources,
+        classes);
+    List<String> before = analyse(false);
+    assertEquals(List.of("JSPECIFY_RETURN_UNEXPECTED_NULL first"), before);
+    assertEquals(before, analyse(true));
+
+    // Caller is unchanged, and the method it calls is annotated in both versions, so only the
+    // nullness of its type argument tells them apart
+    Samples.compile(
+        Map.of(
+            "Callee",
+            "package sample;\n"
+                + "import java.util.List;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Callee {\n"
+                + "  public @Nullable List<String> items() { return List.of(); }\n"
+                + "}\n"),
+        sources,
+        classes);
+    assertEquals(List.of(), analyse(false));
+    assertEquals(List.of(), analyse(true));
+  }
+
+  @Test
+  void doesNotReplayRedundantAnnotationsAfterPackageChanges() throws IOException {
+    // the default nullness of Marked, and so its summary, does not depend on its package
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "DefaultNonNull",
+            "package org.jspecify.nullness;\n"
+                + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                + "public @interface DefaultNonNull {}\n",
+            "Marked",
+            "package sample;\n"
+                + "import org.jspecify.nullness.DefaultNonNull;\n"
+                + "import org.jspecify.nullness.NullMarked;\n"
+                + "@DefaultNonNull @NullMarked public class Marked {}\n"),
+        sources,
+        classes);
+    List<String> before = analyse(false);
+    assertEquals(List.of("JSPECIFY_REDUNDANT_ANNOTATION sample.Marked"), before);
+    assertEquals(before, analyse(true));
+
+    // Marked is unchanged, but its annotation is not redundant without the default of the package
+    Files.delete(classes.resolve("sample/package-info.class"));
+    assertEquals(List.of(), analyse(false));
+    assertEquals(List.of(), analyse(true));
+  }
+
+  private List<String> analyse(boolean incremental) {
+    if (incremental) {
+      System.setProperty(NullnessFactStore.PROPERTY_PATH, store.resolve("facts.bin").toString());
+      System.setProperty(PluginMetrics.PROPERTY_OUTPUT, store.resolve("metrics.csv").toString());
+    } else {
+      clearProperties();
+    }
+    return new AnalysisRunner()
+        .addAuxClasspathEntry(Samples.jspecifyJar()).run(classes).getBugCollection().getCollection()
+            .stream()
+            .map(Samples::describe)
+            .sorted()
+            .collect(Collectors.toList());
+  }
+
+  private long replayedClasses() throws IOException {
+    return Files.readAllLines(store.resolve("metrics.csv"), StandardCharsets.UTF_8).stream()
+        .filter(line -> line.startsWith("replayedClasses,"))
+        .mapToLong(line -> Long.parseLong(line.substring(line.indexOf(',') + 1)))
+        .findFirst()
+        .orElseThrow();
+  }
+}
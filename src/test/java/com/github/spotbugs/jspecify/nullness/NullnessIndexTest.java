@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+
+class NullnessIndexTest {
+  @Test
+  void readsWrittenFacts() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new NullnessIndex.Writer()
+        .addPackage("com/example", Nullness.NOT_NULL)
+        .addMethod(
+            "java/util/Map",
+            "get",
+            "(Ljava/lang/Object;)Ljava/lang/Object;",
+            false,
+            Nullness.NULLABLE)
+        .addMethod(
+            "java/lang/System",
+            "getenv",
+            "(Ljava/lang/String;)Ljava/lang/String;",
+            true,
+            Nullness.NULLABLE)
+        .write(output);
+    NullnessIndex index = NullnessIndex.of(output.toByteArray());
+
+    assertTrue(index.covers("java/util"));
+    assertTrue(index.covers("com/example"));
+    assertFalse(index.covers("java/util/concurrent"));
+    assertEquals(2, index.size());
+    assertEquals(
+        Optional.of(Nullness.NULLABLE),
+        index.findNullnessOf(
+            new MethodDescriptor(
+                "java/util/Map", "get", "(Ljava/lang/Object;)Ljava/lang/Object;", false)));
+    assertEquals(
+        Optional.of(Nullness.NULLABLE),
+        index.findNullnessOf(
+            new MethodDescriptor(
+                "java/lang/System", "getenv", "(Ljava/lang/String;)Ljava/lang/String;", true)));
+    assertEquals(
+        Optional.empty(),
+        index.findNullnessOf(
+            new MethodDescriptor("java/util/Map", "keySet", "()Ljava/util/Set;", false)));
+    assertEquals(
+        Optional.of(Nullness.NOT_NULL),
+        index.findNullnessOf(
+            new MethodDescriptor("com/example/Foo", "bar", "()Ljava/lang/String;", false)));
+    assertTrue(
+        index.contains(
+            new MethodDescriptor(
+                "java/util/Map", "get", "(Ljava/lang/Object;)Ljava/lang/Object;", false)));
+    assertFalse(
+        index.contains(
+            new MethodDescriptor("com/example/Foo", "bar", "()Ljava/lang/String;", false)));
+    assertEquals(Optional.of(Nullness.NOT_NULL), index.findDefaultNullnessOf("com/example/Foo"));
+    assertEquals(Optional.empty(), index.findDefaultNullnessOf("java/util/Map"));
+  }
+
+  @Test
+  void emptyIndexCoversNothing() {
+    assertFalse(NullnessIndex.EMPTY.covers("java/lang"));
+    assertEquals(0, NullnessIndex.EMPTY.size());
+  }
+}
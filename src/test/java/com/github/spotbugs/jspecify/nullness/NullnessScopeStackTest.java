@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class NullnessScopeStackTest {
+  @Test
+  void inheritsDefaultOfEnclosingScope() {
+    NullnessScopeStack scopes = new NullnessScopeStack();
+    assertEquals(Nullness.NO_EXPLICIT_CONFIG, scopes.current());
+    scopes.push(null);
+    scopes.push(Nullness.NOT_NULL);
+    for (int i = 0; i < 10; ++i) {
+      scopes.push(Nullness.NO_EXPLICIT_CONFIG);
+    }
+    assertEquals(Nullness.NOT_NULL, scopes.current());
+    scopes.push(Nullness.NULLABLE);
+    assertEquals(Nullness.NULLABLE, scopes.current());
+    scopes.pop();
+    assertEquals(Nullness.NOT_NULL, scopes.current());
+    assertEquals(12, scopes.depth());
+    scopes.reset();
+    assertEquals(Nullness.NO_EXPLICIT_CONFIG, scopes.current());
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import edu.umd.cs.findbugs.classfile.FieldDescriptor;
+import org.junit.jupiter.api.Test;
+
+class NullnessTableTest {
+  private final SymbolTable symbols = new SymbolTable();
+
+  private int field(int i) {
+    return symbols.idOf(new FieldDescriptor("sample/Fields", "f" + i, "Ljava/lang/String;", false));
+  }
+
+  @Test
+  void growsBeyondInitialCapacity() {
+    NullnessTable table = new NullnessTable();
+    for (int i = 0; i < 10_000; ++i) {
+      table.put(field(i), i % 2 == 0 ? Nullness.NULLABLE : Nullness.NOT_NULL);
+    }
+
+    assertEquals(10_000, table.size());
+    assertEquals(Nullness.NULLABLE, table.get(field(4242)));
+    assertEquals(Nullness.NOT_NULL, table.get(field(9999)));
+    assertNull(table.get(field(10_000)));
+  }
+
+  @Test
+  void keepsFirstResolvedValue() {
+    NullnessTable table = new NullnessTable();
+
+    assertEquals(Nullness.NULLABLE, table.get(field(0), key -> Nullness.NULLABLE));
+    assertEquals(Nullness.NULLABLE, table.get(field(0), key -> Nullness.NOT_NULL));
+    table.put(field(0), Nullness.NOT_NULL);
+    assertEquals(Nullness.NOT_NULL, table.get(field(0)));
+    assertEquals(1, table.size());
+    assertEquals(1, table.hitCount());
+    assertEquals(1, table.missCount());
+  }
+}
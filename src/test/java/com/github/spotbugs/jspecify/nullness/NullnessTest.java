@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class NullnessTest {
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "Lorg/jspecify/nullness/Nullable;",
+        "org/jspecify/nullness/Nullable",
+        "org.jspecify.nullness.Nullable"
+      })
+  void matchesAllSpellingsOfNullable(String descriptor) {
+    assertEquals(Nullness.NULLABLE, Nullness.lookup(descriptor));
+    assertSame(Nullness.from(descriptor), Nullness.from(descriptor));
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "Lorg/jspecify/nullness/NullMarked;",
+        "org/jspecify/nullness/NullMarked",
+        "org.jspecify.nullness.NullMarked"
+      })
+  void matchesAllSpellingsOfNullMarked(String descriptor) {
+    assertEquals(Optional.of(Nullness.NOT_NULL), Nullness.from(descriptor));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"Ljava/lang/Deprecated;", "org.jspecify.nullness.Nullable;", ""})
+  void ignoresOtherAnnotations(String descriptor) {
+    assertNull(Nullness.lookup(descriptor));
+    assertEquals(Optional.empty(), Nullness.from(descriptor));
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "Lcom/example/test/MaybeNull;",
+        "com/example/test/MaybeNull",
+        "com.example.test.MaybeNull"
+      })
+  void matchesAliasInGivenTable(String descriptor) {
+    Map<String, Nullness> aliases = new HashMap<>();
+    Nullness.putAlias(aliases, "com/example/test/MaybeNull", Nullness.NULLABLE);
+    assertEquals(Nullness.NULLABLE, Nullness.lookup(descriptor, aliases));
+    assertEquals(Nullness.NOT_NULL, Nullness.lookup("org/jspecify/nullness/NullMarked", aliases));
+    assertNull(Nullness.lookup(descriptor));
+    assertNull(Nullness.lookup(descriptor, Map.of()));
+  }
+}
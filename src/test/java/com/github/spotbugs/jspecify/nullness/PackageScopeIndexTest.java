@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PackageScopeIndexTest {
+  @Test
+  void findsDefaultOfApplicationPackage(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Marked",
+            "package sample;\n" + "public class Marked {}\n",
+            "Unmarked",
+            "package sample.util;\n" + "public class Unmarked {}\n"),
+        sources,
+        classes);
+
+    PackageScopeIndex index = PackageScopeIndex.build(Samples.createClassPath(classes));
+
+    assertEquals(
+        Optional.of(Nullness.NOT_NULL),
+        index.find(DescriptorFactory.createClassDescriptor("sample/Marked")));
+    assertEquals(
+        Optional.empty(),
+        index.find(DescriptorFactory.createClassDescriptor("sample/util/Unmarked")));
+    assertEquals(
+        Optional.empty(),
+        index.findModuleDefault(DescriptorFactory.createClassDescriptor("sample/Marked")));
+  }
+
+  @Test
+  void findsDefaultOfModuleInAuxiliaryClasspath(
+      @TempDir Path sources, @TempDir Path classes, @TempDir Path library) throws Exception {
+    Samples.compile(
+        Map.of(
+            "Lib",
+            "package lib;\n" + "public class Lib {}\n",
+            "App",
+            "package app;\n" + "public class App {}\n"),
+        sources,
+        classes);
+    Files.createDirectories(library.resolve("lib"));
+    Files.move(classes.resolve("lib/Lib.class"), library.resolve("lib/Lib.class"));
+    Files.write(library.resolve("module-info.class"), Samples.nullMarkedModule("lib"));
+
+    PackageScopeIndex index = PackageScopeIndex.build(Samples.createClassPath(classes, library));
+
+    assertEquals(
+        Optional.of(Nullness.NOT_NULL),
+        index.find(DescriptorFactory.createClassDescriptor("lib/Lib")));
+    assertEquals(
+        Optional.of(Nullness.NOT_NULL),
+        index.findModuleDefault(DescriptorFactory.createClassDescriptor("lib/Lib")));
+    assertEquals(Optional.empty(), index.find(DescriptorFactory.createClassDescriptor("app/App")));
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class ParameterBitmapTest {
+  @Test
+  void sharesSmallBitmaps() {
+    assertSame(ParameterBitmap.NONE, ParameterBitmap.of(new boolean[] {false, false}));
+    long[] bitmap = ParameterBitmap.of(new boolean[] {true, false, true});
+    assertSame(bitmap, ParameterBitmap.of(new boolean[] {true, false, true, false}));
+    assertArrayEquals(new long[] {5}, bitmap);
+    assertTrue(ParameterBitmap.isSet(bitmap, 0));
+    assertFalse(ParameterBitmap.isSet(bitmap, 1));
+    assertTrue(ParameterBitmap.isSet(bitmap, 2));
+    assertFalse(ParameterBitmap.isSet(bitmap, 200));
+  }
+
+  @Test
+  void supportsWideSignatures() {
+    boolean[] nonNull = new boolean[130];
+    nonNull[63] = true;
+    nonNull[129] = true;
+    long[] bitmap = ParameterBitmap.of(nonNull);
+
+    assertEquals(3, bitmap.length);
+    assertTrue(ParameterBitmap.isSet(bitmap, 63));
+    assertFalse(ParameterBitmap.isSet(bitmap, 64));
+    assertFalse(ParameterBitmap.isSet(bitmap, 127));
+    assertTrue(ParameterBitmap.isSet(bitmap, 129));
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PluginMetricsTest {
+  @TempDir Path dir;
+
+  @Test
+  void writesCsv() throws IOException {
+    Path output = dir.resolve("metrics.csv");
+    PluginMetrics metrics = new PluginMetrics(output);
+    metrics.countLookup();
+    metrics.countLookup();
+    metrics.countMissingClass();
+
+    metrics.write(Map.of("methodCache.hits", 5L));
+
+    assertEquals(
+        "metric,value\nlookups,2\npackageInfoMisses,0\nmissingClasses,1\nreplayedClasses,0\nskippedClasses,0\nduplicateBugs,0\nmethodCache.hits,5\n",
+        Files.readString(output, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void writesJson() throws IOException {
+    Path output = dir.resolve("metrics.json");
+    PluginMetrics metrics = new PluginMetrics(output);
+    metrics.countPackageInfoMiss();
+
+    metrics.write(Map.of());
+
+    assertEquals(
+        "{\n  \"lookups\": 0,\n  \"packageInfoMisses\": 1,\n  \"missingClasses\": 0,\n  \"replayedClasses\": 0,\n  \"skippedClasses\": 0,\n  \"duplicateBugs\": 0\n}\n",
+        Files.readString(output, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void doesNotTimeWhenDisabled() {
+    PluginMetrics metrics = new PluginMetrics(null);
+    metrics.stopTimer("detector", metrics.startTimer());
+
+    assertFalse(metrics.snapshot(Map.of()).containsKey("nanos.detector"));
+  }
+}
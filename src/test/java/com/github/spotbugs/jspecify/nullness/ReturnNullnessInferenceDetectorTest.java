@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReturnNullnessInferenceDetectorTest {
+  @Test
+  void reportsNullReturnedByUnannotatedMethod(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Strings",
+            "package sample.util;\n"
+                + "public final class Strings {\n"
+                + "  public static String orNull(boolean b) { return b ? \"a\" : null; }\n"
+                + "  public static String wrap(boolean b) { String s = orNull(b); return s; }\n"
+                + "  public static String constant() { return (String) \"a\"; }\n"
+                + "  public String self() { return toString(); }\n"
+                + "}\n",
+            "Caller",
+            "package sample;\n"
+                + "import sample.util.Strings;\n"
+                + "public class Caller {\n"
+                + "  public String nullable(boolean b) { return Strings.wrap(b); }\n"
+                + "  public String nonNull() { return Strings.constant(); }\n"
+                + "  public String unknown(Strings s) { return s.self(); }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    List<String> bugs =
+        Samples.analyse(classes)
+            .filter(bug -> bug.getType().equals("JSPECIFY_RETURN_UNEXPECTED_NULL"))
+            .map(Samples::describe)
+            .collect(Collectors.toList());
+
+    assertEquals(List.of("JSPECIFY_RETURN_UNEXPECTED_NULL nullable"), bugs);
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+class ReturnSummariesTest {
+  private static MethodDescriptor method(String name) {
+    return DescriptorFactory.instance()
+        .getMethodDescriptor("sample/Methods", name, "()Ljava/lang/String;", true);
+  }
+
+  private static ReturnSummaries.MethodFacts facts(int base, String... callees) {
+    return new ReturnSummaries.MethodFacts(
+        base,
+        List.of(callees).stream().map(ReturnSummariesTest::method).collect(Collectors.toList()));
+  }
+
+  @Test
+  void propagatesNullableToCallers() {
+    Map<MethodDescriptor, ReturnSummaries.MethodFacts> graph = new HashMap<>();
+    graph.put(method("a"), facts(ReturnSummaries.NON_NULL, "b"));
+    graph.put(method("b"), facts(ReturnSummaries.NON_NULL, "c"));
+    graph.put(method("c"), facts(ReturnSummaries.NULLABLE));
+    graph.put(method("d"), facts(ReturnSummaries.NON_NULL, "missing"));
+
+    Map<MethodDescriptor, Nullness> solved =
+        ReturnSummaries.solve(graph, ForkJoinPool.commonPool());
+
+    assertEquals(
+        Map.of(
+            method("a"), Nullness.NULLABLE,
+            method("b"), Nullness.NULLABLE,
+            method("c"), Nullness.NULLABLE),
+        solved);
+  }
+
+  @Test
+  void solvesRecursiveMethods() {
+    Map<MethodDescriptor, ReturnSummaries.MethodFacts> graph = new HashMap<>();
+    graph.put(method("even"), facts(ReturnSummaries.NON_NULL, "odd"));
+    graph.put(method("odd"), facts(ReturnSummaries.NON_NULL, "even"));
+    graph.put(method("loop"), facts(ReturnSummaries.NON_NULL, "loop", "unknown"));
+    graph.put(method("unknown"), facts(ReturnSummaries.UNKNOWN));
+
+    Map<MethodDescriptor, Nullness> solved =
+        ReturnSummaries.solve(graph, ForkJoinPool.commonPool());
+
+    assertEquals(
+        Map.of(method("even"), Nullness.NOT_NULL, method("odd"), Nullness.NOT_NULL), solved);
+  }
+
+  @Test
+  void solvesDeepCallChains() {
+    int depth = 100_000;
+    Map<MethodDescriptor, ReturnSummaries.MethodFacts> graph = new HashMap<>();
+    for (int i = 0; i < depth; ++i) {
+      graph.put(method("m" + i), facts(ReturnSummaries.NON_NULL, "m" + (i + 1)));
+    }
+    graph.put(method("m" + depth), facts(ReturnSummaries.NULLABLE));
+
+    Map<MethodDescriptor, Nullness> solved =
+        ReturnSummaries.solve(graph, ForkJoinPool.commonPool());
+
+    assertEquals(depth + 1, solved.size());
+    assertEquals(Nullness.NULLABLE, solved.get(method("m0")));
+  }
+}
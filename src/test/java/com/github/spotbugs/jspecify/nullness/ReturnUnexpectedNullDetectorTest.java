@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReturnUnexpectedNullDetectorTest {
+  private static List<String> findBugs(Path classes) {
+    return Samples.analyse(classes)
+        .filter(bug -> bug.getType().equals("JSPECIFY_RETURN_UNEXPECTED_NULL"))
+        .map(Samples::describe)
+        .sorted()
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  void reportsNullableFieldReturned(@TempDir Path sources, @TempDir Path classes) throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Holder",
+            "package sample;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Holder {\n"
+                + "  @Nullable String maybe;\n"
+                + "  static @Nullable String cached;\n"
+                + "  String name = \"\";\n"
+                + "  public String maybe() { return maybe; }\n"
+                + "  public String cached() { return cached; }\n"
+                + "  public String name() { return name; }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    assertEquals(
+        List.of("JSPECIFY_RETURN_UNEXPECTED_NULL cached", "JSPECIFY_RETURN_UNEXPECTED_NULL maybe"),
+        findBugs(classes));
+  }
+
+  @Test
+  void doesNotReportCheckedValues(@TempDir Path sources, @TempDir Path classes) throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Checks",
+            "package sample;\n"
+                + "import java.util.Objects;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Checks {\n"
+                + "  @Nullable String field;\n"
+                + "  @Nullable static String maybe() { return null; }\n"
+                + "  public String unchecked() { return maybe(); }\n"
+                + "  public String wrongBranch() {\n"
+                + "    String s = maybe(); if (s == null) { return s; } return \"\";\n"
+                + "  }\n"
+                + "  public String checked() {\n"
+                + "    String s = maybe(); if (s != null) { return s; } return \"\";\n"
+                + "  }\n"
+                + "  public String early() {\n"
+                + "    String s = maybe(); if (s == null) { return \"\"; } return s;\n"
+                + "  }\n"
+                + "  public String merged() { String s = maybe(); return s != null ? s : \"\"; }\n"
+                + "  public String reassigned() {\n"
+                + "    String s = maybe(); if (s == null) { s = \"\"; } return s;\n"
+                + "  }\n"
+                + "  public String required() { return Objects.requireNonNull(maybe()); }\n"
+                + "  public String requiredLocal() {\n"
+                + "    String s = maybe(); Objects.requireNonNull(s); return s;\n"
+                + "  }\n"
+                + "  public String dereferenced() { String s = maybe(); s.length(); return s; }\n"
+                + "  public String field() { if (field != null) { return field; } return \"\"; }\n"
+                + "  public String loop(int n) {\n"
+                + "    String s = \"\";\n"
+                + "    for (int i = 0; i < n; ++i) { String t = maybe(); if (t != null) { s = t; } }\n"
+                + "    return s;\n"
+                + "  }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    assertEquals(
+        List.of(
+            "JSPECIFY_RETURN_UNEXPECTED_NULL unchecked",
+            "JSPECIFY_RETURN_UNEXPECTED_NULL wrongBranch"),
+        findBugs(classes));
+  }
+
+  @Test
+  void resolvesNullnessOfLambdaFromInterface(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Lambdas",
+            "package sample;\n"
+                + "import java.util.function.Function;\n"
+                + "import java.util.function.Supplier;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Lambdas {\n"
+                + "  interface Producer { String produce(); }\n"
+                + "  interface MaybeProducer { @Nullable String produce(); }\n"
+                + "  interface SubProducer extends Producer {}\n"
+                + "  interface Fn<X extends @Nullable Object> { X apply(); }\n"
+                + "  Producer nonNull() { return () -> null; }\n"
+                + "  MaybeProducer nullable() { return () -> null; }\n"
+                + "  SubProducer inherited() { return () -> null; }\n"
+                + "  Producer reference() { return this::toString; }\n"
+                + "  Supplier<@Nullable String> supplier() { return () -> null; }\n"
+                + "  Function<String, @Nullable String> function() { return s -> null; }\n"
+                + "  Fn<@Nullable String> generic() { return () -> null; }\n"
+                + "  Fn<String> genericNonNull() { return () -> \"\"; }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    assertEquals(
+        List.of(
+            "JSPECIFY_RETURN_UNEXPECTED_NULL lambda$inherited$2",
+            "JSPECIFY_RETURN_UNEXPECTED_NULL lambda$nonNull$0"),
+        findBugs(classes));
+  }
+
+  @Test
+  void reportsNullableElementsOfContainers(@TempDir Path sources, @TempDir Path classes)
+      throws Exception {
+    Samples.compile(
+        Map.of(
+            "package-info",
+            Samples.NULL_MARKED_PACKAGE,
+            "Containers",
+            "package sample;\n"
+                + "import java.util.ArrayList;\n"
+                + "import java.util.List;\n"
+                + "import org.jspecify.nullness.Nullable;\n"
+                + "public class Containers {\n"
+                + "  List<@Nullable String> names = new ArrayList<>();\n"
+                + "  List<String> safe = new ArrayList<>();\n"
+                + "  @Nullable String[] array = new String[0];\n"
+                + "  List<@Nullable String> nullableNames() { return names; }\n"
+                + "  String first() { return names.get(0); }\n"
+                + "  String safeFirst() { return safe.get(0); }\n"
+                + "  String viaMethod() { return nullableNames().get(0); }\n"
+                + "  String element() { return array[0]; }\n"
+                + "}\n"),
+        sources,
+        classes);
+
+    assertEquals(
+        List.of(
+            "JSPECIFY_RETURN_UNEXPECTED_NULL element",
+            "JSPECIFY_RETURN_UNEXPECTED_NULL first",
+            "JSPECIFY_RETURN_UNEXPECTED_NULL viaMethod"),
+        findBugs(classes));
+  }
+}
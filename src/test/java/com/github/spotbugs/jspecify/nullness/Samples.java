@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.NoOpFindBugsProgress;
+import edu.umd.cs.findbugs.PrintingBugReporter;
+import edu.umd.cs.findbugs.classfile.CheckedAnalysisException;
+import edu.umd.cs.findbugs.classfile.Global;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.IClassFactory;
+import edu.umd.cs.findbugs.classfile.IClassPath;
+import edu.umd.cs.findbugs.classfile.IClassPathBuilder;
+import edu.umd.cs.findbugs.classfile.impl.ClassFactory;
+import edu.umd.cs.findbugs.test.AnalysisRunner;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.jspecify.nullness.NullMarked;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+/** Compiles sample classes in the {@code sample} package, to analyse them in tests. */
+final class Samples {
+  static final String NULL_MARKED_PACKAGE = "@org.jspecify.nullness.NullMarked package sample;";
+
+  private Samples() {}
+
+  static Path jspecifyJar() {
+    try {
+      return Paths.get(
+          NullMarked.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Compiles the given sources into the given directory.
+   *
+   * @param sources source code keyed by simple name of the class, like {@code package-info}
+   */
+  static void compile(Map<String, String> sources, Path sourceDir, Path classDir)
+      throws IOException {
+    List<String> arguments = new ArrayList<>(List.of("-classpath", jspecifyJar().toString()));
+    arguments.add("-d");
+    arguments.add(classDir.toString());
+    for (Map.Entry<String, String> source : sources.entrySet()) {
+      Path file = sourceDir.resolve(source.getKey() + ".java");
+      Files.write(file, source.getValue().getBytes(StandardCharsets.UTF_8));
+      arguments.add(file.toString());
+    }
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+  }
+
+  /**
+   * Creates a classpath that has the given directory as the application, and the given entries as
+   * the auxiliary classpath.
+   */
+  static IClassPath createClassPath(Path classDir, Path... auxClasspath)
+      throws IOException, InterruptedException, CheckedAnalysisException {
+    IClassFactory factory = ClassFactory.instance();
+    IClassPath classPath = factory.createClassPath();
+    IClassPathBuilder builder = factory.createClassPathBuilder(new PrintingBugReporter());
+    builder.addCodeBase(factory.createFilesystemCodeBaseLocator(classDir.toString()), true);
+    for (Path entry : auxClasspath) {
+      builder.addCodeBase(factory.createFilesystemCodeBaseLocator(entry.toString()), false);
+    }
+    builder.build(classPath, new NoOpFindBugsProgress());
+    return classPath;
+  }
+
+  /**
+   * Creates an analysis cache that reads classes in the given directory, and sets it to the current
+   * thread.
+   */
+  static IAnalysisCache createAnalysisCache(Path classDir)
+      throws IOException, InterruptedException, CheckedAnalysisException {
+    IClassPath classPath = createClassPath(classDir);
+    IAnalysisCache analysisCache =
+        ClassFactory.instance().createAnalysisCache(classPath, new PrintingBugReporter());
+    new edu.umd.cs.findbugs.classfile.engine.EngineRegistrar()
+        .registerAnalysisEngines(analysisCache);
+    new edu.umd.cs.findbugs.classfile.engine.asm.EngineRegistrar()
+        .registerAnalysisEngines(analysisCache);
+    Global.setAnalysisCacheForCurrentThread(analysisCache);
+    return analysisCache;
+  }
+
+  /** @return {@code module-info.class} of a module annotated with {@code @NullMarked} */
+  static byte[] nullMarkedModule(String name) {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V11, Opcodes.ACC_MODULE, "module-info", null, null, null);
+    writer.visitModule(name, 0, null).visitEnd();
+    writer.visitAnnotation("Lorg/jspecify/nullness/NullMarked;", true).visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /**
+   * Analyses classes in the given directory with all the detectors, like a SpotBugs run does.
+   *
+   * @param auxClasspath entries of the auxiliary classpath besides the JSpecify jar
+   * @return reported bugs
+   */
+  static Stream<BugInstance> analyse(Path classDir, Path... auxClasspath) {
+    AnalysisRunner runner = new AnalysisRunner().addAuxClasspathEntry(jspecifyJar());
+    for (Path entry : auxClasspath) {
+      runner.addAuxClasspathEntry(entry);
+    }
+    return runner.run(classDir).getBugCollection().getCollection().stream();
+  }
+
+  /** @return type of the bug and name of its method, or of its class if it has no method */
+  static String describe(BugInstance bug) {
+    return bug.getType()
+        + " "
+        + (bug.getPrimaryMethod() == null
+            ? bug.getPrimaryClass().getClassName()
+            : bug.getPrimaryMethod().getMethodName());
+  }
+}
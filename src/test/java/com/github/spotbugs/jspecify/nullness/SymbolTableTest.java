@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import org.junit.jupiter.api.Test;
+
+class SymbolTableTest {
+  @Test
+  void internsEqualSymbols() {
+    SymbolTable symbols = new SymbolTable();
+    int id = symbols.idOf(new MethodDescriptor("sample/Foo", "bar", "()V", false));
+
+    assertEquals(id, symbols.idOf(new MethodDescriptor("sample/Foo", "bar", "()V", false)));
+    assertNotEquals(id, symbols.idOf(new MethodDescriptor("sample/Foo", "bar", "()V", true)));
+    assertNotEquals(id, symbols.idOf("sample/Foo"));
+    assertEquals("sample/Foo", symbols.symbolOf(symbols.idOf("sample/Foo")));
+  }
+
+  @Test
+  void growsBeyondInitialCapacity() {
+    SymbolTable symbols = new SymbolTable();
+    for (int i = 0; i < 10_000; ++i) {
+      assertEquals(i + 1, symbols.idOf("name" + i));
+    }
+
+    assertEquals(10_000, symbols.size());
+    assertEquals(4243, symbols.idOf("name" + 4242));
+    assertEquals("name9999", symbols.symbolOf(10_000));
+  }
+
+  @Test
+  void findsSymbolsWithoutAddingThem() {
+    SymbolTable symbols = new SymbolTable();
+    int id = symbols.idOf("known");
+
+    assertEquals(id, symbols.find("known"));
+    assertEquals(0, symbols.find("unknown"));
+    assertEquals(1, symbols.size());
+  }
+
+  @Test
+  void reusesIdentifiersAfterClear() {
+    SymbolTable symbols = new SymbolTable();
+    ClassDescriptor list = DescriptorFactory.createClassDescriptor("java/util/List");
+    symbols.packageIdOf(list);
+    for (int i = 0; i < 2_000; ++i) {
+      symbols.idOf("name" + i);
+    }
+    symbols.clear();
+
+    assertEquals(0, symbols.size());
+    assertEquals(0, symbols.find("name0"));
+    assertEquals(1, symbols.idOf("name1999"));
+    assertEquals("java/util", symbols.symbolOf(symbols.packageIdOf(list)));
+  }
+
+  @Test
+  void sharesPackageOfClasses() {
+    SymbolTable symbols = new SymbolTable();
+    ClassDescriptor list = DescriptorFactory.createClassDescriptor("java/util/List");
+    ClassDescriptor map = DescriptorFactory.createClassDescriptor("java/util/Map");
+    ClassDescriptor string = DescriptorFactory.createClassDescriptor("java/lang/String");
+    ClassDescriptor unnamed = DescriptorFactory.createClassDescriptor("Unnamed");
+
+    assertEquals(symbols.packageIdOf(list), symbols.packageIdOf(map));
+    assertNotEquals(symbols.packageIdOf(list), symbols.packageIdOf(string));
+    assertEquals("java/util", symbols.symbolOf(symbols.packageIdOf(list)));
+    assertEquals("", symbols.symbolOf(symbols.packageIdOf(unnamed)));
+  }
+
+  @Test
+  void distinguishesMembersByNameAndDescriptor() {
+    SymbolTable symbols = new SymbolTable();
+
+    assertEquals(symbols.memberKey("get", "()I"), symbols.memberKey("get", "()I"));
+    assertNotEquals(symbols.memberKey("get", "()I"), symbols.memberKey("get", "()J"));
+    // concatenating them would make the same key
+    assertNotEquals(symbols.memberKey("ab", "c"), symbols.memberKey("a", "bc"));
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.umd.cs.findbugs.ba.XClass;
+import edu.umd.cs.findbugs.classfile.DescriptorFactory;
+import edu.umd.cs.findbugs.classfile.IAnalysisCache;
+import edu.umd.cs.findbugs.classfile.MethodDescriptor;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TypeHierarchyTest {
+  @TempDir static Path classes;
+  private static IAnalysisCache analysisCache;
+
+  @BeforeAll
+  static void compileSamples(@TempDir Path sources) throws Exception {
+    Samples.compile(
+        Map.of(
+            "DefaultNonNull",
+            "package org.jspecify.nullness;\n"
+                + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                + "public @interface DefaultNonNull {}\n",
+            "Named",
+            "package sample;\n"
+                + "public interface Named extends Identified {\n"
+                + "  @org.jspecify.nullness.Nullable String name();\n"
+                + "}\n",
+            "Identified",
+            "package sample;\npublic interface Identified {}\n",
+            "Marker",
+            "package sample;\npublic interface Marker extends Tagged {}\n",
+            "Tagged",
+            "package sample;\npublic interface Tagged {}\n",
+            "Base",
+            "package sample;\n" + "public abstract class Base implements Named {}\n",
+            "Impl",
+            "package sample;\n"
+                + "public class Impl extends Base implements Marker {\n"
+                + "  public String name() { return null; }\n"
+                + "}\n",
+            "Outer",
+            "package sample;\n"
+                + "@org.jspecify.nullness.DefaultNonNull\n"
+                + "public class Outer {\n"
+                + "  public class Inner {\n"
+                + "    public class Innermost { public String value() { return \"\"; } }\n"
+                + "  }\n"
+                + "}\n"),
+        sources,
+        classes);
+    analysisCache = Samples.createAnalysisCache(classes);
+  }
+
+  private static XClass xclass(String className) throws Exception {
+    return analysisCache.getClassAnalysis(
+        XClass.class, DescriptorFactory.createClassDescriptor(className));
+  }
+
+  @Test
+  void listsSupertypesNearestFirst() throws Exception {
+    List<String> supertypes =
+        new TypeHierarchy(new SymbolTable(), 16)
+            .supertypesOf(xclass("sample/Impl")).stream()
+                .map(XClass::toString)
+                .collect(Collectors.toList());
+    // Tagged is a supertype of Marker, so it is nearer than Identified, a supertype of Named
+    assertEquals(
+        List.of(
+            "sample/Base", "sample/Marker", "sample/Named", "sample/Tagged", "sample/Identified"),
+        supertypes);
+  }
+
+  @Test
+  void listsEnclosingClassesInnermostFirst() throws Exception {
+    List<String> enclosing =
+        new TypeHierarchy(new SymbolTable(), 16)
+            .enclosingClassesOf(xclass("sample/Outer$Inner$Innermost")).stream()
+                .map(XClass::toString)
+                .collect(Collectors.toList());
+    assertEquals(List.of("sample/Outer$Inner", "sample/Outer"), enclosing);
+  }
+
+  @Test
+  void resolvesNullnessOfOverriddenMethod() throws Exception {
+    XClass impl = xclass("sample/Impl");
+    NullnessDatabase database = new NullnessDatabase();
+    assertEquals(
+        Nullness.NULLABLE.asOptional(),
+        database.findNullnessOf(impl.findMethod("name", "()Ljava/lang/String;", false), null));
+  }
+
+  @Test
+  void resolvesDefaultNullnessOfEnclosingClass() throws Exception {
+    XClass innermost = xclass("sample/Outer$Inner$Innermost");
+    NullnessDatabase database = new NullnessDatabase();
+    assertEquals(Nullness.NOT_NULL.asOptional(), database.findDefaultNullnessOf(innermost));
+    assertEquals(Optional.empty(), database.findDefaultNullnessOf(xclass("sample/Impl")));
+  }
+
+  @Test
+  void resolvesMethodsMissingFromIndex() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new NullnessIndex.Writer()
+        .addPackage("sample", Nullness.NOT_NULL)
+        .addMethod(
+            "sample/Outer$Inner$Innermost",
+            "value",
+            "()Ljava/lang/String;",
+            false,
+            Nullness.NULLABLE)
+        .write(output);
+    NullnessDatabase database =
+        new NullnessDatabase(
+            NullnessIndex.of(output.toByteArray()),
+            PackageScopeIndex.EMPTY,
+            NullnessDatabase.DEFAULT_CACHE_SIZE,
+            new PluginMetrics(null),
+            NullnessFactStore.disabled());
+
+    assertEquals(
+        Nullness.NULLABLE.asOptional(),
+        database.findNullnessOf(
+            xclass("sample/Outer$Inner$Innermost")
+                .findMethod("value", "()Ljava/lang/String;", false),
+            null));
+    // the method overrides a nullable method, and it precedes the default nullness of the package
+    assertEquals(
+        Nullness.NULLABLE.asOptional(),
+        database.findNullnessOf(
+            xclass("sample/Impl").findMethod("name", "()Ljava/lang/String;", false), null));
+  }
+
+  @Test
+  void resolvesNullnessAfterClearingSymbols() throws Exception {
+    // a single entry per cache tier keeps a few symbols, so the table is cleared at every class
+    NullnessDatabase database =
+        new NullnessDatabase(
+            NullnessIndex.EMPTY,
+            PackageScopeIndex.EMPTY,
+            1,
+            new PluginMetrics(null),
+            NullnessFactStore.disabled());
+    XClass impl = xclass("sample/Impl");
+    XClass innermost = xclass("sample/Outer$Inner$Innermost");
+    MethodDescriptor name =
+        impl.findMethod("name", "()Ljava/lang/String;", false).getMethodDescriptor();
+    database.addInferredNullness(Map.of(name, Nullness.NULLABLE));
+
+    assertEquals(
+        Nullness.NULLABLE.asOptional(),
+        database.findNullnessOf(impl.findMethod("name", "()Ljava/lang/String;", false), null));
+    assertEquals(Nullness.NOT_NULL.asOptional(), database.findDefaultNullnessOf(innermost));
+    assertEquals(1, database.getMethodCache().size());
+    database.mayReferNullness(impl);
+    assertEquals(0, database.getMethodCache().size());
+
+    assertEquals(
+        Nullness.NULLABLE.asOptional(),
+        database.findNullnessOf(impl.findMethod("name", "()Ljava/lang/String;", false), null));
+    database.mayReferNullness(innermost);
+    assertEquals(Nullness.NOT_NULL.asOptional(), database.findDefaultNullnessOf(innermost));
+    assertEquals(Nullness.NULLABLE.asOptional(), database.findInferredNullnessOf(name));
+  }
+}
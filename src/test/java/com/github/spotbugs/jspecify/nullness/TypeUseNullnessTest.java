@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021-2022 The SpotBugs team.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.spotbugs.jspecify.nullness;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.TypePath;
+
+class TypeUseNullnessTest {
+  @Test
+  void resolvesTypePathsInMethodSignature() {
+    byte[] types =
+        TypeUseNullness.encode(
+            "<T:Ljava/lang/Object;>(Ljava/util/List<TT;>;[[Ljava/lang/String;)"
+                + "Ljava/util/Map<Ljava/lang/String;+Ljava/lang/Number;>;^Ljava/io/IOException;");
+    assertNotNull(types);
+    // List, T, String[][], String[], String, Map, String, ? extends, Number
+    assertEquals(9, types.length);
+    assertEquals(0, TypeUseNullness.root(types, 0));
+    assertEquals(2, TypeUseNullness.root(types, 1));
+    assertEquals(5, TypeUseNullness.root(types, 2));
+    assertEquals(5, TypeUseNullness.lastRoot(types));
+
+    assertEquals(4, TypeUseNullness.follow(types, 2, TypePath.fromString("[[")));
+    assertEquals(8, TypeUseNullness.follow(types, 5, TypePath.fromString("1;*")));
+    assertEquals(-1, TypeUseNullness.follow(types, 5, TypePath.fromString("2;")));
+    assertEquals(-1, TypeUseNullness.follow(types, 5, TypePath.fromString(".")));
+
+    TypeUseNullness.annotate(types, 8, Nullness.NULLABLE);
+    TypeUseNullness.annotate(types, 3, Nullness.NOT_NULL);
+    assertEquals(Nullness.NULLABLE, TypeUseNullness.typeArgument(types, 5, 1));
+    assertNull(TypeUseNullness.typeArgument(types, 5, 0));
+    assertEquals(Nullness.NOT_NULL, TypeUseNullness.nullnessAt(types, 3));
+    assertEquals(2, TypeUseNullness.childCount(types, 5));
+  }
+
+  @Test
+  void encodesFieldDescriptor() {
+    byte[] types = TypeUseNullness.encode("[Ljava/lang/String;");
+    assertNotNull(types);
+    assertEquals(2, types.length);
+    assertEquals(1, TypeUseNullness.child(types, 0, 0));
+  }
+}